@@ -0,0 +1,164 @@
+package net.unicon.cas.mfa.web.flow;
+
+import net.unicon.cas.mfa.authentication.duo.DuoAuthApiClient;
+import net.unicon.cas.mfa.authentication.duo.DuoAuthenticationHandler;
+import net.unicon.cas.mfa.authentication.duo.DuoAuthenticationService;
+import net.unicon.cas.mfa.authentication.duo.DuoCircuitBreaker;
+import net.unicon.cas.mfa.authentication.duo.DuoCredentials;
+import net.unicon.cas.mfa.authentication.duo.DuoFallbackPolicy;
+import net.unicon.cas.mfa.authentication.duo.DuoIntegrationRegistry;
+import net.unicon.cas.mfa.authentication.principal.MultiFactorCredentials;
+import net.unicon.cas.mfa.web.flow.view.MultifactorLoginViewPrincipalAttributeGreeter;
+import net.unicon.cas.mfa.web.support.DefaultMultiFactorAuthenticationSupportingWebApplicationService;
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.principal.Response.ResponseType;
+import org.springframework.webflow.action.AbstractAction;
+import org.springframework.webflow.config.FlowDefinitionResource;
+import org.springframework.webflow.config.FlowDefinitionResourceFactory;
+import org.springframework.webflow.core.collection.LocalAttributeMap;
+import org.springframework.webflow.core.collection.MutableAttributeMap;
+import org.springframework.webflow.engine.support.TransitionExecutingFlowExecutionExceptionHandler;
+import org.springframework.webflow.execution.Event;
+import org.springframework.webflow.execution.RequestContext;
+import org.springframework.webflow.test.MockExternalContext;
+import org.springframework.webflow.test.MockFlowBuilderContext;
+import org.springframework.webflow.test.execution.AbstractXmlFlowExecutionTests;
+
+import java.security.GeneralSecurityException;
+
+public class DuoTwoFactorWebflowTests extends AbstractXmlFlowExecutionTests {
+
+    private static final String IKEY = "DIXXXXXXXXXXXXXXXXXX";
+
+    private static final String SKEY = "deadbeefdeadbeefdeadbeefdeadbeefdeadbeef";
+
+    private DuoAuthApiClient authApiClient;
+
+    private DuoAuthenticationService duoAuthenticationService;
+
+    private AuthenticatingAction failOpenAction;
+
+    private AuthenticatingAction terminatingAction;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.authApiClient = new DuoAuthApiClient(IKEY, SKEY, "https://127.0.0.1:1");
+        final DuoCircuitBreaker circuitBreaker = new DuoCircuitBreaker(10, 1000, 1, 50, 1500, 80, 60000);
+        circuitBreaker.allowRequest();
+        circuitBreaker.recordFailure(0);
+
+        this.duoAuthenticationService = new DuoAuthenticationService(IKEY, SKEY,
+                "useacustomerprovidedapplicationsecretkey", "api-xxxxxxxx.duosecurity.com");
+        this.duoAuthenticationService.setAuthApiClient(this.authApiClient);
+        this.duoAuthenticationService.setCircuitBreaker(circuitBreaker);
+        this.duoAuthenticationService.setFallbackPolicy(new DuoFallbackPolicy(null, DuoFallbackPolicy.FAIL_OPEN));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.authApiClient.close();
+        super.tearDown();
+    }
+
+    @Override
+    protected FlowDefinitionResource getResource(final FlowDefinitionResourceFactory resourceFactory) {
+        return resourceFactory.createFileResource("src/main/webapp/WEB-INF/webflow/mfa-duo-two-factor/mfa-duo-two-factor-webflow.xml");
+    }
+
+    @Override
+    protected void configureFlowBuilderContext(final MockFlowBuilderContext builderContext) {
+        final DuoAuthenticationHandler handler = new DuoAuthenticationHandler(this.duoAuthenticationService);
+        this.failOpenAction = new AuthenticatingAction(handler, false);
+        this.terminatingAction = new AuthenticatingAction(handler, true);
+
+        builderContext.registerBean("initialFlowSetupAction", new AbstractAction() {
+            @Override
+            protected Event doExecute(final RequestContext context) {
+                return success();
+            }
+        });
+        builderContext.registerBean("duoIntegrationRegistry", new DuoIntegrationRegistry(this.duoAuthenticationService));
+        builderContext.registerBean("generateLoginTicketAction", new LoginTicketGenerator());
+        builderContext.registerBean("mfaLoginViewPrincipalGreeter", new MultifactorLoginViewPrincipalAttributeGreeter("cn"));
+        builderContext.registerBean("principalMismatchExceptionHandler", new TransitionExecutingFlowExecutionExceptionHandler());
+        builderContext.registerBean("duo_terminatingTwoFactorAuthenticationViaFormAction", this.terminatingAction);
+        builderContext.registerBean("duo_bypassTwoFactorAuthenticationViaFormAction", this.terminatingAction);
+        builderContext.registerBean("duo_failOpenTwoFactorAuthenticationViaFormAction", this.failOpenAction);
+    }
+
+    public void testBlankSubmitAfterFailedFailOpenIsRejected() {
+        final MultiFactorCredentials mfaCredentials = new MultiFactorCredentials();
+        mfaCredentials.addAuthenticationToChain(TestUtils.getAuthentication("jdoe"));
+        final MutableAttributeMap input = new LocalAttributeMap();
+        input.put("mfaCredentials", mfaCredentials);
+        input.put("mfaService", new DefaultMultiFactorAuthenticationSupportingWebApplicationService("https://www.example.org",
+                "https://www.example.org", null, ResponseType.REDIRECT, "duo-two-factor"));
+
+        startFlow(input, new MockExternalContext());
+        assertEquals(1, this.failOpenAction.getAuthenticatedCount());
+        assertCurrentStateEquals("viewLoginFormDuo");
+
+        final DuoCredentials credentials = (DuoCredentials) getFlowScope().get("credentials");
+        assertNull(credentials.getPreauthResult());
+        assertFalse(credentials.isFailedOpen());
+
+        final MockExternalContext context = new MockExternalContext();
+        context.setEventId("submit");
+        context.putRequestParameter("signedDuoResponse", "");
+        resumeFlow(context);
+        assertEquals(0, this.terminatingAction.getAuthenticatedCount());
+        assertEquals(1, this.terminatingAction.getRejectedCount());
+        assertCurrentStateEquals("viewLoginFormDuo");
+    }
+
+    /**
+     * Stands in for the CAS login ticket action.
+     */
+    public static final class LoginTicketGenerator {
+        public String generate(final RequestContext context) {
+            return "generated";
+        }
+    }
+
+    /**
+     * Stands in for the terminating authentication actions. Authenticates the Duo credentials with the
+     * real handler, and optionally fails afterwards as if the ticket granting ticket could not be created.
+     */
+    private static final class AuthenticatingAction extends AbstractAction {
+
+        private final DuoAuthenticationHandler handler;
+
+        private final boolean completeOnSuccess;
+
+        private int authenticatedCount;
+
+        private int rejectedCount;
+
+        AuthenticatingAction(final DuoAuthenticationHandler handler, final boolean completeOnSuccess) {
+            this.handler = handler;
+            this.completeOnSuccess = completeOnSuccess;
+        }
+
+        @Override
+        protected Event doExecute(final RequestContext context) throws Exception {
+            try {
+                this.handler.authenticate(context.getFlowScope().get("credential", Credential.class));
+            } catch (final GeneralSecurityException e) {
+                this.rejectedCount++;
+                return error();
+            }
+            this.authenticatedCount++;
+            return this.completeOnSuccess ? new Event(this, "mfa-duo-two-factor") : error();
+        }
+
+        int getAuthenticatedCount() {
+            return this.authenticatedCount;
+        }
+
+        int getRejectedCount() {
+            return this.rejectedCount;
+        }
+    }
+}
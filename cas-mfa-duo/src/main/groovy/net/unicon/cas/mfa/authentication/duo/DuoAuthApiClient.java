@@ -0,0 +1,354 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import com.duosecurity.Base64;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client of the Duo Auth API <code>/preauth</code> endpoint, for one Duo Auth API integration.
+ *
+ * <p>Calls are made with blocking I/O on a bounded pool of worker threads sharing a pool of HTTP connections.
+ * This does not spare the calling thread: {@link #preauth(String)} blocks its caller until the result arrives
+ * or the deadline passes. What the pool bounds is the number of calls in flight, so that a slow Duo cannot tie up
+ * more than <code>maxConnections</code> workers, nor callers wait longer than the deadline. A call that cannot be
+ * queued because all workers are busy and the queue of pending calls is full is rejected rather than piling up,
+ * and every call is given a deadline, covering the time spent queued, connecting and waiting for the response.
+ * {@link #preauth(String)} returns null when the call is rejected, misses its deadline or fails, which callers
+ * are expected to treat as "Duo could not tell".</p>
+ *
+ * <p>If no integration key is configured, the client is disabled and does not start any thread.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class DuoAuthApiClient implements Closeable {
+
+    /**
+     * Default maximum number of concurrent calls, and of pooled connections.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+    /**
+     * Default maximum number of calls waiting for a worker.
+     */
+    public static final int DEFAULT_MAX_PENDING_REQUESTS = 100;
+
+    /**
+     * Default deadline of a call, in milliseconds.
+     */
+    public static final long DEFAULT_DEADLINE = 2000;
+
+    private static final String PREAUTH_PATH = "/auth/v2/preauth";
+
+    private static final String STAT_OK = "OK";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String integrationKey;
+
+    private final URI apiUrl;
+
+    private final long deadline;
+
+    private final ThreadLocal<Mac> secretKeyMac;
+
+    private final CloseableHttpClient httpClient;
+
+    private final ExecutorService executor;
+
+    /**
+     * Instantiates a new client with the default pool sizes and deadline.
+     *
+     * @param integrationKey the Duo Auth API integration key
+     * @param secretKey the Duo Auth API secret key
+     * @param apiUrl the base url of the Duo API, i.e. <code>https://api-xxxxxxxx.duosecurity.com</code>
+     */
+    public DuoAuthApiClient(final String integrationKey, final String secretKey, final String apiUrl) {
+        this(integrationKey, secretKey, apiUrl, DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_PENDING_REQUESTS, DEFAULT_DEADLINE);
+    }
+
+    /**
+     * Instantiates a new client.
+     *
+     * @param integrationKey the Duo Auth API integration key; if blank, the client is disabled
+     * @param secretKey the Duo Auth API secret key
+     * @param apiUrl the base url of the Duo API, i.e. <code>https://api-xxxxxxxx.duosecurity.com</code>
+     * @param maxConnections the maximum number of concurrent calls, and of pooled connections
+     * @param maxPendingRequests the maximum number of calls waiting for a worker
+     * @param deadline the deadline of a call, in milliseconds
+     */
+    public DuoAuthApiClient(final String integrationKey, final String secretKey, final String apiUrl,
+                            final int maxConnections, final int maxPendingRequests, final long deadline) {
+        this.integrationKey = integrationKey;
+        this.apiUrl = URI.create(apiUrl);
+        this.deadline = deadline;
+
+        if (StringUtils.isBlank(integrationKey)) {
+            this.secretKeyMac = null;
+            this.httpClient = null;
+            this.executor = null;
+            logger.debug("No Duo Auth API integration is configured");
+            return;
+        }
+
+        this.secretKeyMac = DuoSigner.newMacHolder(secretKey);
+
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        final int timeout = (int) deadline;
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(timeout)
+                        .setConnectTimeout(timeout)
+                        .setSocketTimeout(timeout)
+                        .build())
+                .build();
+
+        this.executor = new ThreadPoolExecutor(maxConnections, maxConnections, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(maxPendingRequests), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "duo-auth-api-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        ((ThreadPoolExecutor) this.executor).allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Whether an integration is configured.
+     *
+     * @return true if calls can be made
+     */
+    public boolean isEnabled() {
+        return this.executor != null;
+    }
+
+    /**
+     * Submit a <code>/preauth</code> call for the user.
+     *
+     * @param username the username
+     * @return the future result, which is null if Duo did not answer with a result
+     * @throws RejectedExecutionException if the client is disabled, or too many calls are pending
+     */
+    public Future<DuoAuthApiResult> submitPreauth(final String username) {
+        return submit(PREAUTH_PATH, getPreauthParameters(username));
+    }
+
+    /**
+     * Ask Duo whether the user needs to be prompted for a second factor, waiting at most for the deadline.
+     *
+     * @param username the username
+     * @return the result, or null if the call was rejected, missed its deadline or failed
+     */
+    public DuoAuthApiResult preauth(final String username) {
+        return await(PREAUTH_PATH, username, trySubmit(PREAUTH_PATH, getPreauthParameters(username)));
+    }
+
+    /**
+     * Stop the workers and release the pooled connections.
+     */
+    @Override
+    public void close() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+            try {
+                this.httpClient.close();
+            } catch (final IOException e) {
+                logger.debug(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Submit a call, unless the client is disabled or too many calls are pending.
+     *
+     * @param path the endpoint path
+     * @param parameters the parameters, sorted by name
+     * @return the future result, or null if the call could not be submitted
+     */
+    private Future<DuoAuthApiResult> trySubmit(final String path, final Map<String, String> parameters) {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            return submit(path, parameters);
+        } catch (final RejectedExecutionException e) {
+            logger.warn("Duo Auth API call to [{}] was rejected: too many calls are pending", path);
+            return null;
+        }
+    }
+
+    /**
+     * Wait for the result of a call, at most for the deadline.
+     *
+     * @param path the endpoint path
+     * @param username the username
+     * @param future the future result, may be null
+     * @return the result, or null
+     */
+    private DuoAuthApiResult await(final String path, final String username, final Future<DuoAuthApiResult> future) {
+        if (future == null) {
+            return null;
+        }
+        try {
+            final DuoAuthApiResult result = future.get(this.deadline, TimeUnit.MILLISECONDS);
+            logger.debug("Duo Auth API call to [{}] for [{}] returned [{}]", path, username, result);
+            return result;
+        } catch (final TimeoutException e) {
+            future.cancel(true);
+            logger.warn("Duo Auth API call to [{}] for [{}] missed its deadline of [{}] ms", path, username, this.deadline);
+        } catch (final ExecutionException e) {
+            logger.warn("Duo Auth API call to [{}] for [{}] failed: {}", path, username, e.getCause().getMessage());
+            logger.debug(e.getCause().getMessage(), e.getCause());
+        } catch (final InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Submit a signed call to the endpoint.
+     *
+     * @param path the endpoint path
+     * @param parameters the parameters, sorted by name
+     * @return the future result
+     */
+    private Future<DuoAuthApiResult> submit(final String path, final Map<String, String> parameters) {
+        if (!isEnabled()) {
+            throw new RejectedExecutionException("No Duo Auth API integration is configured");
+        }
+        return this.executor.submit(new Callable<DuoAuthApiResult>() {
+            @Override
+            public DuoAuthApiResult call() throws Exception {
+                return execute(path, parameters);
+            }
+        });
+    }
+
+    /**
+     * Make a signed call to the endpoint.
+     *
+     * @param path the endpoint path
+     * @param parameters the parameters, sorted by name
+     * @return the result, or null if Duo did not answer with a result
+     * @throws IOException if the call failed
+     */
+    private DuoAuthApiResult execute(final String path, final Map<String, String> parameters) throws IOException {
+        final String date = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.US).format(new Date());
+        final String canonicalRequest = date + '\n' + "POST" + '\n' + this.apiUrl.getRawAuthority().toLowerCase(Locale.ENGLISH)
+                + '\n' + path + '\n' + canonicalize(parameters);
+        final String signature = DuoSigner.toHex(this.secretKeyMac.get().doFinal(canonicalRequest.getBytes(UTF8)));
+
+        final List<NameValuePair> form = new ArrayList<>(parameters.size());
+        for (final Map.Entry<String, String> parameter : parameters.entrySet()) {
+            form.add(new BasicNameValuePair(parameter.getKey(), parameter.getValue()));
+        }
+        final HttpPost post = new HttpPost(this.apiUrl.resolve(path));
+        post.setHeader("Date", date);
+        post.setHeader(HttpHeaders.AUTHORIZATION, "Basic "
+                + Base64.encodeBytes((this.integrationKey + ':' + signature).getBytes(UTF8)));
+        post.setEntity(new UrlEncodedFormEntity(form, UTF8));
+
+        try (CloseableHttpResponse response = this.httpClient.execute(post)) {
+            final String body = EntityUtils.toString(response.getEntity(), UTF8);
+            final JsonNode json = MAPPER.readTree(body);
+            if (!STAT_OK.equals(json.path("stat").asText())) {
+                logger.warn("Duo Auth API call to [{}] answered [{}] with [{}]", path, response.getStatusLine(), body);
+                return null;
+            }
+            final JsonNode result = json.path("response");
+            return new DuoAuthApiResult(result.path("result").textValue(), result.path("status_msg").textValue());
+        }
+    }
+
+    /**
+     * Parameters of a <code>/preauth</code> call.
+     *
+     * @param username the username
+     * @return the parameters, sorted by name
+     */
+    private static Map<String, String> getPreauthParameters(final String username) {
+        final Map<String, String> parameters = new TreeMap<>();
+        parameters.put("username", username);
+        return parameters;
+    }
+
+    /**
+     * Build the canonical form of the parameters that is signed: url encoded names and values, sorted by name.
+     *
+     * @param parameters the parameters, sorted by name
+     * @return the canonical form
+     * @throws UnsupportedEncodingException never, as UTF-8 is always supported
+     */
+    private static String canonicalize(final Map<String, String> parameters) throws UnsupportedEncodingException {
+        final StringBuilder builder = new StringBuilder();
+        for (final Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append('&');
+            }
+            builder.append(encode(parameter.getKey())).append('=').append(encode(parameter.getValue()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Url encode the value the way Duo expects, with spaces as <code>%20</code> and tildes left alone.
+     *
+     * @param value the value
+     * @return the encoded value
+     * @throws UnsupportedEncodingException never, as UTF-8 is always supported
+     */
+    private static String encode(final String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, "UTF-8").replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+    }
+}
@@ -0,0 +1,61 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Outcome of a call to the Duo Auth API <code>/preauth</code> or <code>/auth</code> endpoints.
+ *
+ * @author Unicon inc.
+ */
+public final class DuoAuthApiResult {
+
+    /**
+     * Result returned when the user is allowed without a second factor, or when the second factor was accepted.
+     */
+    public static final String RESULT_ALLOW = "allow";
+
+    /**
+     * Result reported for users configured to bypass the second factor.
+     */
+    public static final String RESULT_BYPASS = "bypass";
+
+    private final String result;
+
+    private final String statusMessage;
+
+    /**
+     * Instantiates a new result.
+     *
+     * @param result the result
+     * @param statusMessage the status message
+     */
+    public DuoAuthApiResult(final String result, final String statusMessage) {
+        this.result = result;
+        this.statusMessage = statusMessage;
+    }
+
+    public String getResult() {
+        return this.result;
+    }
+
+    public String getStatusMessage() {
+        return this.statusMessage;
+    }
+
+    /**
+     * Whether the user may proceed without being prompted for a second factor.
+     *
+     * @return true if the result is <code>allow</code> or <code>bypass</code>
+     */
+    public boolean isAllowed() {
+        return RESULT_ALLOW.equals(this.result) || RESULT_BYPASS.equals(this.result);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("result", this.result)
+                .append("statusMessage", this.statusMessage)
+                .toString();
+    }
+}
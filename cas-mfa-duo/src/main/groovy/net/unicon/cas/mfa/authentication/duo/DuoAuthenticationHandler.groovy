@@ -1,6 +1,8 @@
 package net.unicon.cas.mfa.authentication.duo
 
-import groovy.util.logging.Slf4j
+import com.duosecurity.DuoWebException
+import groovy.transform.CompileStatic
+import org.apache.commons.lang3.StringUtils
 import org.jasig.cas.MessageDescriptor
 import org.jasig.cas.authentication.Credential
 import org.jasig.cas.authentication.HandlerResult
@@ -11,13 +13,22 @@ import org.jasig.cas.authentication.principal.Principal
 import javax.security.auth.login.FailedLoginException
 import java.security.GeneralSecurityException
 
-@Slf4j
+@CompileStatic
 class DuoAuthenticationHandler extends AbstractPreAndPostProcessingAuthenticationHandler  {
 
-    private final DuoAuthenticationService duoAuthenticationService
+    private final DuoIntegrationRegistry duoIntegrationRegistry
 
     DuoAuthenticationHandler(DuoAuthenticationService duoAuthenticationService) {
-        this.duoAuthenticationService = duoAuthenticationService
+        this(new DuoIntegrationRegistry(duoAuthenticationService))
+    }
+
+    /**
+     * Verify signed Duo responses with the integration recorded in the credentials.
+     *
+     * @param duoIntegrationRegistry the Duo integrations
+     */
+    DuoAuthenticationHandler(DuoIntegrationRegistry duoIntegrationRegistry) {
+        this.duoIntegrationRegistry = duoIntegrationRegistry
     }
 
     @Override
@@ -30,7 +41,14 @@ class DuoAuthenticationHandler extends AbstractPreAndPostProcessingAuthenticatio
                         + " and the signed Duo response is configured and passed. Credential received: " + duoCredential);
             }
 
-            final String duoVerifyResponse = this.duoAuthenticationService.authenticate(duoCredential.getSignedDuoResponse());
+            if (StringUtils.isBlank(duoCredential.getSignedDuoResponse()) && duoCredential.isPreauthAllowed()) {
+                logger.info("Duo preauth allowed [{}] without a second factor prompt", duoCredential.getUsername());
+                final Principal principal = this.principalFactory.createPrincipal(duoCredential.getUsername());
+                return createHandlerResult(credential, principal, new ArrayList<MessageDescriptor>());
+            }
+
+            final DuoAuthenticationService duoAuthenticationService = this.duoIntegrationRegistry.getService(duoCredential.getIntegration());
+            final String duoVerifyResponse = duoAuthenticationService.authenticate(duoCredential.getSignedDuoResponse());
             logger.debug("Response from Duo verify: [{}]", duoVerifyResponse);
             final String primaryCredentialsUsername = duoCredential.getUsername();
 
@@ -45,6 +63,9 @@ class DuoAuthenticationHandler extends AbstractPreAndPostProcessingAuthenticatio
             throw new FailedLoginException("Duo authentication username "
                     + primaryCredentialsUsername + " does not match Duo response: " + duoVerifyResponse);
 
+        } catch (final GeneralSecurityException | DuoWebException e) {
+            logger.warn("Duo authentication failed: {}", e.getMessage());
+            throw new FailedLoginException(e.getMessage());
         } catch (final Exception e) {
             logger.error(e.getMessage(), e);
             throw new FailedLoginException(e.getMessage());
@@ -53,6 +74,6 @@ class DuoAuthenticationHandler extends AbstractPreAndPostProcessingAuthenticatio
 
     @Override
     boolean supports(final Credential credential) {
-        DuoCredentials.isAssignableFrom(credential.class)
+        credential instanceof DuoCredentials
     }
 }
@@ -1,38 +1,154 @@
 package net.unicon.cas.mfa.authentication.duo
 
-import com.duosecurity.DuoWeb
+import com.duosecurity.DuoWebException
+import groovy.transform.CompileStatic
 import groovy.util.logging.Slf4j
+import org.jasig.cas.authentication.principal.Service
 
 /**
  * An abstraction that encapsulates interaction with Duo 2fa authentication service via its public API
  * <p/>
+ * Requests are signed and responses verified by a {@link DuoSigner} bound to the integration.
+ * Signed requests may be reused across renders of the Duo login form through a {@link DuoSignedRequestCache}.
+ * If a {@link DuoAuthApiClient} is configured, users are first checked with Duo preauth, and those Duo allows
+ * without a second factor are not shown the Duo login form.
+ * <p/>
+ * Preauth calls are measured by a {@link DuoCircuitBreaker}. While it is open, Duo is not called, and the
+ * {@link DuoFallbackPolicy} of the service decides whether users are prompted anyway, let through, or routed
+ * to an alternate authentication method.
+ * <p/>
  * Derived from the fine work of @author Eric Pierce <epierce@usf.edu>
  * and @author Michael Kennedy <michael.kennedy@ucr.edu>
  */
 @Slf4j
+@CompileStatic
 final class DuoAuthenticationService {
     private final String duoIntegrationKey
     private final String duoSecretKey
     private final String duoApplicationKey
     private final String duoApiHost
+    private final DuoSigner duoSigner
+    private DuoSignedRequestCache signedRequestCache
+    private DuoAuthApiClient authApiClient
+    private DuoCircuitBreaker circuitBreaker
+    private DuoFallbackPolicy fallbackPolicy
 
-    DuoAuthenticationService(duoIntegrationKey, duoSecretKey, duoApplicationKey, duoApiHost) {
+    DuoAuthenticationService(final String duoIntegrationKey, final String duoSecretKey,
+                             final String duoApplicationKey, final String duoApiHost) {
         this.duoIntegrationKey = duoIntegrationKey
         this.duoSecretKey = duoSecretKey
         this.duoApplicationKey = duoApplicationKey
         this.duoApiHost = duoApiHost
+        this.duoSigner = new DuoSigner(this.duoIntegrationKey, this.duoSecretKey, this.duoApplicationKey)
     }
 
-    def getDuoApiHost() {
+    String getDuoApiHost() {
         this.duoApiHost
     }
 
-    def generateSignedRequestToken(final String username) {
-        DuoWeb.signRequest(this.duoIntegrationKey, this.duoSecretKey, this.duoApplicationKey, username)
+    void setSignedRequestCache(final DuoSignedRequestCache signedRequestCache) {
+        this.signedRequestCache = signedRequestCache
+    }
+
+    void setAuthApiClient(final DuoAuthApiClient authApiClient) {
+        this.authApiClient = authApiClient
+    }
+
+    void setCircuitBreaker(final DuoCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker
+    }
+
+    void setFallbackPolicy(final DuoFallbackPolicy fallbackPolicy) {
+        this.fallbackPolicy = fallbackPolicy
+    }
+
+    DuoCircuitBreaker getCircuitBreaker() {
+        this.circuitBreaker
+    }
+
+    /**
+     * Ask Duo preauth whether the user of the credentials must be prompted for a second factor. If not,
+     * the preauth result is recorded in the credentials, which can then be authenticated without a signed response.
+     * Users are prompted whenever preauth is not configured or does not answer in time.
+     * While the circuit breaker is open, the fallback policy of the service applies instead.
+     *
+     * @param credentials the Duo credentials, holding the username
+     * @param service the service being authenticated for, may be null
+     * @return <code>bypass</code> if Duo allows the user to proceed without a prompt, <code>failOpen</code> if Duo
+     * is unavailable and the fail open policy lets the user proceed without a second factor, <code>fallback</code>
+     * if the user should be routed to an alternate authentication method, <code>prompt</code> otherwise
+     */
+    String preauthenticate(final DuoCredentials credentials, final Service service) {
+        if (this.authApiClient == null || !this.authApiClient.isEnabled()) {
+            return 'prompt'
+        }
+        if (this.circuitBreaker != null && !this.circuitBreaker.allowRequest()) {
+            return applyFallbackPolicy(credentials, service)
+        }
+
+        final long start = System.currentTimeMillis()
+        final DuoAuthApiResult result = this.authApiClient.preauth(credentials.username)
+        if (this.circuitBreaker != null) {
+            final long latency = System.currentTimeMillis() - start
+            if (result != null) {
+                this.circuitBreaker.recordSuccess(latency)
+            } else {
+                this.circuitBreaker.recordFailure(latency)
+            }
+        }
+        if (result != null && result.isAllowed()) {
+            log.debug("Duo preauth result for '{}' is {}", credentials.username, result)
+            credentials.preauthResult = result.result
+            return 'bypass'
+        }
+        'prompt'
+    }
+
+    /**
+     * Gets the fallback policy that applies to the service.
+     *
+     * @param service the service, may be null
+     * @return the fallback policy, <code>fail_closed</code> if none is configured
+     */
+    String getFallbackPolicy(final Service service) {
+        this.fallbackPolicy == null ? DuoFallbackPolicy.FAIL_CLOSED : this.fallbackPolicy.getPolicy(service)
+    }
+
+    private String applyFallbackPolicy(final DuoCredentials credentials, final Service service) {
+        final String policy = getFallbackPolicy(service)
+        if (DuoFallbackPolicy.FAIL_CLOSED == policy) {
+            log.debug("Duo is unavailable; prompting '{}' per the fail closed policy", credentials.username)
+            return 'prompt'
+        }
+        if (DuoFallbackPolicy.FAIL_OPEN == policy) {
+            log.warn("Duo is unavailable; letting '{}' through without a second factor per the fail open policy of {}",
+                    credentials.username, service?.id)
+            credentials.preauthResult = DuoAuthApiResult.RESULT_BYPASS
+            credentials.failedOpen = true
+            return 'failOpen'
+        }
+        log.info("Duo is unavailable; routing '{}' to authentication method {}", credentials.username, policy)
+        'fallback'
+    }
+
+    String generateSignedRequestToken(final String username) {
+        if (this.signedRequestCache == null) {
+            return this.duoSigner.signRequest(username)
+        }
+        String signedRequest = this.signedRequestCache.getSignedRequest(username)
+        if (signedRequest == null) {
+            signedRequest = this.duoSigner.signRequest(username)
+            if (!signedRequest.startsWith('ERR|')) {
+                this.signedRequestCache.putSignedRequest(username, signedRequest)
+            }
+        } else {
+            log.debug("Reusing signed request token for '{}'", username)
+        }
+        signedRequest
     }
 
-    def authenticate(final String signedRequestToken) {
-        log.debug("Calling DuoWeb.verifyResponse with signed request token '{}'", signedRequestToken)
-        DuoWeb.verifyResponse(this.duoIntegrationKey, this.duoSecretKey, this.duoApplicationKey, signedRequestToken)
+    String authenticate(final String signedRequestToken) throws DuoWebException {
+        log.debug("Verifying signed request token '{}'", signedRequestToken)
+        this.duoSigner.verifyResponse(signedRequestToken)
     }
 }
@@ -0,0 +1,368 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the health of calls made to Duo over a rolling window, and stops further calls
+ * for a while once too many of them fail or are slow.
+ *
+ * <p>The window is divided into buckets of a fixed duration. The circuit opens when at least
+ * <code>minimumCalls</code> were made within the window, and either the failure rate or the slow call rate
+ * reaches its threshold. While open, {@link #allowRequest()} returns false, and callers are expected to
+ * apply their fallback. Once <code>openDuration</code> has elapsed, a single trial call is let through;
+ * the circuit closes again if it succeeds in time, and reopens otherwise. A trial call that is not recorded
+ * within <code>openDuration</code>, e.g. because its caller failed before recording it, is given up on,
+ * and the next caller is let through as a new trial call.</p>
+ *
+ * <p>State transitions are logged, and counted along with short-circuited calls so that they can be
+ * read through the getters of this class, e.g. over JMX.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class DuoCircuitBreaker {
+
+    /**
+     * The circuit breaker states.
+     */
+    public enum State {
+        /** Calls are allowed and measured. */
+        CLOSED,
+        /** Calls are short-circuited. */
+        OPEN,
+        /** A single trial call is allowed to decide whether to close again. */
+        HALF_OPEN
+    }
+
+    private static final long DEFAULT_BUCKET_DURATION = 1000;
+
+    private static final int DEFAULT_BUCKETS = 10;
+
+    private static final int DEFAULT_MINIMUM_CALLS = 10;
+
+    private static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+
+    private static final long DEFAULT_SLOW_CALL_DURATION = 1500;
+
+    private static final int DEFAULT_SLOW_CALL_RATE_THRESHOLD = 80;
+
+    private static final long DEFAULT_OPEN_DURATION = 30000;
+
+    private static final int PERCENT = 100;
+
+    private static final Ticker WALL_CLOCK = new Ticker() {
+        @Override
+        public long read() {
+            return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        }
+    };
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final long bucketDuration;
+
+    private final int minimumCalls;
+
+    private final int failureRateThreshold;
+
+    private final long slowCallDuration;
+
+    private final int slowCallRateThreshold;
+
+    private final long openDuration;
+
+    private final Ticker ticker;
+
+    private final long[] bucketEpochs;
+
+    private final long[] calls;
+
+    private final long[] failures;
+
+    private final long[] slowCalls;
+
+    private final long[] latencies;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private boolean trialInProgress;
+
+    private long trialStartedAt;
+
+    private long shortCircuitCount;
+
+    private long openedCount;
+
+    private long halfOpenedCount;
+
+    private long closedCount;
+
+    /**
+     * Instantiates a new circuit breaker with a ten second window, that opens on a 50% failure rate
+     * or an 80% rate of calls slower than 1.5 seconds, and stays open for 30 seconds.
+     */
+    public DuoCircuitBreaker() {
+        this(DEFAULT_BUCKETS, DEFAULT_BUCKET_DURATION, DEFAULT_MINIMUM_CALLS, DEFAULT_FAILURE_RATE_THRESHOLD,
+                DEFAULT_SLOW_CALL_DURATION, DEFAULT_SLOW_CALL_RATE_THRESHOLD, DEFAULT_OPEN_DURATION);
+    }
+
+    /**
+     * Instantiates a new circuit breaker.
+     *
+     * @param buckets the number of buckets in the rolling window
+     * @param bucketDuration the duration of a bucket, in milliseconds
+     * @param minimumCalls the number of calls within the window below which the circuit never opens
+     * @param failureRateThreshold the percentage of failed calls at which the circuit opens
+     * @param slowCallDuration the duration, in milliseconds, above which a call is considered slow
+     * @param slowCallRateThreshold the percentage of slow calls at which the circuit opens
+     * @param openDuration how long, in milliseconds, the circuit stays open before a trial call
+     */
+    public DuoCircuitBreaker(final int buckets, final long bucketDuration, final int minimumCalls,
+                             final int failureRateThreshold, final long slowCallDuration,
+                             final int slowCallRateThreshold, final long openDuration) {
+        this(buckets, bucketDuration, minimumCalls, failureRateThreshold, slowCallDuration, slowCallRateThreshold,
+                openDuration, WALL_CLOCK);
+    }
+
+    /**
+     * Instantiates a new circuit breaker that reads the time from the given ticker.
+     *
+     * @param buckets the number of buckets in the rolling window
+     * @param bucketDuration the duration of a bucket, in milliseconds
+     * @param minimumCalls the number of calls within the window below which the circuit never opens
+     * @param failureRateThreshold the percentage of failed calls at which the circuit opens
+     * @param slowCallDuration the duration, in milliseconds, above which a call is considered slow
+     * @param slowCallRateThreshold the percentage of slow calls at which the circuit opens
+     * @param openDuration how long, in milliseconds, the circuit stays open before a trial call
+     * @param ticker the source of the time, read as nanoseconds since the epoch
+     */
+    DuoCircuitBreaker(final int buckets, final long bucketDuration, final int minimumCalls,
+                      final int failureRateThreshold, final long slowCallDuration,
+                      final int slowCallRateThreshold, final long openDuration, final Ticker ticker) {
+        if (buckets <= 0 || bucketDuration <= 0) {
+            throw new IllegalArgumentException("The rolling window needs at least one bucket of a positive duration");
+        }
+        this.bucketDuration = bucketDuration;
+        this.minimumCalls = Math.max(1, minimumCalls);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallDuration = slowCallDuration;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openDuration = openDuration;
+        this.ticker = ticker;
+        this.bucketEpochs = new long[buckets];
+        this.calls = new long[buckets];
+        this.failures = new long[buckets];
+        this.slowCalls = new long[buckets];
+        this.latencies = new long[buckets];
+    }
+
+    /**
+     * Whether a call to Duo may be made now. When the circuit is open and its open duration has elapsed,
+     * the first caller is let through as the trial call. So is the first caller once a trial call has gone
+     * unrecorded for the open duration.
+     *
+     * @return true if the call may be made, false if it should be short-circuited
+     */
+    public synchronized boolean allowRequest() {
+        final long now = now();
+        if (this.state == State.OPEN && now - this.openedAt >= this.openDuration) {
+            transitionTo(State.HALF_OPEN, now);
+        }
+        if (this.state == State.CLOSED) {
+            return true;
+        }
+        if (this.state == State.HALF_OPEN && this.trialInProgress && now - this.trialStartedAt >= this.openDuration) {
+            logger.warn("The Duo circuit breaker trial call was not recorded within {} ms; allowing another trial call",
+                    this.openDuration);
+            this.trialInProgress = false;
+        }
+        if (this.state == State.HALF_OPEN && !this.trialInProgress) {
+            this.trialInProgress = true;
+            this.trialStartedAt = now;
+            return true;
+        }
+        this.shortCircuitCount++;
+        return false;
+    }
+
+    /**
+     * Record a call that completed with a usable response.
+     *
+     * @param latency how long the call took, in milliseconds
+     */
+    public synchronized void recordSuccess(final long latency) {
+        record(latency, false);
+    }
+
+    /**
+     * Record a call that failed or timed out.
+     *
+     * @param latency how long the call took, in milliseconds
+     */
+    public synchronized void recordFailure(final long latency) {
+        record(latency, true);
+    }
+
+    private void record(final long latency, final boolean failure) {
+        final long now = now();
+        final boolean slow = latency > this.slowCallDuration;
+
+        if (this.state == State.HALF_OPEN) {
+            this.trialInProgress = false;
+            if (failure || slow) {
+                transitionTo(State.OPEN, now);
+            } else {
+                resetWindow();
+                transitionTo(State.CLOSED, now);
+            }
+            return;
+        }
+
+        final int bucket = bucketFor(now);
+        this.calls[bucket]++;
+        this.latencies[bucket] += latency;
+        if (failure) {
+            this.failures[bucket]++;
+        }
+        if (slow) {
+            this.slowCalls[bucket]++;
+        }
+
+        if (this.state == State.CLOSED) {
+            final long total = sum(this.calls, now);
+            if (total >= this.minimumCalls
+                    && (sum(this.failures, now) * PERCENT >= total * this.failureRateThreshold
+                    || sum(this.slowCalls, now) * PERCENT >= total * this.slowCallRateThreshold)) {
+                transitionTo(State.OPEN, now);
+            }
+        }
+    }
+
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMillis(this.ticker.read());
+    }
+
+    private int bucketFor(final long now) {
+        final long epoch = now / this.bucketDuration;
+        final int bucket = (int) (epoch % this.bucketEpochs.length);
+        if (this.bucketEpochs[bucket] != epoch) {
+            this.bucketEpochs[bucket] = epoch;
+            this.calls[bucket] = 0;
+            this.failures[bucket] = 0;
+            this.slowCalls[bucket] = 0;
+            this.latencies[bucket] = 0;
+        }
+        return bucket;
+    }
+
+    private long sum(final long[] counts, final long now) {
+        final long oldestEpoch = now / this.bucketDuration - this.bucketEpochs.length;
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (this.bucketEpochs[i] > oldestEpoch) {
+                total += counts[i];
+            }
+        }
+        return total;
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < this.bucketEpochs.length; i++) {
+            this.bucketEpochs[i] = 0;
+            this.calls[i] = 0;
+            this.failures[i] = 0;
+            this.slowCalls[i] = 0;
+            this.latencies[i] = 0;
+        }
+    }
+
+    private void transitionTo(final State newState, final long now) {
+        final State previous = this.state;
+        this.state = newState;
+        switch (newState) {
+            case OPEN:
+                this.openedAt = now;
+                this.openedCount++;
+                logger.warn("Duo circuit breaker moved from {} to {}; calls to Duo are suspended for {} ms",
+                        previous, newState, this.openDuration);
+                break;
+            case HALF_OPEN:
+                this.halfOpenedCount++;
+                logger.info("Duo circuit breaker moved from {} to {}; allowing a trial call", previous, newState);
+                break;
+            default:
+                this.closedCount++;
+                logger.info("Duo circuit breaker moved from {} to {}", previous, newState);
+                break;
+        }
+    }
+
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    public synchronized long getShortCircuitCount() {
+        return this.shortCircuitCount;
+    }
+
+    public synchronized long getOpenedCount() {
+        return this.openedCount;
+    }
+
+    public synchronized long getHalfOpenedCount() {
+        return this.halfOpenedCount;
+    }
+
+    public synchronized long getClosedCount() {
+        return this.closedCount;
+    }
+
+    /**
+     * Number of calls recorded within the rolling window.
+     *
+     * @return the call count
+     */
+    public synchronized long getCallCount() {
+        return sum(this.calls, now());
+    }
+
+    /**
+     * Percentage of calls within the rolling window that failed.
+     *
+     * @return the failure rate, or 0 if no calls were recorded
+     */
+    public synchronized int getFailureRate() {
+        return rate(this.failures);
+    }
+
+    /**
+     * Percentage of calls within the rolling window that were slow.
+     *
+     * @return the slow call rate, or 0 if no calls were recorded
+     */
+    public synchronized int getSlowCallRate() {
+        return rate(this.slowCalls);
+    }
+
+    /**
+     * Average latency of calls within the rolling window.
+     *
+     * @return the average latency in milliseconds, or 0 if no calls were recorded
+     */
+    public synchronized long getAverageLatency() {
+        final long now = now();
+        final long total = sum(this.calls, now);
+        return total == 0 ? 0 : sum(this.latencies, now) / total;
+    }
+
+    private int rate(final long[] counts) {
+        final long now = now();
+        final long total = sum(this.calls, now);
+        return total == 0 ? 0 : (int) (sum(counts, now) * PERCENT / total);
+    }
+}
@@ -1,15 +1,20 @@
 package net.unicon.cas.mfa.authentication.duo
 
+import groovy.transform.CompileStatic
 import org.apache.commons.lang3.StringUtils
 import org.apache.commons.lang3.builder.EqualsBuilder
 import org.apache.commons.lang3.builder.HashCodeBuilder
 import org.apache.commons.lang3.builder.ToStringBuilder
 import org.jasig.cas.authentication.Credential
 
+@CompileStatic
 class DuoCredentials implements Credential, Serializable {
 
     private String username;
     private String signedDuoResponse;
+    private String preauthResult;
+    private String integration;
+    private boolean failedOpen;
 
     @Override
     public String toString() {
@@ -61,7 +66,67 @@ class DuoCredentials implements Credential, Serializable {
         this.signedDuoResponse = signedDuoResponse;
     }
 
+    public String getPreauthResult() {
+        return preauthResult;
+    }
+
+    /**
+     * Record the Duo preauth result. This is never bound from the Duo login form; it is only set by
+     * the flow when Duo reported that the user may proceed without a second factor prompt.
+     *
+     * @param preauthResult the preauth result
+     */
+    public void setPreauthResult(final String preauthResult) {
+        this.preauthResult = preauthResult;
+    }
+
+    public String getIntegration() {
+        return integration;
+    }
+
+    /**
+     * Record the name of the Duo integration the signed response must be verified with.
+     * This is never bound from the Duo login form; it is set by the flow from the registered service.
+     *
+     * @param integration the integration name
+     */
+    public void setIntegration(final String integration) {
+        this.integration = integration;
+    }
+
+    public boolean isFailedOpen() {
+        return failedOpen;
+    }
+
+    /**
+     * Record that the user proceeds without a second factor because Duo is unavailable and the fail open
+     * policy applies. This is never bound from the Duo login form; it is only set by the flow.
+     *
+     * @param failedOpen whether the user proceeds per the fail open policy
+     */
+    public void setFailedOpen(final boolean failedOpen) {
+        this.failedOpen = failedOpen;
+    }
+
+    /**
+     * Forget the preauth result and the fail open flag, so that the credentials can only be authenticated
+     * with a signed Duo response. The flow calls this whenever the user is shown the Duo login form.
+     */
+    public void clearPreauthResult() {
+        this.preauthResult = null;
+        this.failedOpen = false;
+    }
+
+    /**
+     * Whether Duo preauth reported that the user may proceed without a second factor prompt.
+     *
+     * @return true if the preauth result is <code>allow</code> or <code>bypass</code>
+     */
+    public boolean isPreauthAllowed() {
+        return DuoAuthApiResult.RESULT_ALLOW.equals(this.preauthResult) || DuoAuthApiResult.RESULT_BYPASS.equals(this.preauthResult);
+    }
+
     public boolean isValid() {
-        return StringUtils.isNotBlank(this.username) && StringUtils.isNotBlank(this.signedDuoResponse);
+        return StringUtils.isNotBlank(this.username) && (StringUtils.isNotBlank(this.signedDuoResponse) || isPreauthAllowed());
     }
 }
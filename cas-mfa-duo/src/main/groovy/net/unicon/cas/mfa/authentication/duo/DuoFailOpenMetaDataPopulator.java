@@ -0,0 +1,32 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import org.jasig.cas.authentication.AuthenticationBuilder;
+import org.jasig.cas.authentication.AuthenticationMetaDataPopulator;
+import org.jasig.cas.authentication.Credential;
+
+/**
+ * Marks the authentications of users let through without a second factor by the fail open policy,
+ * under the {@link #ATTRIBUTE_NAME} attribute. Such authentications are completed by an authentication
+ * manager that does not remember the Duo authentication method, so that the single sign-on session
+ * does not count as Duo authenticated for any other service.
+ *
+ * @author Unicon inc.
+ * @see DuoFallbackPolicy#FAIL_OPEN
+ */
+public final class DuoFailOpenMetaDataPopulator implements AuthenticationMetaDataPopulator {
+
+    /**
+     * Name of the authentication attribute that records that Duo was bypassed per the fail open policy.
+     */
+    public static final String ATTRIBUTE_NAME = "duoBypassedOpen";
+
+    @Override
+    public void populateAttributes(final AuthenticationBuilder authenticationBuilder, final Credential credential) {
+        authenticationBuilder.addAttribute(ATTRIBUTE_NAME, Boolean.TRUE);
+    }
+
+    @Override
+    public boolean supports(final Credential credential) {
+        return credential instanceof DuoCredentials && ((DuoCredentials) credential).isFailedOpen();
+    }
+}
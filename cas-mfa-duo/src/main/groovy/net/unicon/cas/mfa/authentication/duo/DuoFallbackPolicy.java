@@ -0,0 +1,81 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.RegisteredServiceProperty;
+import org.jasig.cas.services.ServicesManager;
+
+/**
+ * Decides what happens to a Duo authentication request while Duo is considered unavailable.
+ * The policy is read from the <code>duo_fallback</code> property of the registered service, and
+ * defaults to the configured policy for services that do not define it:
+ * <ul>
+ *     <li><code>fail_closed</code>: the user is still sent to Duo, and cannot log in until Duo recovers.</li>
+ *     <li><code>fail_open</code>: the user proceeds without a second factor.</li>
+ *     <li>any other value names an alternate authentication method, which the user is routed to instead.
+ *     The method must be part of the authentication method configuration, and cannot be the Duo method itself.</li>
+ * </ul>
+ *
+ * <p>Duo is only considered unavailable by the circuit breaker around preauth calls, so the policy never
+ * applies unless the Auth API integration used for preauth is configured.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class DuoFallbackPolicy {
+
+    /**
+     * Registered service property that holds the fallback policy of the service.
+     */
+    public static final String FALLBACK_PROPERTY = "duo_fallback";
+
+    /**
+     * Keep requiring Duo.
+     */
+    public static final String FAIL_CLOSED = "fail_closed";
+
+    /**
+     * Let users through without a second factor.
+     */
+    public static final String FAIL_OPEN = "fail_open";
+
+    private final ServicesManager servicesManager;
+
+    private final String defaultPolicy;
+
+    /**
+     * Instantiates a new fallback policy.
+     *
+     * @param servicesManager the services manager
+     * @param defaultPolicy the policy of services that do not define one; <code>fail_closed</code> if blank
+     */
+    public DuoFallbackPolicy(final ServicesManager servicesManager, final String defaultPolicy) {
+        this.servicesManager = servicesManager;
+        this.defaultPolicy = StringUtils.isBlank(defaultPolicy) ? FAIL_CLOSED : defaultPolicy.trim();
+    }
+
+    /**
+     * Gets the fallback policy of a service.
+     *
+     * @param service the service, may be null
+     * @return <code>fail_closed</code>, <code>fail_open</code>, or the name of an alternate authentication method
+     */
+    public String getPolicy(final Service service) {
+        if (service == null || this.servicesManager == null) {
+            return this.defaultPolicy;
+        }
+        final RegisteredService registeredService = this.servicesManager.findServiceBy(service);
+        if (registeredService == null || registeredService.getProperties() == null) {
+            return this.defaultPolicy;
+        }
+        final RegisteredServiceProperty property = registeredService.getProperties().get(FALLBACK_PROPERTY);
+        if (property == null || StringUtils.isBlank(property.getValue())) {
+            return this.defaultPolicy;
+        }
+        return property.getValue().trim();
+    }
+
+    public String getDefaultPolicy() {
+        return this.defaultPolicy;
+    }
+}
@@ -0,0 +1,136 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.RegisteredServiceProperty;
+import org.jasig.cas.services.ServicesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of the Duo integrations CAS authenticates with. Each integration is a
+ * {@link DuoAuthenticationService} of its own, with its own keys, signed request cache,
+ * Auth API connection pool and circuit breaker, so that services can be spread across
+ * integrations and a busy service does not exhaust the rate limits of the others.
+ *
+ * <p>Registered services select an integration by name through their <code>duo_integration</code>
+ * property. Services that do not, or that name an integration that is not registered, use
+ * the default integration. The login flow resolves the integration name once, and the services
+ * are then found with a single map lookup.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class DuoIntegrationRegistry {
+
+    /**
+     * Registered service property that holds the name of the Duo integration of the service.
+     */
+    public static final String INTEGRATION_PROPERTY = "duo_integration";
+
+    /**
+     * Name under which the default integration is registered.
+     */
+    public static final String DEFAULT_INTEGRATION = "default";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ServicesManager servicesManager;
+
+    private final Map<String, DuoAuthenticationService> integrations;
+
+    private final DuoAuthenticationService defaultService;
+
+    /**
+     * Instantiates a new registry that only knows the default integration.
+     *
+     * @param defaultService the default integration
+     */
+    public DuoIntegrationRegistry(final DuoAuthenticationService defaultService) {
+        this(null, defaultService, Collections.<String, DuoAuthenticationService>emptyMap());
+    }
+
+    /**
+     * Instantiates a new registry.
+     *
+     * @param servicesManager the services manager
+     * @param defaultService the default integration
+     * @param integrations the other integrations, by name
+     */
+    public DuoIntegrationRegistry(final ServicesManager servicesManager, final DuoAuthenticationService defaultService,
+                                  final Map<String, DuoAuthenticationService> integrations) {
+        if (defaultService == null) {
+            throw new IllegalArgumentException("The default Duo integration cannot be null");
+        }
+        this.servicesManager = servicesManager;
+        this.defaultService = defaultService;
+
+        final Map<String, DuoAuthenticationService> map = new HashMap<>(integrations);
+        final DuoAuthenticationService previous = map.put(DEFAULT_INTEGRATION, defaultService);
+        if (previous != null && previous != defaultService) {
+            throw new IllegalArgumentException("The integration name " + DEFAULT_INTEGRATION + " is reserved for the default integration");
+        }
+        this.integrations = Collections.unmodifiableMap(map);
+        logger.debug("Registered Duo integrations {}", this.integrations.keySet());
+    }
+
+    /**
+     * Gets the name of the integration a service authenticates with.
+     *
+     * @param service the service, may be null
+     * @return the integration name, <code>default</code> if the service does not select a registered integration
+     */
+    public String getIntegrationName(final Service service) {
+        if (service == null || this.servicesManager == null) {
+            return DEFAULT_INTEGRATION;
+        }
+        final RegisteredService registeredService = this.servicesManager.findServiceBy(service);
+        if (registeredService == null || registeredService.getProperties() == null) {
+            return DEFAULT_INTEGRATION;
+        }
+        final RegisteredServiceProperty property = registeredService.getProperties().get(INTEGRATION_PROPERTY);
+        if (property == null || StringUtils.isBlank(property.getValue())) {
+            return DEFAULT_INTEGRATION;
+        }
+        final String name = property.getValue().trim();
+        if (!this.integrations.containsKey(name)) {
+            logger.warn("Service {} selects unknown Duo integration {}; using the default integration", service.getId(), name);
+            return DEFAULT_INTEGRATION;
+        }
+        return name;
+    }
+
+    /**
+     * Gets an integration by name.
+     *
+     * @param name the integration name, may be null
+     * @return the integration, or the default integration if none is registered under the name
+     */
+    public DuoAuthenticationService getService(final String name) {
+        final DuoAuthenticationService service = name == null ? null : this.integrations.get(name);
+        return service == null ? this.defaultService : service;
+    }
+
+    /**
+     * Gets the integration a service authenticates with.
+     *
+     * @param service the service, may be null
+     * @return the integration
+     */
+    public DuoAuthenticationService getService(final Service service) {
+        return getService(getIntegrationName(service));
+    }
+
+    /**
+     * Gets all the integrations, including the default one, e.g. to report on their circuit breakers.
+     *
+     * @return the integrations by name
+     */
+    public Map<String, DuoAuthenticationService> getIntegrations() {
+        return this.integrations;
+    }
+}
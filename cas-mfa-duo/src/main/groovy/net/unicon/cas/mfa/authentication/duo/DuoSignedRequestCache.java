@@ -0,0 +1,132 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the signed Duo request generated for each user, so that redisplaying the Duo login
+ * form, on refresh or after a validation error, does not sign a new request every time.
+ *
+ * <p>A signed request is accepted by Duo for {@link DuoSigner#DUO_EXPIRE} seconds. A cached request is
+ * handed out only while at least the configured minimum lifetime remains, so that the user has time to
+ * complete the Duo prompt; after that it is dropped and a fresh request is signed. Dropped requests are
+ * evicted in the background, at the configured cleanup interval, rather than lingering until the next
+ * access.</p>
+ *
+ * <p>Entries are keyed by username only, so a cache must not be shared between Duo integrations.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class DuoSignedRequestCache implements Closeable {
+
+    /**
+     * Default maximum number of users for which a signed request is kept.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    /**
+     * Default minimum lifetime, in seconds, a signed request must have left to be handed out again.
+     */
+    public static final long DEFAULT_MINIMUM_REMAINING_LIFETIME = 60;
+
+    /**
+     * Default interval, in seconds, at which expired requests are evicted.
+     */
+    public static final long DEFAULT_CLEANUP_INTERVAL = 60;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Cache<String, String> signedRequests;
+
+    private final ScheduledExecutorService cleanupExecutor;
+
+    /**
+     * Instantiates a new cache with the default size, minimum remaining lifetime and cleanup interval.
+     */
+    public DuoSignedRequestCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_MINIMUM_REMAINING_LIFETIME, DEFAULT_CLEANUP_INTERVAL);
+    }
+
+    /**
+     * Instantiates a new cache. If the minimum remaining lifetime is not shorter than
+     * {@link DuoSigner#DUO_EXPIRE}, requests are never reused.
+     *
+     * @param maximumSize the maximum number of users for which a signed request is kept
+     * @param minimumRemainingLifetime the minimum lifetime, in seconds, a signed request must have left to be handed out again
+     * @param cleanupInterval the interval, in seconds, at which expired requests are evicted; 0 or less disables the cleanup task
+     */
+    public DuoSignedRequestCache(final long maximumSize, final long minimumRemainingLifetime, final long cleanupInterval) {
+        final long reuseWindow = Math.max(0, DuoSigner.DUO_EXPIRE - minimumRemainingLifetime);
+        this.signedRequests = CacheBuilder.newBuilder()
+                .maximumSize(reuseWindow > 0 ? maximumSize : 0)
+                .expireAfterWrite(reuseWindow, TimeUnit.SECONDS)
+                .build();
+
+        if (reuseWindow > 0 && cleanupInterval > 0) {
+            this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "duo-signed-request-cache-cleanup");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.cleanupExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    signedRequests.cleanUp();
+                }
+            }, cleanupInterval, cleanupInterval, TimeUnit.SECONDS);
+        } else {
+            this.cleanupExecutor = null;
+        }
+        logger.debug("Signed Duo requests are reused for [{}] seconds after they are signed", reuseWindow);
+    }
+
+    /**
+     * Gets the signed request of the user, if one was signed recently enough to be reused.
+     *
+     * @param username the username
+     * @return the signed request, or null
+     */
+    public String getSignedRequest(final String username) {
+        return this.signedRequests.getIfPresent(username);
+    }
+
+    /**
+     * Remember the signed request of the user. The request is expected to have just been signed.
+     *
+     * @param username the username
+     * @param signedRequest the signed request
+     */
+    public void putSignedRequest(final String username, final String signedRequest) {
+        this.signedRequests.put(username, signedRequest);
+    }
+
+    /**
+     * Approximate number of users for which a signed request is kept.
+     *
+     * @return the size
+     */
+    public long size() {
+        return this.signedRequests.size();
+    }
+
+    /**
+     * Stop the cleanup task, if one is running.
+     */
+    @Override
+    public void close() {
+        if (this.cleanupExecutor != null) {
+            this.cleanupExecutor.shutdownNow();
+        }
+    }
+}
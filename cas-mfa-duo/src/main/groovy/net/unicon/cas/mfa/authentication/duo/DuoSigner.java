@@ -0,0 +1,260 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import com.duosecurity.Base64;
+import com.duosecurity.DuoWeb;
+import com.duosecurity.DuoWebException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Signs Duo requests and verifies Duo responses for one Duo integration, in the format of
+ * {@link DuoWeb#signRequest(String, String, String, String)} and {@link DuoWeb#verifyResponse(String, String, String, String)}.
+ *
+ * <p>Unlike the static {@link DuoWeb} methods, the secret and application keys are turned into
+ * {@link Mac} instances once per thread rather than once per signature, signatures are hex encoded through a
+ * lookup table, responses are parsed without regular expressions, and signatures are compared in constant time
+ * with {@link MessageDigest#isEqual(byte[], byte[])}, so that verifying a response computes two signatures
+ * rather than six.</p>
+ *
+ * <p>Instances are immutable and thread safe.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class DuoSigner {
+
+    private static final String DUO_PREFIX = "TX";
+
+    private static final String APP_PREFIX = "APP";
+
+    private static final String AUTH_PREFIX = "AUTH";
+
+    /**
+     * Lifetime, in seconds, of the cookie signed with the secret key. A signed request
+     * is accepted by Duo for this long.
+     */
+    public static final int DUO_EXPIRE = 300;
+
+    /**
+     * Lifetime, in seconds, of the cookie signed with the application key.
+     */
+    public static final int APP_EXPIRE = 3600;
+
+    private static final int IKEY_LEN = 20;
+
+    private static final int SKEY_LEN = 40;
+
+    private static final int AKEY_LEN = 40;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA1";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String integrationKey;
+
+    private final String keyError;
+
+    private final ThreadLocal<Mac> secretKeyMac;
+
+    private final ThreadLocal<Mac> applicationKeyMac;
+
+    /**
+     * Instantiates a new signer for the Duo integration.
+     *
+     * @param integrationKey the Duo integration key
+     * @param secretKey the Duo secret key
+     * @param applicationKey the application secret key
+     */
+    public DuoSigner(final String integrationKey, final String secretKey, final String applicationKey) {
+        this.integrationKey = integrationKey;
+        this.keyError = validateKeys(integrationKey, secretKey, applicationKey);
+        this.secretKeyMac = this.keyError == null ? newMacHolder(secretKey) : null;
+        this.applicationKeyMac = this.keyError == null ? newMacHolder(applicationKey) : null;
+    }
+
+    /**
+     * Sign a request for the user, as {@link DuoWeb#signRequest(String, String, String, String)} does.
+     *
+     * @param username the username
+     * @return the signed request, or one of the {@link DuoWeb} error strings
+     */
+    public String signRequest(final String username) {
+        if (username.isEmpty() || username.indexOf('|') != -1) {
+            return DuoWeb.ERR_USER;
+        }
+        if (this.keyError != null) {
+            return this.keyError;
+        }
+
+        try {
+            final long now = System.currentTimeMillis() / 1000;
+            return signValues(this.secretKeyMac.get(), username, DUO_PREFIX, now + DUO_EXPIRE)
+                    + ':' + signValues(this.applicationKeyMac.get(), username, APP_PREFIX, now + APP_EXPIRE);
+        } catch (final RuntimeException e) {
+            return DuoWeb.ERR_UNKNOWN;
+        }
+    }
+
+    /**
+     * Verify the signed response returned by Duo, as {@link DuoWeb#verifyResponse(String, String, String, String)} does.
+     *
+     * @param signedResponse the signed response
+     * @return the name of the authenticated user
+     * @throws DuoWebException if the response is invalid, expired, or signed for different users
+     */
+    public String verifyResponse(final String signedResponse) throws DuoWebException {
+        if (this.keyError != null) {
+            throw new DuoWebException(this.keyError);
+        }
+        final int separator = signedResponse.indexOf(':');
+        if (separator < 0) {
+            throw new DuoWebException(DuoWeb.INVALID_RESPONSE);
+        }
+        final int end = signedResponse.indexOf(':', separator + 1);
+
+        final String authUser = parseValues(this.secretKeyMac.get(), signedResponse.substring(0, separator), AUTH_PREFIX);
+        final String appUser = parseValues(this.applicationKeyMac.get(),
+                signedResponse.substring(separator + 1, end < 0 ? signedResponse.length() : end), APP_PREFIX);
+
+        if (!authUser.equals(appUser)) {
+            throw new DuoWebException("Authentication failed.");
+        }
+        return authUser;
+    }
+
+    /**
+     * Build a signed cookie.
+     *
+     * @param mac the mac of the signing key
+     * @param username the username
+     * @param prefix the cookie prefix
+     * @param expireTs the expiration timestamp, in seconds
+     * @return the signed cookie
+     */
+    private String signValues(final Mac mac, final String username, final String prefix, final long expireTs) {
+        final String values = username + '|' + this.integrationKey + '|' + expireTs;
+        final String cookie = prefix + '|' + Base64.encodeBytes(values.getBytes(UTF8));
+        return cookie + '|' + toHex(mac.doFinal(cookie.getBytes(UTF8)));
+    }
+
+    /**
+     * Verify a signed cookie and extract the username from it.
+     *
+     * @param mac the mac of the signing key
+     * @param value the signed cookie
+     * @param prefix the expected cookie prefix
+     * @return the username
+     * @throws DuoWebException if the cookie is invalid or expired
+     */
+    private String parseValues(final Mac mac, final String value, final String prefix) throws DuoWebException {
+        final long now = System.currentTimeMillis() / 1000;
+
+        final int first = value.indexOf('|');
+        final int second = first < 0 ? -1 : value.indexOf('|', first + 1);
+        if (second < 0 || value.indexOf('|', second + 1) >= 0) {
+            throw new DuoWebException(DuoWeb.INVALID_RESPONSE);
+        }
+
+        final byte[] expected = toHex(mac.doFinal(value.substring(0, second).getBytes(UTF8))).getBytes(UTF8);
+        final byte[] provided = value.substring(second + 1).getBytes(UTF8);
+        if (!MessageDigest.isEqual(expected, provided)) {
+            throw new DuoWebException(DuoWeb.INVALID_RESPONSE);
+        }
+
+        if (!value.substring(0, first).equals(prefix)) {
+            throw new DuoWebException(DuoWeb.INVALID_RESPONSE);
+        }
+
+        final String cookie;
+        try {
+            cookie = new String(Base64.decode(value.substring(first + 1, second)), UTF8);
+        } catch (final IOException e) {
+            throw new DuoWebException(DuoWeb.INVALID_RESPONSE);
+        }
+
+        final int userEnd = cookie.indexOf('|');
+        final int keyEnd = userEnd < 0 ? -1 : cookie.indexOf('|', userEnd + 1);
+        if (keyEnd < 0 || cookie.indexOf('|', keyEnd + 1) >= 0) {
+            throw new DuoWebException(DuoWeb.INVALID_RESPONSE);
+        }
+        if (!cookie.substring(userEnd + 1, keyEnd).equals(this.integrationKey)) {
+            throw new DuoWebException(DuoWeb.INVALID_RESPONSE);
+        }
+
+        final long expireTs;
+        try {
+            expireTs = Long.parseLong(cookie.substring(keyEnd + 1));
+        } catch (final NumberFormatException e) {
+            throw new DuoWebException(DuoWeb.INVALID_RESPONSE);
+        }
+        if (now >= expireTs) {
+            throw new DuoWebException("Transaction has expired. Please check that the system time is correct.");
+        }
+        return cookie.substring(0, userEnd);
+    }
+
+    /**
+     * Check the keys, the way {@link DuoWeb#signRequest(String, String, String, String)} does.
+     *
+     * @param integrationKey the Duo integration key
+     * @param secretKey the Duo secret key
+     * @param applicationKey the application secret key
+     * @return the {@link DuoWeb} error string, or null if the keys are valid
+     */
+    private static String validateKeys(final String integrationKey, final String secretKey, final String applicationKey) {
+        if (integrationKey == null || integrationKey.length() != IKEY_LEN) {
+            return DuoWeb.ERR_IKEY;
+        }
+        if (secretKey == null || secretKey.length() != SKEY_LEN) {
+            return DuoWeb.ERR_SKEY;
+        }
+        if (applicationKey == null || applicationKey.length() < AKEY_LEN) {
+            return DuoWeb.ERR_AKEY;
+        }
+        return null;
+    }
+
+    /**
+     * Create the per thread holder of the mac of a key. Each thread gets its own instance,
+     * since {@link Mac} instances are not thread safe.
+     *
+     * @param key the key
+     * @return the holder
+     */
+    static ThreadLocal<Mac> newMacHolder(final String key) {
+        final SecretKeySpec keySpec = new SecretKeySpec(key.getBytes(UTF8), HMAC_ALGORITHM);
+        return new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                try {
+                    final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                    mac.init(keySpec);
+                    return mac;
+                } catch (final GeneralSecurityException e) {
+                    throw new IllegalStateException("Unable to initialize " + HMAC_ALGORITHM, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Hex encode the bytes in lower case.
+     *
+     * @param bytes the bytes
+     * @return the hex string
+     */
+    static String toHex(final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+}
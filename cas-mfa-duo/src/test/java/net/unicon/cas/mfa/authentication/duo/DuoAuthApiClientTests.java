@@ -0,0 +1,230 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.authentication.AuthenticationBuilder;
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.services.DefaultRegisteredServiceProperty;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.ServicesManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class DuoAuthApiClientTests {
+
+    private static final String IKEY = "DIXXXXXXXXXXXXXXXXXX";
+
+    private static final String SKEY = "deadbeefdeadbeefdeadbeefdeadbeefdeadbeef";
+
+    private DuoAuthApiStubServer server;
+
+    private DuoAuthApiClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = new DuoAuthApiStubServer(IKEY, SKEY);
+        this.server.setResult("allowed user", DuoAuthApiResult.RESULT_ALLOW);
+        this.server.setResult("jbypass", DuoAuthApiResult.RESULT_BYPASS);
+        this.client = new DuoAuthApiClient(IKEY, SKEY, this.server.getUrl(), 4, 4, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        this.client.close();
+        this.server.stop();
+    }
+
+    @Test
+    public void testPreauth() {
+        assertTrue(this.client.preauth("allowed user").isAllowed());
+        assertTrue(this.client.preauth("jbypass").isAllowed());
+
+        final DuoAuthApiResult result = this.client.preauth("jdoe");
+        assertEquals("auth", result.getResult());
+        assertFalse(result.isAllowed());
+        assertEquals(3, this.server.getRequestCount());
+    }
+
+    @Test
+    public void testWrongSecretKey() {
+        final DuoAuthApiClient other = new DuoAuthApiClient(IKEY, "feedfacefeedfacefeedfacefeedfacefeedface", this.server.getUrl());
+        try {
+            assertNull(other.preauth("allowed user"));
+            assertEquals(1, this.server.getRequestCount());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testDeadline() {
+        this.server.setLatency(1000);
+        final DuoAuthApiClient impatient = new DuoAuthApiClient(IKEY, SKEY, this.server.getUrl(), 4, 4, 100);
+        try {
+            final long start = System.currentTimeMillis();
+            assertNull(impatient.preauth("allowed user"));
+            assertTrue(System.currentTimeMillis() - start < 900);
+        } finally {
+            impatient.close();
+        }
+    }
+
+    @Test
+    public void testPendingCallsAreBounded() throws Exception {
+        this.server.setLatency(300);
+        final List<Future<DuoAuthApiResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(this.client.submitPreauth("allowed user"));
+        }
+        assertNull(this.client.preauth("allowed user"));
+        for (final Future<DuoAuthApiResult> future : futures) {
+            assertTrue(future.get().isAllowed());
+        }
+    }
+
+    @Test
+    public void testConcurrentCallsShareConnections() throws Exception {
+        this.server.setLatency(200);
+        final long start = System.currentTimeMillis();
+        final List<Future<DuoAuthApiResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(this.client.submitPreauth("allowed user"));
+        }
+        for (final Future<DuoAuthApiResult> future : futures) {
+            assertTrue(future.get().isAllowed());
+        }
+        assertTrue(System.currentTimeMillis() - start < 700);
+    }
+
+    @Test
+    public void testDisabled() {
+        final DuoAuthApiClient disabled = new DuoAuthApiClient("", "", this.server.getUrl());
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.preauth("allowed user"));
+        assertEquals(0, this.server.getRequestCount());
+        disabled.close();
+    }
+
+    @Test
+    public void testPreauthenticateBypassesPrompt() {
+        final DuoAuthenticationService service = new DuoAuthenticationService(IKEY, SKEY,
+                "useacustomerprovidedapplicationsecretkey", this.server.getUrl());
+        service.setAuthApiClient(this.client);
+
+        final DuoCredentials allowed = new DuoCredentials();
+        allowed.setUsername("allowed user");
+        assertEquals("bypass", service.preauthenticate(allowed, null));
+        assertTrue(allowed.isPreauthAllowed());
+        assertTrue(allowed.isValid());
+
+        final DuoCredentials prompted = new DuoCredentials();
+        prompted.setUsername("jdoe");
+        assertEquals("prompt", service.preauthenticate(prompted, null));
+        assertFalse(prompted.isValid());
+    }
+
+    @Test
+    public void testOpenCircuitAppliesFallbackPolicy() {
+        final DuoAuthApiClient broken = new DuoAuthApiClient(IKEY, "feedfacefeedfacefeedfacefeedfacefeedface", this.server.getUrl());
+        final DuoCircuitBreaker breaker = new DuoCircuitBreaker(10, 1000, 2, 50, 1500, 80, 60000);
+        final DuoAuthenticationService service = new DuoAuthenticationService(IKEY, SKEY,
+                "useacustomerprovidedapplicationsecretkey", this.server.getUrl());
+        service.setAuthApiClient(broken);
+        service.setCircuitBreaker(breaker);
+        try {
+            for (int i = 0; i < 2; i++) {
+                final DuoCredentials credentials = new DuoCredentials();
+                credentials.setUsername("allowed user");
+                assertEquals("prompt", service.preauthenticate(credentials, null));
+            }
+            assertEquals(DuoCircuitBreaker.State.OPEN, breaker.getState());
+            assertEquals(2, this.server.getRequestCount());
+
+            final DuoCredentials closed = new DuoCredentials();
+            closed.setUsername("allowed user");
+            assertEquals("prompt", service.preauthenticate(closed, null));
+            assertFalse(closed.isValid());
+
+            service.setFallbackPolicy(new DuoFallbackPolicy(null, DuoFallbackPolicy.FAIL_OPEN));
+            final DuoCredentials open = new DuoCredentials();
+            open.setUsername("allowed user");
+            assertEquals("failOpen", service.preauthenticate(open, null));
+            assertTrue(open.isValid());
+            assertTrue(open.isFailedOpen());
+
+            service.setFallbackPolicy(new DuoFallbackPolicy(null, "strong-two-factor"));
+            final DuoCredentials routed = new DuoCredentials();
+            routed.setUsername("allowed user");
+            assertEquals("fallback", service.preauthenticate(routed, null));
+            assertEquals("strong-two-factor", service.getFallbackPolicy(null));
+
+            assertEquals(2, this.server.getRequestCount());
+            assertEquals(3, breaker.getShortCircuitCount());
+        } finally {
+            broken.close();
+        }
+    }
+
+    @Test
+    public void testFailOpenLoginDoesNotSatisfyFailClosedService() throws Exception {
+        final ServicesManager servicesManager = mock(ServicesManager.class);
+        final Service failOpenService = register(servicesManager, "https://open.example.org/app", DuoFallbackPolicy.FAIL_OPEN);
+        final Service failClosedService = register(servicesManager, "https://closed.example.org/app", null);
+
+        final DuoAuthApiClient broken = new DuoAuthApiClient(IKEY, "feedfacefeedfacefeedfacefeedfacefeedface", this.server.getUrl());
+        final DuoCircuitBreaker breaker = new DuoCircuitBreaker(10, 1000, 1, 50, 1500, 80, 60000);
+        final DuoAuthenticationService service = new DuoAuthenticationService(IKEY, SKEY,
+                "useacustomerprovidedapplicationsecretkey", this.server.getUrl());
+        service.setAuthApiClient(broken);
+        service.setCircuitBreaker(breaker);
+        service.setFallbackPolicy(new DuoFallbackPolicy(servicesManager, DuoFallbackPolicy.FAIL_CLOSED));
+        try {
+            assertEquals("prompt", service.preauthenticate(credentials("allowed user"), failOpenService));
+            assertEquals(DuoCircuitBreaker.State.OPEN, breaker.getState());
+
+            final DuoCredentials open = credentials("allowed user");
+            assertEquals("failOpen", service.preauthenticate(open, failOpenService));
+            assertEquals("allowed user", new DuoAuthenticationHandler(service).authenticate(open).getPrincipal().getId());
+
+            final DuoFailOpenMetaDataPopulator populator = new DuoFailOpenMetaDataPopulator();
+            final AuthenticationBuilder builder = mock(AuthenticationBuilder.class);
+            assertTrue(populator.supports(open));
+            populator.populateAttributes(builder, open);
+            verify(builder).addAttribute(DuoFailOpenMetaDataPopulator.ATTRIBUTE_NAME, Boolean.TRUE);
+            verifyNoMoreInteractions(builder);
+
+            final DuoCredentials closed = credentials("allowed user");
+            assertEquals("prompt", service.preauthenticate(closed, failClosedService));
+            assertFalse(closed.isValid());
+            assertFalse(populator.supports(closed));
+        } finally {
+            broken.close();
+        }
+    }
+
+    private static DuoCredentials credentials(final String username) {
+        final DuoCredentials credentials = new DuoCredentials();
+        credentials.setUsername(username);
+        return credentials;
+    }
+
+    private static Service register(final ServicesManager servicesManager, final String serviceId, final String fallbackPolicy) {
+        final Service service = TestUtils.getService(serviceId);
+        final RegisteredService registeredService = TestUtils.getRegisteredService(serviceId);
+        if (fallbackPolicy != null) {
+            final DefaultRegisteredServiceProperty prop = new DefaultRegisteredServiceProperty();
+            prop.setValues(Collections.singleton(fallbackPolicy));
+            registeredService.getProperties().put(DuoFallbackPolicy.FALLBACK_PROPERTY, prop);
+        }
+        when(servicesManager.findServiceBy(service)).thenReturn(registeredService);
+        return service;
+    }
+}
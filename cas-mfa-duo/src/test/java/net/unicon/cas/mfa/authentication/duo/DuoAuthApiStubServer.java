@@ -0,0 +1,154 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import com.duosecurity.Base64;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in for the Duo Auth API, serving <code>/auth/v2/preauth</code> on an ephemeral local port.
+ * Requests are checked against the integration keys the way Duo does, results are configured per user,
+ * and a latency can be added to every response.
+ */
+public final class DuoAuthApiStubServer {
+
+    private final String integrationKey;
+
+    private final String secretKey;
+
+    private final HttpServer server;
+
+    private final Map<String, String> results = new ConcurrentHashMap<>();
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    private volatile long latency;
+
+    public DuoAuthApiStubServer(final String integrationKey, final String secretKey) throws IOException {
+        this.integrationKey = integrationKey;
+        this.secretKey = secretKey;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.createContext("/auth/v2/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                respond(exchange);
+            }
+        });
+        this.server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    public void setResult(final String username, final String result) {
+        this.results.put(username, result);
+    }
+
+    public void setLatency(final long latency) {
+        this.latency = latency;
+    }
+
+    public int getRequestCount() {
+        return this.requestCount.get();
+    }
+
+    public void stop() {
+        this.server.stop(0);
+    }
+
+    private void respond(final HttpExchange exchange) throws IOException {
+        this.requestCount.incrementAndGet();
+        try {
+            Thread.sleep(this.latency);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        final String body = read(exchange.getRequestBody());
+        final Map<String, String> parameters = new TreeMap<>();
+        for (final String pair : body.split("&")) {
+            final int separator = pair.indexOf('=');
+            parameters.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                    URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+        }
+
+        final String canonicalRequest = exchange.getRequestHeaders().getFirst("Date") + '\n'
+                + exchange.getRequestMethod() + '\n'
+                + exchange.getRequestHeaders().getFirst("Host").toLowerCase() + '\n'
+                + exchange.getRequestURI().getPath() + '\n'
+                + canonicalize(parameters);
+        final String expected = "Basic " + Base64.encodeBytes((this.integrationKey + ':' + sign(canonicalRequest)).getBytes("UTF-8"));
+        if (!expected.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            send(exchange, 401, "{\"stat\":\"FAIL\",\"code\":40103,\"message\":\"Invalid signature in request credentials\"}");
+            return;
+        }
+
+        final String result = this.results.containsKey(parameters.get("username")) ? this.results.get(parameters.get("username")) : "auth";
+        send(exchange, 200, "{\"stat\":\"OK\",\"response\":{\"result\":\"" + result + "\",\"status_msg\":\"Stubbed\"}}");
+    }
+
+    private static String canonicalize(final Map<String, String> parameters) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (final Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append('&');
+            }
+            builder.append(encode(parameter.getKey())).append('=').append(encode(parameter.getValue()));
+        }
+        return builder.toString();
+    }
+
+    private static String encode(final String value) throws IOException {
+        return URLEncoder.encode(value, "UTF-8").replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+    }
+
+    private String sign(final String value) throws IOException {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec(this.secretKey.getBytes("UTF-8"), "HmacSHA1"));
+            final StringBuilder builder = new StringBuilder();
+            for (final byte b : mac.doFinal(value.getBytes("UTF-8"))) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (final Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final String json) throws IOException {
+        final byte[] bytes = json.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
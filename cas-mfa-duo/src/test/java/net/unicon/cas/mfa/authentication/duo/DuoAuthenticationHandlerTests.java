@@ -0,0 +1,82 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import org.jasig.cas.authentication.HandlerResult;
+import org.jasig.cas.authentication.UsernamePasswordCredential;
+import org.junit.Test;
+
+import javax.security.auth.login.FailedLoginException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class DuoAuthenticationHandlerTests {
+
+    private static final String IKEY = "DIXXXXXXXXXXXXXXXXXX";
+
+    private static final String SKEY = "deadbeefdeadbeefdeadbeefdeadbeefdeadbeef";
+
+    private static final String AKEY = "useacustomerprovidedapplicationsecretkey";
+
+    private final DuoAuthenticationService service = new DuoAuthenticationService(IKEY, SKEY, AKEY, "api-default.duosecurity.com");
+
+    private final DuoAuthenticationHandler handler = new DuoAuthenticationHandler(this.service);
+
+    @Test
+    public void testSupports() {
+        assertTrue(this.handler.supports(new DuoCredentials()));
+        assertFalse(this.handler.supports(new UsernamePasswordCredential("jdoe", "password")));
+    }
+
+    @Test
+    public void testSignedResponse() throws Exception {
+        final HandlerResult result = this.handler.authenticate(credentials("jdoe",
+                DuoSignerTests.toResponse(this.service.generateSignedRequestToken("jdoe"), SKEY)));
+        assertEquals("jdoe", result.getPrincipal().getId());
+    }
+
+    @Test(expected = FailedLoginException.class)
+    public void testResponseForAnotherUser() throws Exception {
+        this.handler.authenticate(credentials("jdoe",
+                DuoSignerTests.toResponse(this.service.generateSignedRequestToken("someone"), SKEY)));
+    }
+
+    @Test(expected = FailedLoginException.class)
+    public void testInvalidResponse() throws Exception {
+        this.handler.authenticate(credentials("jdoe", "AUTH|bogus"));
+    }
+
+    @Test
+    public void testPreauthAllowed() throws Exception {
+        final DuoCredentials credentials = credentials("jdoe", null);
+        credentials.setPreauthResult(DuoAuthApiResult.RESULT_ALLOW);
+        assertEquals("jdoe", this.handler.authenticate(credentials).getPrincipal().getId());
+    }
+
+    @Test
+    public void testResponseIsVerifiedWithItsIntegration() throws Exception {
+        final String otherKey = "feedfacefeedfacefeedfacefeedfacefeedface";
+        final DuoAuthenticationService other = new DuoAuthenticationService(IKEY, otherKey, AKEY, "api-other.duosecurity.com");
+        final DuoAuthenticationHandler registryHandler = new DuoAuthenticationHandler(
+                new DuoIntegrationRegistry(null, this.service, Collections.singletonMap("other", other)));
+
+        final DuoCredentials credentials = credentials("jdoe",
+                DuoSignerTests.toResponse(other.generateSignedRequestToken("jdoe"), otherKey));
+        credentials.setIntegration("other");
+        assertEquals("jdoe", registryHandler.authenticate(credentials).getPrincipal().getId());
+
+        credentials.setIntegration(null);
+        try {
+            registryHandler.authenticate(credentials);
+            fail("The default integration must not accept a response signed for another integration");
+        } catch (final FailedLoginException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    private static DuoCredentials credentials(final String username, final String signedResponse) {
+        final DuoCredentials credentials = new DuoCredentials();
+        credentials.setUsername(username);
+        credentials.setSignedDuoResponse(signedResponse);
+        return credentials;
+    }
+}
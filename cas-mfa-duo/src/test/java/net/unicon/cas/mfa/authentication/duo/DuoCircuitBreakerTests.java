@@ -0,0 +1,128 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DuoCircuitBreakerTests {
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void testStaysClosedBelowMinimumCalls() {
+        final DuoCircuitBreaker breaker = new DuoCircuitBreaker(10, 1000, 5, 50, 1000, 80, 60000, this.ticker);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure(10);
+        }
+        assertEquals(DuoCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(100, breaker.getFailureRate());
+        assertEquals(4, breaker.getCallCount());
+    }
+
+    @Test
+    public void testOpensOnFailureRate() {
+        final DuoCircuitBreaker breaker = new DuoCircuitBreaker(10, 1000, 4, 50, 1000, 80, 60000, this.ticker);
+        breaker.recordSuccess(10);
+        breaker.recordSuccess(30);
+        breaker.recordFailure(20);
+        assertEquals(DuoCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(20, breaker.getAverageLatency());
+
+        breaker.recordFailure(20);
+        assertEquals(DuoCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getOpenedCount());
+
+        assertFalse(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        assertEquals(2, breaker.getShortCircuitCount());
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate() {
+        final DuoCircuitBreaker breaker = new DuoCircuitBreaker(10, 1000, 2, 50, 100, 80, 60000, this.ticker);
+        breaker.recordSuccess(500);
+        breaker.recordSuccess(500);
+        assertEquals(100, breaker.getSlowCallRate());
+        assertEquals(0, breaker.getFailureRate());
+        assertEquals(DuoCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testTrialCallClosesCircuit() {
+        final DuoCircuitBreaker breaker = new DuoCircuitBreaker(10, 1000, 1, 50, 1000, 80, 50, this.ticker);
+        breaker.recordFailure(10);
+        assertEquals(DuoCircuitBreaker.State.OPEN, breaker.getState());
+
+        this.ticker.advance(100);
+        assertTrue(breaker.allowRequest());
+        assertEquals(DuoCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess(10);
+        assertEquals(DuoCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getCallCount());
+        assertTrue(breaker.allowRequest());
+        assertEquals(1, breaker.getHalfOpenedCount());
+        assertEquals(1, breaker.getClosedCount());
+    }
+
+    @Test
+    public void testFailedTrialCallReopensCircuit() {
+        final DuoCircuitBreaker breaker = new DuoCircuitBreaker(10, 1000, 1, 50, 1000, 80, 50, this.ticker);
+        breaker.recordFailure(10);
+
+        this.ticker.advance(100);
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure(10);
+        assertEquals(DuoCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertEquals(2, breaker.getOpenedCount());
+    }
+
+    @Test
+    public void testOldCallsLeaveTheWindow() {
+        final DuoCircuitBreaker breaker = new DuoCircuitBreaker(2, 50, 3, 50, 1000, 80, 60000, this.ticker);
+        breaker.recordFailure(10);
+        breaker.recordFailure(10);
+        this.ticker.advance(150);
+        assertEquals(0, breaker.getCallCount());
+        breaker.recordFailure(10);
+        assertEquals(DuoCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testUnrecordedTrialCallIsGivenUp() {
+        final DuoCircuitBreaker breaker = new DuoCircuitBreaker(10, 1000, 1, 50, 1000, 80, 50, this.ticker);
+        breaker.recordFailure(10);
+
+        this.ticker.advance(100);
+        assertTrue(breaker.allowRequest());
+        this.ticker.advance(20);
+        assertFalse(breaker.allowRequest());
+        assertEquals(DuoCircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        this.ticker.advance(50);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        breaker.recordSuccess(10);
+        assertEquals(DuoCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private static final class FakeTicker extends Ticker {
+
+        private long millis = TimeUnit.DAYS.toMillis(1);
+
+        @Override
+        public long read() {
+            return TimeUnit.MILLISECONDS.toNanos(this.millis);
+        }
+
+        void advance(final long duration) {
+            this.millis += duration;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.*;
+
+public class DuoCompileStaticTests {
+
+    private static final String CALL_SITE_ARRAY_METHOD = "$getCallSiteArray";
+
+    @Test
+    public void testLoginPathClassesAreStaticallyCompiled() {
+        assertNoCallSiteArray(DuoAuthenticationHandler.class);
+        assertNoCallSiteArray(DuoAuthenticationService.class);
+        assertNoCallSiteArray(DuoCredentials.class);
+    }
+
+    private static void assertNoCallSiteArray(final Class<?> clazz) {
+        for (final Method method : clazz.getDeclaredMethods()) {
+            assertFalse(clazz.getSimpleName() + " dispatches calls dynamically; it should be @CompileStatic",
+                    CALL_SITE_ARRAY_METHOD.equals(method.getName()));
+        }
+    }
+}
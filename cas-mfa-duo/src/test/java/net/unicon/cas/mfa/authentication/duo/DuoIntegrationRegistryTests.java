@@ -0,0 +1,93 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.services.DefaultRegisteredServiceProperty;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.ServicesManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class DuoIntegrationRegistryTests {
+
+    private static final String APPLICATION_KEY = "useacustomerprovidedapplicationsecretkey";
+
+    private final DuoAuthenticationService defaultService = new DuoAuthenticationService("DIXXXXXXXXXXXXXXXXXX",
+            "deadbeefdeadbeefdeadbeefdeadbeefdeadbeef", APPLICATION_KEY, "api-default.duosecurity.com");
+
+    private final DuoAuthenticationService researchService = new DuoAuthenticationService("DIYYYYYYYYYYYYYYYYYY",
+            "feedfacefeedfacefeedfacefeedfacefeedface", APPLICATION_KEY, "api-research.duosecurity.com");
+
+    private ServicesManager servicesManager;
+
+    private DuoIntegrationRegistry registry;
+
+    @Before
+    public void setUp() {
+        this.servicesManager = mock(ServicesManager.class);
+        final Map<String, DuoAuthenticationService> integrations = new HashMap<>();
+        integrations.put("research", this.researchService);
+        this.registry = new DuoIntegrationRegistry(this.servicesManager, this.defaultService, integrations);
+    }
+
+    @Test
+    public void testServiceSelectsIntegration() {
+        final Service service = register("https://research.example.org/app", "research");
+        assertEquals("research", this.registry.getIntegrationName(service));
+        assertSame(this.researchService, this.registry.getService(service));
+    }
+
+    @Test
+    public void testDefaultIntegration() {
+        final Service plain = register("https://www.example.org/app", null);
+        assertEquals(DuoIntegrationRegistry.DEFAULT_INTEGRATION, this.registry.getIntegrationName(plain));
+        assertSame(this.defaultService, this.registry.getService(plain));
+
+        final Service unknown = register("https://unknown.example.org/app", "unknown");
+        assertEquals(DuoIntegrationRegistry.DEFAULT_INTEGRATION, this.registry.getIntegrationName(unknown));
+
+        final Service unregistered = TestUtils.getService("https://unregistered.example.org/app");
+        assertEquals(DuoIntegrationRegistry.DEFAULT_INTEGRATION, this.registry.getIntegrationName(unregistered));
+        assertSame(this.defaultService, this.registry.getService((String) null));
+        assertEquals(2, this.registry.getIntegrations().size());
+    }
+
+    @Test
+    public void testSignedResponseIsVerifiedWithItsIntegration() throws Exception {
+        final DuoAuthenticationService service = this.registry.getService("research");
+        final String signedResponse = DuoSignerTests.toResponse(service.generateSignedRequestToken("jdoe"),
+                "feedfacefeedfacefeedfacefeedfacefeedface");
+        assertEquals("jdoe", service.authenticate(signedResponse));
+        try {
+            this.registry.getService(DuoIntegrationRegistry.DEFAULT_INTEGRATION).authenticate(signedResponse);
+            fail("A response signed for another integration must not verify");
+        } catch (final Exception e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDefaultNameIsReserved() {
+        new DuoIntegrationRegistry(this.servicesManager, this.defaultService,
+                Collections.singletonMap(DuoIntegrationRegistry.DEFAULT_INTEGRATION, this.researchService));
+    }
+
+    private Service register(final String serviceId, final String integration) {
+        final Service service = TestUtils.getService(serviceId);
+        final RegisteredService registeredService = TestUtils.getRegisteredService(serviceId);
+        if (integration != null) {
+            final DefaultRegisteredServiceProperty prop = new DefaultRegisteredServiceProperty();
+            prop.setValues(Collections.singleton(integration));
+            registeredService.getProperties().put(DuoIntegrationRegistry.INTEGRATION_PROPERTY, prop);
+        }
+        when(this.servicesManager.findServiceBy(service)).thenReturn(registeredService);
+        return service;
+    }
+}
@@ -0,0 +1,54 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import com.duosecurity.DuoWeb;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DuoSignedRequestCacheTests {
+
+    private static final String IKEY = "DIXXXXXXXXXXXXXXXXXX";
+
+    private static final String SKEY = "deadbeefdeadbeefdeadbeefdeadbeefdeadbeef";
+
+    private static final String AKEY = "useacustomerprovidedapplicationsecretkey";
+
+    private final DuoSignedRequestCache cache = new DuoSignedRequestCache();
+
+    @After
+    public void tearDown() {
+        this.cache.close();
+    }
+
+    @Test
+    public void testSignedRequestIsReused() {
+        final DuoAuthenticationService service = new DuoAuthenticationService(IKEY, SKEY, AKEY, "api.duosecurity.com");
+        service.setSignedRequestCache(this.cache);
+
+        final Object signedRequest = service.generateSignedRequestToken("jdoe");
+        assertSame(signedRequest, service.generateSignedRequestToken("jdoe"));
+        assertNotEquals(signedRequest, service.generateSignedRequestToken("jsmith"));
+        assertEquals(2, this.cache.size());
+    }
+
+    @Test
+    public void testErrorsAreNotCached() {
+        final DuoAuthenticationService service = new DuoAuthenticationService("short", SKEY, AKEY, "api.duosecurity.com");
+        service.setSignedRequestCache(this.cache);
+
+        assertEquals(DuoWeb.ERR_IKEY, service.generateSignedRequestToken("jdoe"));
+        assertNull(this.cache.getSignedRequest("jdoe"));
+    }
+
+    @Test
+    public void testNoReuseWithoutEnoughLifetime() {
+        final DuoSignedRequestCache disabled = new DuoSignedRequestCache(100, DuoSigner.DUO_EXPIRE, 60);
+        try {
+            disabled.putSignedRequest("jdoe", "TX|request");
+            assertNull(disabled.getSignedRequest("jdoe"));
+        } finally {
+            disabled.close();
+        }
+    }
+}
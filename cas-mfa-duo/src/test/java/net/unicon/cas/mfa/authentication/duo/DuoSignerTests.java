@@ -0,0 +1,91 @@
+package net.unicon.cas.mfa.authentication.duo;
+
+import com.duosecurity.DuoWeb;
+import com.duosecurity.DuoWebException;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+public class DuoSignerTests {
+
+    private static final String IKEY = "DIXXXXXXXXXXXXXXXXXX";
+
+    private static final String SKEY = "deadbeefdeadbeefdeadbeefdeadbeefdeadbeef";
+
+    private static final String AKEY = "useacustomerprovidedapplicationsecretkey";
+
+    private final DuoSigner signer = new DuoSigner(IKEY, SKEY, AKEY);
+
+    @Test
+    public void testVerifyResponseSignedByDuoWeb() throws Exception {
+        final String response = toResponse(DuoWeb.signRequest(IKEY, SKEY, AKEY, "jdoe"));
+        assertEquals("jdoe", this.signer.verifyResponse(response));
+        assertEquals(DuoWeb.verifyResponse(IKEY, SKEY, AKEY, response), this.signer.verifyResponse(response));
+    }
+
+    @Test
+    public void testDuoWebVerifiesSignedRequest() throws Exception {
+        final String response = toResponse(this.signer.signRequest("jdoe"));
+        assertEquals("jdoe", DuoWeb.verifyResponse(IKEY, SKEY, AKEY, response));
+    }
+
+    @Test
+    public void testSignRequestErrors() {
+        assertEquals(DuoWeb.ERR_USER, this.signer.signRequest(""));
+        assertEquals(DuoWeb.ERR_USER, this.signer.signRequest("j|doe"));
+        assertEquals(DuoWeb.ERR_IKEY, new DuoSigner("short", SKEY, AKEY).signRequest("jdoe"));
+        assertEquals(DuoWeb.ERR_SKEY, new DuoSigner(IKEY, "short", AKEY).signRequest("jdoe"));
+        assertEquals(DuoWeb.ERR_AKEY, new DuoSigner(IKEY, SKEY, "short").signRequest("jdoe"));
+    }
+
+    @Test(expected = DuoWebException.class)
+    public void testTamperedSignature() throws Exception {
+        final String response = toResponse(this.signer.signRequest("jdoe"));
+        final int separator = response.indexOf(':');
+        final char last = response.charAt(separator - 1);
+        this.signer.verifyResponse(response.substring(0, separator - 1) + (last == '0' ? '1' : '0') + response.substring(separator));
+    }
+
+    @Test(expected = DuoWebException.class)
+    public void testWrongPrefix() throws Exception {
+        this.signer.verifyResponse(this.signer.signRequest("jdoe"));
+    }
+
+    @Test(expected = DuoWebException.class)
+    public void testWrongKeys() throws Exception {
+        final String response = toResponse(this.signer.signRequest("jdoe"));
+        new DuoSigner(IKEY, "feedfacefeedfacefeedfacefeedfacefeedface", AKEY).verifyResponse(response);
+    }
+
+    @Test(expected = DuoWebException.class)
+    public void testMalformedResponse() throws Exception {
+        this.signer.verifyResponse("AUTH|bogus");
+    }
+
+    @Test(expected = DuoWebException.class)
+    public void testMissingApplicationCookie() throws Exception {
+        final String response = toResponse(this.signer.signRequest("jdoe"));
+        this.signer.verifyResponse(response.substring(0, response.indexOf(':')));
+    }
+
+    private static String toResponse(final String signedRequest) throws Exception {
+        return toResponse(signedRequest, SKEY);
+    }
+
+    // Duo answers a signed request by re-signing its TX cookie as an AUTH cookie with the secret key.
+    static String toResponse(final String signedRequest, final String secretKey) throws Exception {
+        final String[] parts = signedRequest.split(":");
+        final String txValues = parts[0].split("\\|")[1];
+        final String cookie = "AUTH|" + txValues;
+        final Mac mac = Mac.getInstance("HmacSHA1");
+        mac.init(new SecretKeySpec(secretKey.getBytes("UTF-8"), "HmacSHA1"));
+        final StringBuilder sig = new StringBuilder();
+        for (final byte b : mac.doFinal(cookie.getBytes("UTF-8"))) {
+            sig.append(String.format("%02x", b));
+        }
+        return cookie + '|' + sig + ':' + parts[1];
+    }
+}
@@ -4,6 +4,8 @@ import com.codahale.metrics.annotation.Counted;
 import com.codahale.metrics.annotation.Metered;
 import com.codahale.metrics.annotation.Timed;
 import com.google.common.base.Predicate;
+import net.unicon.cas.mfa.authentication.CachingAuthenticationSupport;
+import net.unicon.cas.mfa.authentication.MultiFactorAuthenticationDecisionCache;
 import net.unicon.cas.mfa.authentication.principal.MultiFactorCredentials;
 import org.jasig.cas.CentralAuthenticationService;
 import org.jasig.cas.authentication.Authentication;
@@ -71,6 +73,12 @@ public final class MultiFactorAwareCentralAuthenticationService implements Centr
     @NotNull
     private TicketRegistry serviceTicketRegistry;
 
+    /** Authentication support whose cached authentications are invalidated when a TGT is destroyed, if any. */
+    private CachingAuthenticationSupport cachingAuthenticationSupport;
+
+    /** Cache of the mfa decisions made per SSO session, invalidated when a TGT is destroyed, if any. */
+    private MultiFactorAuthenticationDecisionCache decisionCache;
+
     @Override
     @Audit(
             action="TICKET_GRANTING_TICKET",
@@ -163,7 +171,16 @@ public final class MultiFactorAwareCentralAuthenticationService implements Centr
     @Counted(name="DESTROY_TICKET_GRANTING_TICKET_COUNTER", monotonic=true)
     @Override
     public List<LogoutRequest> destroyTicketGrantingTicket(@NotNull final String ticketGrantingTicketId) {
-        return this.delegate.destroyTicketGrantingTicket(ticketGrantingTicketId);
+        try {
+            return this.delegate.destroyTicketGrantingTicket(ticketGrantingTicketId);
+        } finally {
+            if (this.cachingAuthenticationSupport != null) {
+                this.cachingAuthenticationSupport.invalidate(ticketGrantingTicketId);
+            }
+            if (this.decisionCache != null) {
+                this.decisionCache.invalidate(ticketGrantingTicketId);
+            }
+        }
     }
 
     @Audit(
@@ -217,6 +234,22 @@ public final class MultiFactorAwareCentralAuthenticationService implements Centr
         this.ticketGrantingTicketUniqueTicketIdGenerator = uniqueTicketIdGenerator;
     }
 
+    /**
+     * Inject the caching authentication support to invalidate when a TGT is destroyed.
+     * @param cachingAuthenticationSupport the caching authentication support
+     */
+    public void setCachingAuthenticationSupport(final CachingAuthenticationSupport cachingAuthenticationSupport) {
+        this.cachingAuthenticationSupport = cachingAuthenticationSupport;
+    }
+
+    /**
+     * Inject the cache of mfa decisions to invalidate when a TGT is destroyed.
+     * @param decisionCache the decision cache
+     */
+    public void setDecisionCache(final MultiFactorAuthenticationDecisionCache decisionCache) {
+        this.decisionCache = decisionCache;
+    }
+
     /**
      * Inject a delegate CAS implementation to fulfill the non-TGT-creating CAS API methods.
      * The delegate CAS instance should share a TicketRegistry with this CAS instance otherwise this CAS will be
@@ -1,5 +1,6 @@
 package net.unicon.cas.mfa.authentication;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.apache.commons.lang3.builder.CompareToBuilder;
 import org.apache.commons.lang3.builder.EqualsBuilder;
@@ -7,6 +8,9 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Defines an mfa authentication method
@@ -23,12 +27,16 @@ public final class AuthenticationMethod implements Comparable, Serializable {
     @JsonProperty
     private final String name;
 
+    @JsonProperty
+    private final Set<String> satisfies;
+
     /**
      * Instantiates a new Authentication method.
      */
     protected AuthenticationMethod() {
         this.rank = null;
         this.name = null;
+        this.satisfies = null;
     }
 
     /**
@@ -38,8 +46,23 @@ public final class AuthenticationMethod implements Comparable, Serializable {
      * @param name the name
      */
     public AuthenticationMethod(final String name, final Integer rank) {
+        this(name, rank, null);
+    }
+
+    /**
+     * Instantiates a new Authentication method. Also used to read methods from JSON,
+     * so that the satisfied methods are always held in an unmodifiable set.
+     *
+     * @param name the name
+     * @param rank the rank
+     * @param satisfies names of the methods that this method directly satisfies
+     */
+    @JsonCreator
+    public AuthenticationMethod(@JsonProperty("name") final String name, @JsonProperty("rank") final Integer rank,
+                                @JsonProperty("satisfies") final Set<String> satisfies) {
         this.rank = rank;
         this.name = name;
+        this.satisfies = satisfies == null ? null : Collections.unmodifiableSet(new HashSet<>(satisfies));
     }
 
 
@@ -76,11 +99,25 @@ public final class AuthenticationMethod implements Comparable, Serializable {
         return name;
     }
 
+    /**
+     * Gets the names of the methods that this method directly satisfies.
+     * Used by ranking strategies that treat methods as a partial order.
+     *
+     * @return the satisfied methods, or an empty set if none are defined.
+     */
+    public Set<String> getSatisfies() {
+        if (this.satisfies == null) {
+            return Collections.emptySet();
+        }
+        return this.satisfies;
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this)
                 .append("rank", rank)
                 .append("name", name)
+                .append("satisfies", satisfies)
                 .toString();
     }
 
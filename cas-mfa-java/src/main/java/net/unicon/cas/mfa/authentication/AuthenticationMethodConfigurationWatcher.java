@@ -0,0 +1,88 @@
+package net.unicon.cas.mfa.authentication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Watches the directory that hosts the authentication method configuration file,
+ * and asks the {@link JsonBackedAuthenticationMethodConfigurationProvider} to reload
+ * whenever the file is created or modified. Runs on its own thread, off the request path.
+ *
+ * @author Unicon inc.
+ */
+final class AuthenticationMethodConfigurationWatcher implements Runnable, Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final JsonBackedAuthenticationMethodConfigurationProvider provider;
+
+    private final Path configurationFile;
+
+    private final WatchService watchService;
+
+    /**
+     * Instantiates a new watcher.
+     *
+     * @param provider the provider to reload
+     * @param configurationFile the configuration file
+     * @throws IOException if the watch service cannot be registered
+     */
+    AuthenticationMethodConfigurationWatcher(final JsonBackedAuthenticationMethodConfigurationProvider provider,
+                                             final File configurationFile) throws IOException {
+        this.provider = provider;
+        this.configurationFile = configurationFile.getAbsoluteFile().toPath();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.configurationFile.getParent().register(this.watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    @Override
+    public void run() {
+        try {
+            boolean valid = true;
+            while (valid) {
+                final WatchKey key = this.watchService.take();
+                boolean changed = false;
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() != StandardWatchEventKinds.OVERFLOW
+                            && this.configurationFile.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    logger.debug("Detected a change to [{}]", this.configurationFile);
+                    this.provider.reload();
+                }
+                valid = key.reset();
+            }
+            logger.warn("[{}] is no longer accessible; stopped watching for changes", this.configurationFile.getParent());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ClosedWatchServiceException e) {
+            logger.debug("Stopped watching [{}] for changes", this.configurationFile);
+        }
+    }
+
+    /**
+     * Stop watching for changes.
+     */
+    @Override
+    public void close() {
+        try {
+            this.watchService.close();
+        } catch (final IOException e) {
+            logger.warn("Could not close the watch service for [{}]", this.configurationFile, e);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package net.unicon.cas.mfa.authentication;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable, point-in-time view of the configured authentication methods.
+ * Methods are indexed by name so that lookups are a single hash probe,
+ * kept in an array ordered by rank (strongest first), and assigned a dense
+ * ordinal which is simply their position in that array. Components on the login
+ * path may use the ordinal to work with plain integers rather than re-resolving
+ * the method by name.
+ *
+ * <p>Methods are ordered by their rank value, lower being stronger. Methods that share
+ * the same rank are ordered by name, and methods with no rank are placed last.</p>
+ *
+ * <p>Besides the version, which only counts reloads within this JVM, a snapshot carries a fingerprint of
+ * its contents, which is the same on every node and across restarts for the same configuration. State that
+ * outlives the JVM, such as authentication attributes kept in a shared ticket registry, should be tagged with
+ * the fingerprint rather than the version.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class AuthenticationMethodSnapshot {
+
+    /**
+     * Orders methods by rank, lower being stronger, and then by name.
+     */
+    private static final Comparator<AuthenticationMethod> RANK_COMPARATOR = new Comparator<AuthenticationMethod>() {
+        @Override
+        public int compare(final AuthenticationMethod m1, final AuthenticationMethod m2) {
+            final int result = ObjectUtils.compare(m1.getRank(), m2.getRank(), true);
+            return result != 0 ? result : ObjectUtils.compare(m1.getName(), m2.getName());
+        }
+    };
+
+    /**
+     * Lookup index of methods and their ordinals, keyed by method name.
+     */
+    private final Map<String, IndexEntry> index;
+
+    /**
+     * Methods ordered by rank. The position of each method is its ordinal.
+     */
+    private final AuthenticationMethod[] rankOrderedMethods;
+
+    /**
+     * Version of the configuration this snapshot was built from.
+     */
+    private final long version;
+
+    /**
+     * Fingerprint of the names, ranks and satisfied methods of the methods, in rank order.
+     */
+    private final long fingerprint;
+
+    /**
+     * Instantiates a new snapshot from the given methods. Methods are
+     * expected to be unique by name; if duplicates are found, the last one wins.
+     *
+     * @param methods the authentication methods
+     */
+    public AuthenticationMethodSnapshot(final Collection<AuthenticationMethod> methods) {
+        this(methods, 0L);
+    }
+
+    /**
+     * Instantiates a new snapshot from the given methods,
+     * tagged with the version of the configuration they were loaded from.
+     *
+     * @param methods the authentication methods
+     * @param version the configuration version
+     */
+    public AuthenticationMethodSnapshot(final Collection<AuthenticationMethod> methods, final long version) {
+        this.version = version;
+        final Map<String, AuthenticationMethod> uniqueMethods = new HashMap<>();
+        for (final AuthenticationMethod method : methods) {
+            uniqueMethods.put(method.getName(), method);
+        }
+
+        this.rankOrderedMethods = uniqueMethods.values().toArray(new AuthenticationMethod[uniqueMethods.size()]);
+        Arrays.sort(this.rankOrderedMethods, RANK_COMPARATOR);
+
+        this.index = new HashMap<>(this.rankOrderedMethods.length * 2);
+        for (int i = 0; i < this.rankOrderedMethods.length; i++) {
+            final AuthenticationMethod method = this.rankOrderedMethods[i];
+            this.index.put(method.getName(), new IndexEntry(method, i));
+        }
+        this.fingerprint = computeFingerprint(this.rankOrderedMethods);
+    }
+
+    /**
+     * Gets the authentication method by name.
+     *
+     * @param name the name
+     * @return the authentication method, or null if none is found.
+     */
+    public AuthenticationMethod get(final String name) {
+        final IndexEntry entry = this.index.get(name);
+        return entry == null ? null : entry.method;
+    }
+
+    /**
+     * Contains authentication method.
+     *
+     * @param name the name
+     * @return true if the method is found
+     */
+    public boolean contains(final String name) {
+        return this.index.containsKey(name);
+    }
+
+    /**
+     * Gets the dense ordinal of the method, which is its position
+     * in the rank-ordered collection of methods.
+     *
+     * @param name the name
+     * @return the ordinal, or -1 if the method is not found.
+     */
+    public int getOrdinal(final String name) {
+        final IndexEntry entry = this.index.get(name);
+        return entry == null ? -1 : entry.ordinal;
+    }
+
+    /**
+     * Gets the authentication method by its ordinal.
+     *
+     * @param ordinal the ordinal
+     * @return the authentication method
+     * @throws IndexOutOfBoundsException if the ordinal is not valid for this snapshot
+     */
+    public AuthenticationMethod getByOrdinal(final int ordinal) {
+        return this.rankOrderedMethods[ordinal];
+    }
+
+    /**
+     * Gets the set of ordinals for the given method names, as a bitset.
+     * Names that are not found in this snapshot are ignored.
+     *
+     * @param names the method names
+     * @return the ordinals
+     */
+    public BitSet getOrdinals(final Collection<String> names) {
+        final BitSet ordinals = new BitSet(this.rankOrderedMethods.length);
+        for (final String name : names) {
+            final IndexEntry entry = this.index.get(name);
+            if (entry != null) {
+                ordinals.set(entry.ordinal);
+            }
+        }
+        return ordinals;
+    }
+
+    /**
+     * Number of methods in this snapshot.
+     *
+     * @return the size
+     */
+    public int size() {
+        return this.rankOrderedMethods.length;
+    }
+
+    /**
+     * Gets the version of the configuration this snapshot was built from.
+     * Versions increase each time the configuration is reloaded.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Gets the fingerprint of the methods of this snapshot. Snapshots of the same methods, with the same ranks and satisfied methods,
+     * have the same fingerprint, whichever node or JVM built them.
+     *
+     * @return the fingerprint
+     */
+    public long getFingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * Gets the methods ordered by rank, strongest first.
+     *
+     * @return unmodifiable list of methods
+     */
+    public List<AuthenticationMethod> getRankOrderedMethods() {
+        return Collections.unmodifiableList(Arrays.asList(this.rankOrderedMethods));
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("version", this.version)
+                .append("fingerprint", this.fingerprint)
+                .append("rankOrderedMethods", this.rankOrderedMethods)
+                .toString();
+    }
+
+    /**
+     * Compute the fingerprint of the names, ranks and satisfied methods of the methods.
+     *
+     * @param rankOrderedMethods the methods, ordered by rank
+     * @return the fingerprint
+     */
+    private static long computeFingerprint(final AuthenticationMethod[] rankOrderedMethods) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        for (final AuthenticationMethod method : rankOrderedMethods) {
+            final String name = String.valueOf(method.getName());
+            hasher.putInt(name.length()).putString(name, Charsets.UTF_8);
+            hasher.putInt(method.getRank() == null ? Integer.MIN_VALUE : method.getRank());
+            final Set<String> satisfies = new TreeSet<>(method.getSatisfies());
+            hasher.putInt(satisfies.size());
+            for (final String satisfied : satisfies) {
+                hasher.putInt(satisfied.length()).putString(satisfied, Charsets.UTF_8);
+            }
+        }
+        return hasher.hash().asLong();
+    }
+
+    /**
+     * Pairs a method with its ordinal in the snapshot.
+     */
+    private static final class IndexEntry {
+        /**
+         * The method.
+         */
+        private final AuthenticationMethod method;
+
+        /**
+         * The ordinal of the method.
+         */
+        private final int ordinal;
+
+        /**
+         * Instantiates a new Index entry.
+         *
+         * @param method  the method
+         * @param ordinal the ordinal
+         */
+        IndexEntry(final AuthenticationMethod method, final int ordinal) {
+            this.method = method;
+            this.ordinal = ordinal;
+        }
+    }
+}
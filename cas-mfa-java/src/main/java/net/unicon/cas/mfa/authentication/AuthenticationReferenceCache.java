@@ -0,0 +1,94 @@
+package net.unicon.cas.mfa.authentication;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.jasig.cas.authentication.Authentication;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived, node local cache of authentications, keyed by opaque handles.
+ * The mfa flow may keep the handle of the primary authentication in flow scope instead of the
+ * authentication itself, so that flow execution snapshots stay small regardless of how many
+ * attributes the principal carries.
+ *
+ * <p>Since the cache is local to the node, a handle can only be resolved by the node that created it.
+ * Deployments that resume flow executions on any node should not store handles in flow scope.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class AuthenticationReferenceCache {
+
+    /**
+     * Default maximum number of authentications kept in the cache.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    /**
+     * Default time to live of an entry, in seconds.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = 600;
+
+    private final Cache<String, Authentication> authentications;
+
+    /**
+     * Instantiates a new cache with the default size and time to live.
+     */
+    public AuthenticationReferenceCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Instantiates a new cache.
+     *
+     * @param maximumSize the maximum number of authentications kept in the cache
+     * @param timeToLive the time, in seconds, after which a handle can no longer be resolved
+     */
+    public AuthenticationReferenceCache(final long maximumSize, final long timeToLive) {
+        this.authentications = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Keep the authentication and return the handle by which it can be resolved.
+     *
+     * @param authentication the authentication
+     * @return the opaque handle
+     */
+    public String put(final Authentication authentication) {
+        final String handle = UUID.randomUUID().toString();
+        this.authentications.put(handle, authentication);
+        return handle;
+    }
+
+    /**
+     * Resolve the handle into the authentication it was created for.
+     *
+     * @param handle the handle
+     * @return the authentication, or null if the handle is unknown or has expired
+     */
+    public Authentication get(final String handle) {
+        return handle == null ? null : this.authentications.getIfPresent(handle);
+    }
+
+    /**
+     * Forget the authentication kept for the handle.
+     *
+     * @param handle the handle
+     */
+    public void remove(final String handle) {
+        this.authentications.invalidate(handle);
+    }
+
+    /**
+     * Approximate number of authentications in the cache.
+     *
+     * @return the size
+     */
+    public long size() {
+        return this.authentications.size();
+    }
+}
@@ -0,0 +1,195 @@
+package net.unicon.cas.mfa.authentication;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.unicon.cas.mfa.ticket.TicketDestroyedEvent;
+import org.jasig.cas.authentication.Authentication;
+import org.jasig.cas.authentication.principal.Principal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link AuthenticationSupport} decorator that remembers the authentication found for each ticket granting ticket,
+ * so that the ticket registry, which may be distributed, is not consulted over and over again for the same ticket.
+ * Lookups are remembered for the duration of the current HTTP request and, when a time to live is configured,
+ * in a bounded node local cache as well. Lookups made outside of a request only use the node local cache.
+ *
+ * <p>Tickets destroyed on this node are forgotten as soon as they are deleted from the ticket registry, when the
+ * registry is proxied by an {@link net.unicon.cas.mfa.ticket.EventPublishingTicketRegistryPostProcessor} that
+ * publishes a {@link TicketDestroyedEvent} for each deleted ticket granting ticket to the context of this instance.
+ * This covers logouts, the registry cleaner and
+ * {@link net.unicon.cas.mfa.MultiFactorAwareCentralAuthenticationService} alike. Without that proxy, only
+ * tickets destroyed through {@link #invalidate(String)} are forgotten. Either way, the node local cache may hand
+ * out the authentication of a ticket granting ticket destroyed on another node for at most the configured time
+ * to live.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class CachingAuthenticationSupport implements AuthenticationSupport, ApplicationListener<TicketDestroyedEvent> {
+
+    /**
+     * Name of the request attribute that holds the lookups made during the request.
+     */
+    private static final String REQUEST_ATTRIBUTE_NAME = CachingAuthenticationSupport.class.getName() + ".lookups";
+
+    /**
+     * Placeholder remembered when no authentication is found for a ticket.
+     */
+    private static final Object NO_AUTHENTICATION = new Object();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final AuthenticationSupport delegate;
+
+    private final Cache<String, Authentication> nearCache;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Instantiates a new caching authentication support, that only remembers lookups for the duration of the request.
+     *
+     * @param delegate the authentication support to delegate to
+     */
+    public CachingAuthenticationSupport(final AuthenticationSupport delegate) {
+        this(delegate, 0, 0);
+    }
+
+    /**
+     * Instantiates a new caching authentication support.
+     *
+     * @param delegate the authentication support to delegate to
+     * @param maximumSize the maximum number of authentications kept in the node local cache
+     * @param timeToLive the time, in seconds, authentications are kept in the node local cache;
+     *                   zero or less disables the node local cache
+     */
+    public CachingAuthenticationSupport(final AuthenticationSupport delegate, final long maximumSize, final long timeToLive) {
+        this.delegate = delegate;
+        if (timeToLive > 0 && maximumSize > 0) {
+            this.nearCache = CacheBuilder.newBuilder()
+                    .maximumSize(maximumSize)
+                    .expireAfterWrite(timeToLive, TimeUnit.SECONDS)
+                    .build();
+        } else {
+            this.nearCache = null;
+        }
+    }
+
+    @Override
+    public Authentication getAuthenticationFrom(final String ticketGrantingTicketId) throws RuntimeException {
+        if (ticketGrantingTicketId == null) {
+            return this.delegate.getAuthenticationFrom(null);
+        }
+
+        final Map<String, Object> lookups = getRequestLookups(true);
+        if (lookups != null) {
+            final Object found = lookups.get(ticketGrantingTicketId);
+            if (found != null) {
+                this.hitCount.incrementAndGet();
+                logger.trace("Found authentication for [{}] in request scope", ticketGrantingTicketId);
+                return found == NO_AUTHENTICATION ? null : (Authentication) found;
+            }
+        }
+
+        Authentication authentication = this.nearCache == null ? null : this.nearCache.getIfPresent(ticketGrantingTicketId);
+        if (authentication != null) {
+            this.hitCount.incrementAndGet();
+            logger.trace("Found authentication for [{}] in the node local cache", ticketGrantingTicketId);
+        } else {
+            this.missCount.incrementAndGet();
+            authentication = this.delegate.getAuthenticationFrom(ticketGrantingTicketId);
+            if (authentication != null && this.nearCache != null) {
+                this.nearCache.put(ticketGrantingTicketId, authentication);
+            }
+        }
+
+        if (lookups != null) {
+            lookups.put(ticketGrantingTicketId, authentication == null ? NO_AUTHENTICATION : authentication);
+        }
+        return authentication;
+    }
+
+    @Override
+    public Principal getAuthenticatedPrincipalFrom(final String ticketGrantingTicketId) throws RuntimeException {
+        final Authentication auth = getAuthenticationFrom(ticketGrantingTicketId);
+        return auth == null ? null : auth.getPrincipal();
+    }
+
+    @Override
+    public Map<String, Object> getPrincipalAttributesFrom(final String ticketGrantingTicketId) throws RuntimeException {
+        final Principal principal = getAuthenticatedPrincipalFrom(ticketGrantingTicketId);
+        return principal == null ? null : principal.getAttributes();
+    }
+
+    /**
+     * Forget the authentication remembered for the ticket granting ticket, typically because the ticket was destroyed.
+     *
+     * @param ticketGrantingTicketId the ticket granting ticket id
+     */
+    public void invalidate(final String ticketGrantingTicketId) {
+        if (ticketGrantingTicketId == null) {
+            return;
+        }
+        if (this.nearCache != null) {
+            this.nearCache.invalidate(ticketGrantingTicketId);
+        }
+        final Map<String, Object> lookups = getRequestLookups(false);
+        if (lookups != null) {
+            lookups.remove(ticketGrantingTicketId);
+        }
+        logger.debug("Invalidated cached authentication for [{}]", ticketGrantingTicketId);
+    }
+
+    @Override
+    public void onApplicationEvent(final TicketDestroyedEvent event) {
+        invalidate(event.getTicketId());
+    }
+
+    /**
+     * Number of lookups answered from the request scope or the node local cache, each of which saved a delegate lookup.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * Number of lookups passed on to the delegate.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Gets the lookups remembered for the current request.
+     *
+     * @param create whether to create the holder if the request does not have one yet
+     * @return the lookups, or null if there is no current request
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getRequestLookups(final boolean create) {
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        Map<String, Object> lookups = (Map<String, Object>) attributes.getAttribute(REQUEST_ATTRIBUTE_NAME,
+                RequestAttributes.SCOPE_REQUEST);
+        if (lookups == null && create) {
+            lookups = new HashMap<>();
+            attributes.setAttribute(REQUEST_ATTRIBUTE_NAME, lookups, RequestAttributes.SCOPE_REQUEST);
+        }
+        return lookups;
+    }
+}
@@ -1,12 +1,17 @@
 package net.unicon.cas.mfa.authentication;
 
+import net.unicon.cas.mfa.util.CompiledPatternCache;
+import net.unicon.cas.mfa.util.RegexLiteralPrefilter;
 import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService;
+import net.unicon.cas.mfa.web.support.MultiFactorServicesIndex;
 import net.unicon.cas.mfa.web.support.MultiFactorWebApplicationServiceFactory;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.jasig.cas.authentication.Authentication;
+import org.jasig.cas.authentication.principal.Principal;
 import org.jasig.cas.authentication.principal.Response.ResponseType;
 import org.jasig.cas.authentication.principal.WebApplicationService;
 import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.RegisteredServiceProperty;
 import org.jasig.cas.services.ServicesManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,15 +19,23 @@ import org.slf4j.LoggerFactory;
 import javax.validation.constraints.NotNull;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 /**
  * Resolves potential mfa request based on the configured principal attribute and the service attribute.
  * If a service has an mfa-role attribute, then its authn_method is only enforce if the principal matches the requested attribute.
  *
+ * <p>The mfa settings of each registered service are compiled once into an immutable policy
+ * and cached. A cached policy is only reused for the very registered service instance it was compiled
+ * from, so that policies are rebuilt once the services manager reloads its registry. Policies of registered
+ * services that are no longer defined are evicted once the services index reports a new version or, without an index,
+ * once a cached policy turns out to have been compiled from a replaced registered service instance.</p>
+ *
  * @author John Gasper
  * @author Unicon, inc.
  */
@@ -45,14 +58,28 @@ public class DefaultRegisteredServiceMfaRoleProcessorImpl implements RegisteredS
     /**
      * used to cache regex patterns for faster lookup/execution.
      */
-    private final Map<String, Pattern> patternCache;
-    private final Object cacheLock = new Object();
+    private CompiledPatternCache patternCache = new CompiledPatternCache();
+
+    /**
+     * Compiled mfa settings, keyed by registered service id.
+     */
+    private final ConcurrentMap<Long, ServiceMfaData> policyCache = new ConcurrentHashMap<>();
+
+    /**
+     * Version of the services index the policy cache was last pruned against.
+     */
+    private volatile long policyCacheVersion = -1;
 
     /**
      * the services manager.
      */
     private final ServicesManager servicesManager;
 
+    /**
+     * The services index, whose version the policy cache is pruned against.
+     */
+    private MultiFactorServicesIndex multiFactorServicesIndex;
+
     /**
      * Ctor.
      *
@@ -68,7 +95,19 @@ public class DefaultRegisteredServiceMfaRoleProcessorImpl implements RegisteredS
         this.mfaServiceFactory = mfaServiceFactory;
         this.authenticationMethodConfiguration = authenticationMethodConfiguration;
         this.servicesManager = servicesManager;
-        this.patternCache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Sets the cache of compiled patterns, which may be shared with other components.
+     *
+     * @param patternCache the pattern cache
+     */
+    public void setPatternCache(final CompiledPatternCache patternCache) {
+        this.patternCache = patternCache;
+    }
+
+    public void setMultiFactorServicesIndex(final MultiFactorServicesIndex multiFactorServicesIndex) {
+        this.multiFactorServicesIndex = multiFactorServicesIndex;
     }
 
     /**
@@ -93,37 +132,12 @@ public class DefaultRegisteredServiceMfaRoleProcessorImpl implements RegisteredS
 
             logger.debug("Found MFA Role: {}", serviceMfaData);
 
-            authenticationMethodAttributeName = serviceMfaData.attributeName;
-
-            final Object mfaAttributeValueAsObject = authentication.getPrincipal().getAttributes().get(serviceMfaData.attributeName);
-            if (mfaAttributeValueAsObject != null) {
-                if (mfaAttributeValueAsObject instanceof String) {
-                    final String mfaAttributeValue = mfaAttributeValueAsObject.toString();
-                    final MultiFactorAuthenticationRequestContext ctx = getMfaRequestContext(
-                            serviceMfaData, mfaAttributeValue, targetService);
-                    if (ctx != null) {
-                        list.add(ctx);
-                    }
-                } else if (mfaAttributeValueAsObject instanceof List) {
-                    final List<String> mfaAttributeValues = (List<String>) mfaAttributeValueAsObject;
-                    for (final String mfaAttributeValue : mfaAttributeValues) {
-                        final MultiFactorAuthenticationRequestContext ctx = getMfaRequestContext(
-                                serviceMfaData, mfaAttributeValue, targetService);
-                        if (ctx != null) {
-                            list.add(ctx);
-                        }
-                    }
-                } else if (mfaAttributeValueAsObject instanceof Collection) {
-                    final Collection mfaAttributeValues = (Collection) mfaAttributeValueAsObject;
-                    for (final Object mfaAttributeValue : mfaAttributeValues) {
-                        final MultiFactorAuthenticationRequestContext ctx = getMfaRequestContext(
-                                serviceMfaData, String.valueOf(mfaAttributeValue), targetService);
-                        if (ctx != null) {
-                            list.add(ctx);
-                        }
-                    }
-                } else {
-                    logger.debug("No MFA attribute found.");
+            authenticationMethodAttributeName = serviceMfaData.getAttributeName();
+
+            if (isMfaRoleSatisfied(authentication.getPrincipal(), serviceMfaData)) {
+                final MultiFactorAuthenticationRequestContext ctx = getMfaRequestContext(serviceMfaData, targetService);
+                if (ctx != null) {
+                    list.add(ctx);
                 }
             }
         }
@@ -137,69 +151,89 @@ public class DefaultRegisteredServiceMfaRoleProcessorImpl implements RegisteredS
     }
 
     /**
-     * Gets mfa request context.
+     * Whether the principal's attributes match the mfa role described by the service settings.
      *
-     * @param serviceMfaData service specific mfa settings
-     * @param attributeValue the value found in the attribute
-     * @param targetService  the target service
-     * @return the mfa request context
+     * @param principal the principal
+     * @param serviceMfaData valid service specific mfa settings
+     * @return true if any value of the role attribute matches the role pattern
      */
-    private MultiFactorAuthenticationRequestContext getMfaRequestContext(final ServiceMfaData serviceMfaData,
-                                                                         final String attributeValue,
-                                                                         final WebApplicationService targetService) {
-        final RegisteredService registeredService = this.servicesManager.findServiceBy(targetService);
-
-        String method = null;
-        if (registeredService.getProperties().containsKey("method")) {
-            method = registeredService.getProperties().get("method").getValue();
+    private boolean isMfaRoleSatisfied(final Principal principal, final ServiceMfaData serviceMfaData) {
+        final Object mfaAttributeValueAsObject = principal.getAttributes().get(serviceMfaData.getAttributeName());
+        if (mfaAttributeValueAsObject == null) {
+            return false;
+        }
+        final String mfaAttributeValue = findFirstMatchingValue(serviceMfaData, mfaAttributeValueAsObject);
+        if (mfaAttributeValue == null) {
+            return false;
         }
+        logger.debug("Attribute value [{}] matches [{}]", mfaAttributeValue, serviceMfaData.getAttributePattern());
+        return true;
+    }
 
-        if (match(serviceMfaData.getAttributePattern(), attributeValue)) {
-            if (!this.authenticationMethodConfiguration.containsAuthenticationMethod(serviceMfaData.getAuthenticationMethod())) {
-                logger.info("MFA attribute [{}] with value [{}] is not supported by the authentication method configuration.",
-                        serviceMfaData.getAttributeName(),
-                        serviceMfaData.getAuthenticationMethod());
-                return null;
+    /**
+     * Finds the first attribute value that matches the service attribute pattern.
+     * Every matching value produces the same request, so there is no need to look further.
+     *
+     * @param serviceMfaData service specific mfa settings
+     * @param mfaAttributeValueAsObject the attribute value, single or multi-valued
+     * @return the first matching value, or null if none matches
+     */
+    private String findFirstMatchingValue(final ServiceMfaData serviceMfaData, final Object mfaAttributeValueAsObject) {
+        if (mfaAttributeValueAsObject instanceof String) {
+            final String mfaAttributeValue = mfaAttributeValueAsObject.toString();
+            return serviceMfaData.matches(mfaAttributeValue) ? mfaAttributeValue : null;
+        }
+        if (mfaAttributeValueAsObject instanceof Collection) {
+            final Collection mfaAttributeValues = (Collection) mfaAttributeValueAsObject;
+            for (final Object mfaAttributeValue : mfaAttributeValues) {
+                final String value = String.valueOf(mfaAttributeValue);
+                if (serviceMfaData.matches(value)) {
+                    return value;
+                }
             }
-            final int mfaMethodRank = this.authenticationMethodConfiguration.getAuthenticationMethod(
-                    serviceMfaData.getAuthenticationMethod()).getRank();
-            final MultiFactorAuthenticationSupportingWebApplicationService svc =
-                    this.mfaServiceFactory.create(targetService.getId(), targetService.getId(),
-                            targetService.getArtifactId(), "POST".equals(method) ? ResponseType.POST : ResponseType.REDIRECT,
-                            serviceMfaData.getAuthenticationMethod(),
-                            MultiFactorAuthenticationSupportingWebApplicationService.AuthenticationMethodSource.PRINCIPAL_ATTRIBUTE);
-
-            return new MultiFactorAuthenticationRequestContext(svc, mfaMethodRank);
+            return null;
         }
-
-        logger.trace("{} did not match {}", attributeValue, serviceMfaData.getAttributePattern());
+        logger.debug("No MFA attribute found.");
         return null;
     }
 
     /**
-     * Match will compare the value to the pattern.
+     * Gets mfa request context.
      *
-     * @param attributePattern the pattern to check
-     * @param attributeValue   the value to check
-     * @return true if a match is found. otherwise false
+     * @param serviceMfaData service specific mfa settings
+     * @param targetService  the target service
+     * @return the mfa request context
      */
-    private boolean match(final String attributePattern, final String attributeValue) {
-        Pattern pattern;
-
-        synchronized (cacheLock) {
-            pattern = patternCache.get(attributePattern);
-
-            if (pattern == null) {
-                pattern = Pattern.compile(attributePattern);
-                patternCache.put(attributePattern, pattern);
-            }
+    private MultiFactorAuthenticationRequestContext getMfaRequestContext(final ServiceMfaData serviceMfaData,
+                                                                         final WebApplicationService targetService) {
+        if (!this.authenticationMethodConfiguration.containsAuthenticationMethod(serviceMfaData.getAuthenticationMethod())) {
+            logger.info("MFA attribute [{}] with value [{}] is not supported by the authentication method configuration.",
+                    serviceMfaData.getAttributeName(),
+                    serviceMfaData.getAuthenticationMethod());
+            return null;
+        }
+        final Integer rank = this.authenticationMethodConfiguration.getAuthenticationMethod(
+                serviceMfaData.getAuthenticationMethod()).getRank();
+        final int mfaMethodRank;
+        if (rank == null) {
+            logger.warn("Authentication method [{}] has no rank. It is ranked below every other method.",
+                    serviceMfaData.getAuthenticationMethod());
+            mfaMethodRank = Integer.MAX_VALUE;
+        } else {
+            mfaMethodRank = rank;
         }
+        final MultiFactorAuthenticationSupportingWebApplicationService svc =
+                this.mfaServiceFactory.create(targetService.getId(), targetService.getId(),
+                        targetService.getArtifactId(), serviceMfaData.getResponseType(),
+                        serviceMfaData.getAuthenticationMethod(),
+                        MultiFactorAuthenticationSupportingWebApplicationService.AuthenticationMethodSource.PRINCIPAL_ATTRIBUTE);
 
-        return pattern.matcher(attributeValue).matches();
+        return new MultiFactorAuthenticationRequestContext(svc, mfaMethodRank);
     }
 
     /**
-     * Looks up the mfa data for a specific service.
+     * Looks up the mfa data for a specific service. The data is compiled once
+     * per registered service instance and served from the cache afterwards.
      *
      * @param targetService the service to check
      * @return service specific mfa settings
@@ -210,58 +244,146 @@ public class DefaultRegisteredServiceMfaRoleProcessorImpl implements RegisteredS
             logger.debug("No registered service is found. Delegating to the next argument extractor in the chain...");
             return null;
         }
+        return getServiceMfaData(registeredService);
+    }
 
-        final ServiceMfaData serviceData = new ServiceMfaData();
-
-        if (registeredService.getProperties().containsKey(RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_NAME)) {
-            serviceData.setAttributeName(registeredService.getProperties()
-                    .get(RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_NAME).getValue());
+    /**
+     * Gets the mfa data of the registered service, compiling it if needed.
+     *
+     * @param registeredService the registered service
+     * @return service specific mfa settings
+     */
+    private ServiceMfaData getServiceMfaData(final RegisteredService registeredService) {
+        if (this.multiFactorServicesIndex != null && this.multiFactorServicesIndex.getVersion() != this.policyCacheVersion) {
+            this.policyCacheVersion = this.multiFactorServicesIndex.getVersion();
+            evictRemovedServices(this.multiFactorServicesIndex.getRegisteredServices());
         }
-
-        if (registeredService.getProperties().containsKey(RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_PATTERN)) {
-            serviceData.setAttributePattern(registeredService.getProperties().
-                    get(RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_PATTERN).getValue());
+        final ServiceMfaData cached = this.policyCache.get(registeredService.getId());
+        if (cached != null && cached.isCompiledFrom(registeredService)) {
+            return cached;
         }
-
-        if (registeredService.getProperties().containsKey(MultiFactorAuthenticationRequestResolver.DEFAULT_MFA_METHOD_ATTRIBUTE_NAME)) {
-            serviceData.setAuthenticationMethod(registeredService.getProperties().
-                    get(MultiFactorAuthenticationRequestResolver.DEFAULT_MFA_METHOD_ATTRIBUTE_NAME).getValue());
+        if (cached != null && this.multiFactorServicesIndex == null) {
+            evictRemovedServices(this.servicesManager.getAllServices());
         }
 
+        final ServiceMfaData serviceData = new ServiceMfaData(registeredService);
+        this.policyCache.put(registeredService.getId(), serviceData);
+        logger.debug("Compiled mfa settings for registered service [{}]", registeredService.getServiceId());
         return serviceData;
     }
 
     /**
-     * A POJO to store data retrieved from the Services Manager.
+     * Evicts the cached policies of registered services that are no longer defined.
+     *
+     * @param registeredServices the registered services currently defined
+     */
+    private void evictRemovedServices(final Collection<RegisteredService> registeredServices) {
+        final Set<Long> ids = new HashSet<>(registeredServices.size());
+        for (final RegisteredService registeredService : registeredServices) {
+            ids.add(registeredService.getId());
+        }
+        if (this.policyCache.keySet().retainAll(ids)) {
+            logger.debug("Evicted the mfa settings of registered services that are no longer defined");
+        }
+    }
+
+    /**
+     * Gets the number of registered services whose mfa settings are cached.
+     *
+     * @return the number of cached policies
      */
-    private class ServiceMfaData {
+    int getCachedPolicyCount() {
+        return this.policyCache.size();
+    }
+
+    /**
+     * Gets the value of a registered service property.
+     *
+     * @param registeredService the registered service
+     * @param name the property name
+     * @return the value, or null if the property is not defined
+     */
+    private static String getPropertyValue(final RegisteredService registeredService, final String name) {
+        final RegisteredServiceProperty property = registeredService.getProperties().get(name);
+        return property == null ? null : property.getValue();
+    }
+
+    /**
+     * Immutable mfa settings of a registered service, with the attribute pattern precompiled.
+     */
+    private final class ServiceMfaData {
         public static final String CANNOT_BE_NULL = "{} cannot be null";
-        private String authenticationMethod;
-        private String attributeName;
-        private String attributePattern;
+        private final RegisteredService registeredService;
+        private final String authenticationMethod;
+        private final String attributeName;
+        private final String attributePattern;
+        private final Pattern compiledPattern;
+        private final RegexLiteralPrefilter prefilter;
+        private final ResponseType responseType;
+        private final boolean valid;
 
-        public String getAuthenticationMethod() {
-            return authenticationMethod;
+        /**
+         * Compiles the mfa settings of the registered service.
+         *
+         * @param registeredService the registered service
+         */
+        ServiceMfaData(final RegisteredService registeredService) {
+            this.registeredService = registeredService;
+            this.attributeName = getPropertyValue(registeredService, RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_NAME);
+            this.attributePattern = getPropertyValue(registeredService, RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_PATTERN);
+            this.authenticationMethod = getPropertyValue(registeredService,
+                    MultiFactorAuthenticationRequestResolver.DEFAULT_MFA_METHOD_ATTRIBUTE_NAME);
+            this.responseType = "POST".equals(getPropertyValue(registeredService,
+                    MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_METHOD)) ? ResponseType.POST : ResponseType.REDIRECT;
+            this.valid = validate();
+            this.compiledPattern = this.valid ? patternCache.getPattern(this.attributePattern) : null;
+            this.prefilter = this.valid ? RegexLiteralPrefilter.compile(this.attributePattern) : null;
         }
 
-        public void setAuthenticationMethod(final String authenticationMethod) {
-            this.authenticationMethod = authenticationMethod;
+        public String getAuthenticationMethod() {
+            return authenticationMethod;
         }
 
         public String getAttributeName() {
             return attributeName;
         }
 
-        public void setAttributeName(final String attributeName) {
-            this.attributeName = attributeName;
-        }
-
         public String getAttributePattern() {
             return attributePattern;
         }
 
-        public void setAttributePattern(final String attributePattern) {
-            this.attributePattern = attributePattern;
+        public ResponseType getResponseType() {
+            return responseType;
+        }
+
+        /**
+         * Whether these settings were compiled from the given registered service instance.
+         *
+         * @param service the registered service
+         * @return true if compiled from the same instance
+         */
+        public boolean isCompiledFrom(final RegisteredService service) {
+            return this.registeredService == service;
+        }
+
+        /**
+         * Match will compare the value to the pattern. Values are first checked against
+         * the literal prefix and suffix of the pattern, and the regex only runs for values that pass.
+         *
+         * @param attributeValue the value to check
+         * @return true if a match is found. otherwise false
+         */
+        public boolean matches(final String attributeValue) {
+            final boolean matched;
+            if (!this.prefilter.mayMatch(attributeValue)) {
+                matched = false;
+            } else {
+                matched = this.prefilter.isExact() || this.compiledPattern.matcher(attributeValue).matches();
+            }
+            if (!matched) {
+                logger.trace("{} did not match {}", attributeValue, this.attributePattern);
+            }
+            return matched;
         }
 
         /**
@@ -270,6 +392,15 @@ public class DefaultRegisteredServiceMfaRoleProcessorImpl implements RegisteredS
          * @return true if valid data, otherwise false
          */
         public boolean isValid() {
+            return this.valid;
+        }
+
+        /**
+         * Validates the settings, logging the first missing one.
+         *
+         * @return true if valid data, otherwise false
+         */
+        private boolean validate() {
             if (this.attributeName == null) {
                 logger.debug(CANNOT_BE_NULL, MFA_ATTRIBUTE_NAME);
                 return false;
@@ -287,7 +418,13 @@ public class DefaultRegisteredServiceMfaRoleProcessorImpl implements RegisteredS
 
         @Override
         public String toString() {
-            return ToStringBuilder.reflectionToString(this);
+            return new ToStringBuilder(this)
+                    .append("authenticationMethod", this.authenticationMethod)
+                    .append("attributeName", this.attributeName)
+                    .append("attributePattern", this.attributePattern)
+                    .append("prefilter", this.prefilter)
+                    .append("responseType", this.responseType)
+                    .toString();
         }
     }
 
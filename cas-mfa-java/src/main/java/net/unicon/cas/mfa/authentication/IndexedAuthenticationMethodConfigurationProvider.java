@@ -0,0 +1,19 @@
+package net.unicon.cas.mfa.authentication;
+
+/**
+ * An {@link AuthenticationMethodConfigurationProvider} that is able to expose
+ * its configured methods as an indexed {@link AuthenticationMethodSnapshot}.
+ * Components that make many decisions against the configuration may use the
+ * snapshot to precompute lookup structures keyed by method ordinal.
+ *
+ * @author Unicon inc.
+ */
+public interface IndexedAuthenticationMethodConfigurationProvider extends AuthenticationMethodConfigurationProvider {
+    /**
+     * Gets the current snapshot of configured methods. The returned instance
+     * is immutable; a new instance is returned when the configuration changes.
+     *
+     * @return the snapshot
+     */
+    AuthenticationMethodSnapshot getSnapshot();
+}
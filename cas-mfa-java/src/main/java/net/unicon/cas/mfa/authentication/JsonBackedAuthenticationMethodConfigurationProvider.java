@@ -2,12 +2,21 @@ package net.unicon.cas.mfa.authentication;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
 
 /**
  * Loads authentication methods and their rank from an external configuration file
@@ -27,14 +36,31 @@ import java.util.TreeSet;
      "name" : "sample_two_factor"
  } ]
  * </code></pre>
+ *
+ * <p>Methods are indexed into an immutable {@link AuthenticationMethodSnapshot}
+ * once at load time, so lookups by name do not scan the configured methods.</p>
+ *
+ * <p>The provider may optionally watch the configuration file for changes. When the file
+ * changes, it is re-parsed and validated on a background thread and the resulting snapshot
+ * is published through a single volatile write. Lookups never take a lock, and a configuration
+ * that fails to load or validate is logged and discarded, leaving the current snapshot in place.
+ * Validation only applies to reloads: the configuration loaded at startup is accepted as is,
+ * as it always has been, so methods without a rank are ranked last and duplicate names are
+ * resolved as described by {@link AuthenticationMethodSnapshot}.</p>
  * @author Misagh Moayyed
  */
-public final class JsonBackedAuthenticationMethodConfigurationProvider implements AuthenticationMethodConfigurationProvider {
+public final class JsonBackedAuthenticationMethodConfigurationProvider implements IndexedAuthenticationMethodConfigurationProvider, Closeable {
 
-    private final Set<AuthenticationMethod> authnMethods;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private volatile AuthenticationMethodSnapshot snapshot;
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private final Resource configuration;
+
+    private final AuthenticationMethodConfigurationWatcher watcher;
+
     /**
      * Instantiates a new Authentication method loader.
      * Loads supported authentication methods from
@@ -43,12 +69,32 @@ public final class JsonBackedAuthenticationMethodConfigurationProvider implement
      * @throws IOException the iO exception
      */
     public JsonBackedAuthenticationMethodConfigurationProvider(final Resource configuration) throws IOException {
-        this.authnMethods = new TreeSet<>();
-        final String json = FileUtils.readFileToString(configuration.getFile());
-        final Set<?> set = this.objectMapper.readValue(json, Set.class);
-        for (final Iterator<?> it = set.iterator(); it.hasNext();) {
-            final AuthenticationMethod method = this.objectMapper.convertValue(it.next(), AuthenticationMethod.class);
-            this.authnMethods.add(method);
+        this(configuration, false);
+    }
+
+    /**
+     * Instantiates a new Authentication method loader.
+     * Loads supported authentication methods from
+     * the specified resource, and optionally watches the
+     * resource for changes.
+     * @param configuration the configuration
+     * @param watchForChanges whether the configuration should be reloaded when the file changes
+     * @throws IOException the iO exception
+     */
+    public JsonBackedAuthenticationMethodConfigurationProvider(final Resource configuration,
+                                                               final boolean watchForChanges) throws IOException {
+        this.configuration = configuration;
+        final File file = configuration.getFile();
+        this.snapshot = new AuthenticationMethodSnapshot(parse(file));
+
+        if (watchForChanges) {
+            this.watcher = new AuthenticationMethodConfigurationWatcher(this, file);
+            final Thread thread = new Thread(this.watcher, "authn-methods-config-watcher");
+            thread.setDaemon(true);
+            thread.start();
+            logger.info("Watching [{}] for changes to the authentication method configuration", file);
+        } else {
+            this.watcher = null;
         }
     }
 
@@ -59,31 +105,122 @@ public final class JsonBackedAuthenticationMethodConfigurationProvider implement
      * @param authnMethods the authn methods
      */
     public JsonBackedAuthenticationMethodConfigurationProvider(final Set<AuthenticationMethod> authnMethods) {
-        this.authnMethods = authnMethods;
+        this.configuration = null;
+        this.watcher = null;
+        this.snapshot = new AuthenticationMethodSnapshot(authnMethods);
     }
 
     /**
      * Instantiates a new Authentication method loader.
      */
     public JsonBackedAuthenticationMethodConfigurationProvider() {
-        this.authnMethods = new TreeSet<>();
+        this(Collections.<AuthenticationMethod>emptySet());
     }
 
     /** {@inheritDoc} **/
     @Override
     public boolean containsAuthenticationMethod(final String name) {
-        return getAuthenticationMethod(name) != null;
+        return this.snapshot.contains(name);
     }
 
     /** {@inheritDoc} **/
     @Override
     public AuthenticationMethod getAuthenticationMethod(final String name) {
-        for (final Iterator<AuthenticationMethod> it = this.authnMethods.iterator(); it.hasNext();) {
-            final AuthenticationMethod f = it.next();
-            if (f.getName().equals(name)) {
-                return f;
+        return this.snapshot.get(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Callers that need a consistent view across several lookups should
+     * obtain the snapshot once and work against it.</p>
+     */
+    @Override
+    public AuthenticationMethodSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * Re-read the configuration resource, and publish it as the new snapshot if valid.
+     * Failures are logged and the current snapshot is retained.
+     *
+     * @return true if a new snapshot was published
+     */
+    public synchronized boolean reload() {
+        if (this.configuration == null) {
+            logger.debug("No configuration resource is defined; nothing to reload");
+            return false;
+        }
+        try {
+            final List<AuthenticationMethod> methods = validate(parse(this.configuration.getFile()));
+            final AuthenticationMethodSnapshot current = this.snapshot;
+            this.snapshot = new AuthenticationMethodSnapshot(methods, current.getVersion() + 1);
+            logger.info("Reloaded authentication method configuration from [{}]: {}", this.configuration, this.snapshot);
+            return true;
+        } catch (final IOException | RuntimeException e) {
+            logger.warn("Authentication method configuration at [{}] could not be reloaded and will be ignored: {}",
+                    this.configuration, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stop watching the configuration for changes, if a watcher is running.
+     */
+    @Override
+    public void close() {
+        if (this.watcher != null) {
+            this.watcher.close();
+        }
+    }
+
+    /**
+     * Parse the configuration file into a list of authentication methods.
+     *
+     * @param file the file
+     * @return the list of methods
+     * @throws IOException if the file cannot be read or parsed
+     */
+    private List<AuthenticationMethod> parse(final File file) throws IOException {
+        final String json = FileUtils.readFileToString(file);
+        final List<?> entries = this.objectMapper.readValue(json, List.class);
+        final List<AuthenticationMethod> methods = new ArrayList<>(entries.size());
+        for (final Iterator<?> it = entries.iterator(); it.hasNext();) {
+            final AuthenticationMethod method = this.objectMapper.convertValue(it.next(), AuthenticationMethod.class);
+            methods.add(method);
+        }
+        return methods;
+    }
+
+    /**
+     * Validate reloaded authentication methods. Each method must carry a name
+     * and a rank, names must be unique, and methods may only satisfy configured methods.
+     * Entries are parsed as a list, so that repeated entries are reported rather than merged.
+     *
+     * @param methods the methods
+     * @return the methods
+     * @throws IllegalArgumentException if the methods are not valid
+     */
+    private static List<AuthenticationMethod> validate(final List<AuthenticationMethod> methods) {
+        final Collection<String> names = new HashSet<>(methods.size());
+        for (final AuthenticationMethod method : methods) {
+            if (StringUtils.isBlank(method.getName())) {
+                throw new IllegalArgumentException("Authentication method " + method + " has no name");
+            }
+            if (method.getRank() == null) {
+                throw new IllegalArgumentException("Authentication method [" + method.getName() + "] has no rank");
+            }
+            if (!names.add(method.getName())) {
+                throw new IllegalArgumentException("Authentication method [" + method.getName() + "] is defined more than once");
+            }
+        }
+        for (final AuthenticationMethod method : methods) {
+            for (final String satisfied : method.getSatisfies()) {
+                if (!names.contains(satisfied)) {
+                    throw new IllegalArgumentException("Authentication method [" + method.getName() + "] satisfies ["
+                            + satisfied + "], which is not a configured method");
+                }
             }
         }
-        return  null;
+        return methods;
     }
 }
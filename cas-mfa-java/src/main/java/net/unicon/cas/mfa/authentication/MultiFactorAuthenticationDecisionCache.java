@@ -0,0 +1,156 @@
+package net.unicon.cas.mfa.authentication;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.unicon.cas.mfa.ticket.TicketDestroyedEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers, per single sign-on session, whether the authentication methods satisfied by the session
+ * fulfill a requested authentication method. The answer only depends on the authentication held by the
+ * ticket granting ticket, which does not change for the lifetime of the ticket, and on the ranking of the
+ * configured authentication methods. Users who access many services within one session thus only pay the
+ * cost of looking up the ticket and ranking its methods once per requested method.
+ *
+ * <p>Decisions are tagged with the version of the authentication method configuration they were made against,
+ * when the configuration provider is an {@link IndexedAuthenticationMethodConfigurationProvider}; decisions made
+ * against a previous version are discarded. Decisions are forgotten when the ticket granting ticket is destroyed
+ * through {@link #invalidate(String)}, or when a {@link TicketDestroyedEvent} is published for it, and otherwise
+ * expire after the configured time to live. Those events are published to the root application context, so
+ * the cache must be defined there, rather than in the servlet context, to hear about them.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class MultiFactorAuthenticationDecisionCache implements ApplicationListener<TicketDestroyedEvent> {
+
+    /**
+     * Default maximum number of sessions for which decisions are kept.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    /**
+     * Default time to live of the decisions of a session, in seconds.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = 1800;
+
+    private final AuthenticationMethodConfigurationProvider authenticationMethodConfiguration;
+
+    private final Cache<String, SessionDecisions> decisions;
+
+    /**
+     * Instantiates a new decision cache with the default size and time to live.
+     *
+     * @param authenticationMethodConfiguration the authentication method configuration
+     */
+    public MultiFactorAuthenticationDecisionCache(final AuthenticationMethodConfigurationProvider authenticationMethodConfiguration) {
+        this(authenticationMethodConfiguration, DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Instantiates a new decision cache.
+     *
+     * @param authenticationMethodConfiguration the authentication method configuration
+     * @param maximumSize the maximum number of sessions for which decisions are kept
+     * @param timeToLive the time, in seconds, after which the decisions of a session are forgotten
+     */
+    public MultiFactorAuthenticationDecisionCache(final AuthenticationMethodConfigurationProvider authenticationMethodConfiguration,
+                                                  final long maximumSize, final long timeToLive) {
+        this.authenticationMethodConfiguration = authenticationMethodConfiguration;
+        this.decisions = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Gets the decision made for the session and the requested authentication method.
+     *
+     * @param ticketGrantingTicketId the ticket granting ticket id
+     * @param requestedAuthenticationMethod the requested authentication method
+     * @return true if the session fulfills the method, false if it does not, or null if no decision is known
+     */
+    public Boolean getDecision(final String ticketGrantingTicketId, final String requestedAuthenticationMethod) {
+        final SessionDecisions sessionDecisions = this.decisions.getIfPresent(ticketGrantingTicketId);
+        if (sessionDecisions == null || sessionDecisions.configurationVersion != getConfigurationVersion()) {
+            return null;
+        }
+        return sessionDecisions.fulfilled.get(requestedAuthenticationMethod);
+    }
+
+    /**
+     * Remember the decision made for the session and the requested authentication method.
+     *
+     * @param ticketGrantingTicketId the ticket granting ticket id
+     * @param requestedAuthenticationMethod the requested authentication method
+     * @param fulfilled whether the session fulfills the method
+     */
+    public void putDecision(final String ticketGrantingTicketId, final String requestedAuthenticationMethod, final boolean fulfilled) {
+        final long version = getConfigurationVersion();
+        SessionDecisions sessionDecisions = this.decisions.getIfPresent(ticketGrantingTicketId);
+        if (sessionDecisions == null || sessionDecisions.configurationVersion != version) {
+            sessionDecisions = new SessionDecisions(version);
+            this.decisions.put(ticketGrantingTicketId, sessionDecisions);
+        }
+        sessionDecisions.fulfilled.put(requestedAuthenticationMethod, fulfilled);
+    }
+
+    /**
+     * Forget the decisions made for the session, typically because its ticket granting ticket was destroyed.
+     *
+     * @param ticketGrantingTicketId the ticket granting ticket id
+     */
+    public void invalidate(final String ticketGrantingTicketId) {
+        if (ticketGrantingTicketId != null) {
+            this.decisions.invalidate(ticketGrantingTicketId);
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(final TicketDestroyedEvent event) {
+        invalidate(event.getTicketId());
+    }
+
+    /**
+     * Approximate number of sessions for which decisions are kept.
+     *
+     * @return the size
+     */
+    public long size() {
+        return this.decisions.size();
+    }
+
+    /**
+     * Gets the version of the authentication method configuration, if the provider publishes versions.
+     *
+     * @return the version
+     */
+    private long getConfigurationVersion() {
+        if (this.authenticationMethodConfiguration instanceof IndexedAuthenticationMethodConfigurationProvider) {
+            return ((IndexedAuthenticationMethodConfigurationProvider) this.authenticationMethodConfiguration).getSnapshot().getVersion();
+        }
+        return 0L;
+    }
+
+    /**
+     * Decisions made for one session, against one version of the configuration.
+     */
+    private static final class SessionDecisions {
+
+        private final long configurationVersion;
+
+        private final ConcurrentMap<String, Boolean> fulfilled = new ConcurrentHashMap<>(4);
+
+        /**
+         * Instantiates a new set of decisions.
+         *
+         * @param configurationVersion the configuration version
+         */
+        SessionDecisions(final long configurationVersion) {
+            this.configurationVersion = configurationVersion;
+        }
+    }
+}
@@ -10,6 +10,12 @@ import org.springframework.core.Ordered;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
 import java.io.Serializable;
 
 /**
@@ -20,6 +26,7 @@ import java.io.Serializable;
  * Implements {@link org.springframework.core.Ordered} to assist implementations of
  * {@link net.unicon.cas.mfa.authentication.RequestedAuthenticationMethodRankingStrategy} do
  * the ranking if they choose to use this abstraction.
+ * Instances are serialized in a compact form, as they are kept in conversation scope.
  *
  * @author Dmitriy Kopylenko
  * @author Unicon inc.
@@ -85,4 +92,77 @@ public final class MultiFactorAuthenticationRequestContext implements Serializab
                .append(this.mfaService.getAuthenticationMethodSource())
                .toString();
     }
+
+    /**
+     * Replace this request with its compact serialized form.
+     *
+     * @return the serialized form
+     */
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    /**
+     * Instances are only ever deserialized through their serialized form.
+     *
+     * @param in the stream
+     * @throws InvalidObjectException always
+     */
+    private void readObject(final ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialized form is required");
+    }
+
+    /**
+     * Compact serialized form of the request.
+     */
+    private static final class SerializedForm implements Externalizable {
+
+        private static final long serialVersionUID = 6243150872397402781L;
+
+        private static final byte VERSION = 1;
+
+        private MultiFactorAuthenticationRequestContext request;
+
+        /**
+         * Instantiates an empty form, to be read from a stream.
+         */
+        public SerializedForm() {
+        }
+
+        /**
+         * Instantiates the form of the given request.
+         *
+         * @param request the request
+         */
+        SerializedForm(final MultiFactorAuthenticationRequestContext request) {
+            this.request = request;
+        }
+
+        @Override
+        public void writeExternal(final ObjectOutput out) throws IOException {
+            out.writeByte(VERSION);
+            out.writeInt(this.request.rank);
+            out.writeObject(this.request.mfaService);
+        }
+
+        @Override
+        public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+            final byte version = in.readByte();
+            if (version != VERSION) {
+                throw new InvalidObjectException("Unsupported serialized form version " + version);
+            }
+            final int rank = in.readInt();
+            this.request = new MultiFactorAuthenticationRequestContext(
+                    (MultiFactorAuthenticationSupportingWebApplicationService) in.readObject(), rank);
+        }
+
+        /**
+         * Resolve the form into the request it was read from.
+         *
+         * @return the request
+         */
+        private Object readResolve() {
+            return this.request;
+        }
+    }
 }
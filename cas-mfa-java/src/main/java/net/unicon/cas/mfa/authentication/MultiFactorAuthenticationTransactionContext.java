@@ -3,6 +3,12 @@ package net.unicon.cas.mfa.authentication;
 import org.jasig.cas.authentication.Authentication;
 import org.springframework.util.Assert;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.HashSet;
@@ -20,6 +26,8 @@ import static net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupporting
  * in such a single mfa authentication transaction
  * and only a single instance of the same authentication method source could exist at a time.
  *
+ * Instances are serialized in a compact form, as they are kept in conversation scope.
+ *
  * @author Dmitriy Kopylenko
  * @author Unicon inc.
  */
@@ -152,4 +160,84 @@ public final class MultiFactorAuthenticationTransactionContext implements Serial
                 +
                 '}';
     }
+
+    /**
+     * Replace this context with its compact serialized form.
+     *
+     * @return the serialized form
+     */
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    /**
+     * Instances are only ever deserialized through their serialized form.
+     *
+     * @param in the stream
+     * @throws InvalidObjectException always
+     */
+    private void readObject(final ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialized form is required");
+    }
+
+    /**
+     * Compact serialized form of the context.
+     */
+    private static final class SerializedForm implements Externalizable {
+
+        private static final long serialVersionUID = -4410935412875066215L;
+
+        private static final byte VERSION = 1;
+
+        private MultiFactorAuthenticationTransactionContext context;
+
+        /**
+         * Instantiates an empty form, to be read from a stream.
+         */
+        public SerializedForm() {
+        }
+
+        /**
+         * Instantiates the form of the given context.
+         *
+         * @param context the context
+         */
+        SerializedForm(final MultiFactorAuthenticationTransactionContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public void writeExternal(final ObjectOutput out) throws IOException {
+            out.writeByte(VERSION);
+            out.writeObject(this.context.targetServiceId);
+            out.writeObject(this.context.primaryAuthentication);
+            out.writeInt(this.context.mfaRequests.size());
+            for (final MultiFactorAuthenticationRequestContext mfaRequest : this.context.mfaRequests) {
+                out.writeObject(mfaRequest);
+            }
+        }
+
+        @Override
+        public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+            final byte version = in.readByte();
+            if (version != VERSION) {
+                throw new InvalidObjectException("Unsupported serialized form version " + version);
+            }
+            this.context = new MultiFactorAuthenticationTransactionContext((String) in.readObject())
+                    .setPrimaryAuthentication((Authentication) in.readObject());
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                this.context.mfaRequests.add((MultiFactorAuthenticationRequestContext) in.readObject());
+            }
+        }
+
+        /**
+         * Resolve the form into the context it was read from.
+         *
+         * @return the context
+         */
+        private Object readResolve() {
+            return this.context;
+        }
+    }
 }
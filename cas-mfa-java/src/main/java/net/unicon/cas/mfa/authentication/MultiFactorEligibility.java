@@ -0,0 +1,112 @@
+package net.unicon.cas.mfa.authentication;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jasig.cas.authentication.Authentication;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Compact summary of what the principal of an authentication is eligible for, in terms of multifactor
+ * authentication, computed once when the principal authenticates and kept as an authentication attribute
+ * for the lifetime of the single sign-on session. The summary records the ordinals of the configured
+ * authentication methods requested by the principal's authentication method attribute. Mfa roles of registered
+ * services are not recorded: they are matched per service, when the service is requested, so that neither the
+ * cost of a login nor the size of the summary grows with the number of registered services.
+ *
+ * <p>The summary is tagged with the fingerprint of the authentication method configuration it was computed
+ * against, and is ignored once it has changed. The fingerprint is derived from the configuration contents rather
+ * than counted, so that a summary read back from a shared or persistent ticket registry, by another node or after
+ * a restart, is only trusted against the same configuration.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class MultiFactorEligibility implements Serializable {
+
+    /**
+     * Name of the authentication attribute that holds the summary.
+     */
+    public static final String ATTRIBUTE_NAME = "mfaEligibility";
+
+    private static final long serialVersionUID = 5810269370617353911L;
+
+    private final long methodConfigurationFingerprint;
+
+    private final BitSet requestedMethods;
+
+    /**
+     * Instantiates a new summary.
+     *
+     * @param methodConfigurationFingerprint the fingerprint of the authentication method configuration
+     * @param requestedMethods the ordinals of the methods requested by the principal
+     */
+    public MultiFactorEligibility(final long methodConfigurationFingerprint, final BitSet requestedMethods) {
+        this.methodConfigurationFingerprint = methodConfigurationFingerprint;
+        this.requestedMethods = (BitSet) requestedMethods.clone();
+    }
+
+    /**
+     * Gets the summary held by the authentication, provided it was computed against the current
+     * authentication method configuration.
+     *
+     * @param authentication the authentication
+     * @param authenticationMethodConfiguration the authentication method configuration
+     * @return the summary, or null if the authentication holds no current summary
+     */
+    public static MultiFactorEligibility getCurrent(final Authentication authentication,
+                                                    final AuthenticationMethodConfigurationProvider authenticationMethodConfiguration) {
+        if (authentication == null
+                || !(authenticationMethodConfiguration instanceof IndexedAuthenticationMethodConfigurationProvider)) {
+            return null;
+        }
+        final MultiFactorEligibility eligibility = find(authentication.getAttributes().get(ATTRIBUTE_NAME));
+        if (eligibility == null
+                || eligibility.methodConfigurationFingerprint
+                != ((IndexedAuthenticationMethodConfigurationProvider) authenticationMethodConfiguration).getSnapshot().getFingerprint()) {
+            return null;
+        }
+        return eligibility;
+    }
+
+    /**
+     * Gets the ordinals of the configured methods requested by the principal.
+     *
+     * @return a copy of the ordinals
+     */
+    public BitSet getRequestedMethods() {
+        return (BitSet) this.requestedMethods.clone();
+    }
+
+    public long getMethodConfigurationFingerprint() {
+        return this.methodConfigurationFingerprint;
+    }
+
+    /**
+     * Find the summary in the attribute value, which is a collection if authentications were merged.
+     *
+     * @param value the attribute value
+     * @return the summary, or null
+     */
+    private static MultiFactorEligibility find(final Object value) {
+        if (value instanceof MultiFactorEligibility) {
+            return (MultiFactorEligibility) value;
+        }
+        if (value instanceof Collection) {
+            for (final Object element : (Collection<?>) value) {
+                if (element instanceof MultiFactorEligibility) {
+                    return (MultiFactorEligibility) element;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("methodConfigurationFingerprint", this.methodConfigurationFingerprint)
+                .append("requestedMethods", this.requestedMethods)
+                .toString();
+    }
+}
@@ -0,0 +1,88 @@
+package net.unicon.cas.mfa.authentication;
+
+import org.jasig.cas.authentication.AuthenticationBuilder;
+import org.jasig.cas.authentication.AuthenticationMetaDataPopulator;
+import org.jasig.cas.authentication.Credential;
+import org.jasig.cas.authentication.principal.Principal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resolves the principal's authentication method attribute once, when the principal authenticates, and records
+ * the resolved method ordinals as a {@link MultiFactorEligibility} authentication attribute, so that later requests
+ * in the single sign-on session do not need to read and resolve the attribute again.
+ *
+ * <p>Only the principal's own methods are recorded. Mfa roles of registered services are matched lazily, by the
+ * {@link RegisteredServiceMfaRoleProcessor}, for the one service being requested.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class MultiFactorEligibilityMetaDataPopulator implements AuthenticationMetaDataPopulator {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final IndexedAuthenticationMethodConfigurationProvider authenticationMethodConfiguration;
+
+    private String authenticationMethodAttributeName = MultiFactorAuthenticationRequestResolver.DEFAULT_MFA_METHOD_ATTRIBUTE_NAME;
+
+    /**
+     * Instantiates a new eligibility populator.
+     *
+     * @param authenticationMethodConfiguration the authentication method configuration
+     */
+    public MultiFactorEligibilityMetaDataPopulator(final IndexedAuthenticationMethodConfigurationProvider authenticationMethodConfiguration) {
+        this.authenticationMethodConfiguration = authenticationMethodConfiguration;
+    }
+
+    @Override
+    public void populateAttributes(final AuthenticationBuilder authenticationBuilder, final Credential credential) {
+        final Principal principal = authenticationBuilder.getPrincipal();
+        if (principal == null) {
+            return;
+        }
+
+        final AuthenticationMethodSnapshot snapshot = this.authenticationMethodConfiguration.getSnapshot();
+        final BitSet requestedMethods = getRequestedMethods(principal, snapshot);
+
+        final MultiFactorEligibility eligibility = new MultiFactorEligibility(snapshot.getFingerprint(), requestedMethods);
+        authenticationBuilder.addAttribute(MultiFactorEligibility.ATTRIBUTE_NAME, eligibility);
+        logger.debug("Captured mfa eligibility [{}] of [{}] into the authentication context", eligibility, principal.getId());
+    }
+
+    @Override
+    public boolean supports(final Credential credential) {
+        return true;
+    }
+
+    public void setAuthenticationMethodAttributeName(final String authenticationMethodAttributeName) {
+        this.authenticationMethodAttributeName = authenticationMethodAttributeName;
+    }
+
+    /**
+     * Gets the ordinals of the configured methods named by the principal's authentication method attribute.
+     * As with the principal attribute request resolver, the attribute is expected to be a string or a list.
+     *
+     * @param principal the principal
+     * @param snapshot the configured methods
+     * @return the ordinals
+     */
+    private BitSet getRequestedMethods(final Principal principal, final AuthenticationMethodSnapshot snapshot) {
+        final Object value = principal.getAttributes().get(this.authenticationMethodAttributeName);
+        if (value instanceof String) {
+            return snapshot.getOrdinals(Collections.singleton((String) value));
+        }
+        if (value instanceof List) {
+            final List<String> names = new ArrayList<>();
+            for (final Object name : (List<?>) value) {
+                names.add(String.valueOf(name));
+            }
+            return snapshot.getOrdinals(names);
+        }
+        return new BitSet(0);
+    }
+}
@@ -1,18 +1,20 @@
 package net.unicon.cas.mfa.authentication;
 
 import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService;
-import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import org.springframework.util.Assert;
 
 import javax.validation.constraints.NotNull;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Set;
 
 /**
  * Ranking strategy implementation that utilizes {@link org.springframework.core.Ordered} abstraction
  * of {@link net.unicon.cas.mfa.authentication.MultiFactorAuthenticationRequestContext}.
  *
+ * <p>When the configuration provider is an {@link IndexedAuthenticationMethodConfigurationProvider},
+ * the configured methods are compiled into a dominance table indexed by method ordinal, so that
+ * checking a previously achieved method against the requested one is a single ordinal comparison.
+ * The table is rebuilt whenever the provider publishes a new snapshot.</p>
+ *
  * @author Dmitriy Kopylenko
  * @author Unicon, inc.
  */
@@ -23,6 +25,11 @@ public class OrderedMultiFactorMethodRankingStrategy implements RequestedAuthent
      */
     private final AuthenticationMethodConfigurationProvider authenticationMethodConfiguration;
 
+    /**
+     * Dominance table compiled from the most recently seen configuration snapshot.
+     */
+    private volatile DominanceTable dominanceTable;
+
     /**
      * Ctor.
      *
@@ -32,26 +39,37 @@ public class OrderedMultiFactorMethodRankingStrategy implements RequestedAuthent
         this.authenticationMethodConfiguration = authenticationMethodConfiguration;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>Selects the request with the lowest {@link MultiFactorAuthenticationRequestContext#getOrder()}
+     * value in a single pass over the requests. Requests of equal rank are broken
+     * by their {@link MultiFactorAuthenticationSupportingWebApplicationService.AuthenticationMethodSource}
+     * so that the outcome does not depend on iteration order.</p>
+     */
     @Override
     public MultiFactorAuthenticationSupportingWebApplicationService
     computeHighestRankingAuthenticationMethod(@NotNull final MultiFactorAuthenticationTransactionContext mfaTransaction) {
-        final List<MultiFactorAuthenticationRequestContext> sortedRequests =
-                new ArrayList<>(mfaTransaction.getMfaRequests());
-
-        AnnotationAwareOrderComparator.sort(sortedRequests);
-        return sortedRequests.get(0).getMfaService();
+        MultiFactorAuthenticationRequestContext highest = null;
+        for (final MultiFactorAuthenticationRequestContext request : mfaTransaction.getMfaRequests()) {
+            if (highest == null || request.getOrder() < highest.getOrder()
+                    || (request.getOrder() == highest.getOrder() && getSourceOrder(request) < getSourceOrder(highest))) {
+                highest = request;
+            }
+        }
+        return highest == null ? null : highest.getMfaService();
     }
 
     /**
-     * Sort the list of requests.
+     * Gets the order of the source of the request, used to break ties between requests of equal rank.
+     * Requests with no source are ordered last.
      *
-     * @param sortedRequests the sorted requests
-     * @return the list
+     * @param request the request
+     * @return the source order
      */
-    protected static List<MultiFactorAuthenticationRequestContext> sortRequests(
-            final List<MultiFactorAuthenticationRequestContext> sortedRequests) {
-        AnnotationAwareOrderComparator.sort(sortedRequests);
-        return sortedRequests;
+    private static int getSourceOrder(final MultiFactorAuthenticationRequestContext request) {
+        final MultiFactorAuthenticationSupportingWebApplicationService.AuthenticationMethodSource source =
+                request.getMfaService().getAuthenticationMethodSource();
+        return source == null ? Integer.MAX_VALUE : source.ordinal();
     }
 
     @Override
@@ -65,6 +83,19 @@ public class OrderedMultiFactorMethodRankingStrategy implements RequestedAuthent
             return false;
         }
 
+        if (this.authenticationMethodConfiguration instanceof IndexedAuthenticationMethodConfigurationProvider) {
+            final AuthenticationMethodSnapshot snapshot =
+                    ((IndexedAuthenticationMethodConfigurationProvider) this.authenticationMethodConfiguration).getSnapshot();
+            final int atLeastAsStrongEnd = getDominanceTable(snapshot).getEndOfMethodsAtLeastAsStrongAs(requestedAuthenticationMethod);
+            for (final String prevMethod : previouslyAchievedAuthenticationMethods) {
+                final int prevOrdinal = snapshot.getOrdinal(prevMethod);
+                if (prevOrdinal >= 0 && prevOrdinal < atLeastAsStrongEnd) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         final Integer requestedRank = getRank(requestedAuthenticationMethod);
         Integer prevRank;
         for (final String prevMethod : previouslyAchievedAuthenticationMethods) {
@@ -96,4 +127,79 @@ public class OrderedMultiFactorMethodRankingStrategy implements RequestedAuthent
         }
         return rank;
     }
+
+    /**
+     * Gets the dominance table for the given snapshot, compiling it if the snapshot has changed.
+     *
+     * @param snapshot the snapshot
+     * @return the dominance table
+     */
+    private DominanceTable getDominanceTable(final AuthenticationMethodSnapshot snapshot) {
+        DominanceTable table = this.dominanceTable;
+        if (table == null || table.snapshot != snapshot) {
+            table = new DominanceTable(snapshot);
+            this.dominanceTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Dense table that records, for each method ordinal, the range of ordinals of all
+     * methods whose rank is equal to or stronger than that method.
+     */
+    private static final class DominanceTable {
+        /**
+         * The snapshot the table is compiled from.
+         */
+        private final AuthenticationMethodSnapshot snapshot;
+
+        /**
+         * Exclusive end of the ordinals of at-least-as-strong methods, indexed by ordinal. -1 for methods with no rank.
+         */
+        private final int[] atLeastAsStrongEnd;
+
+        /**
+         * Compile the table. Since ordinals follow rank order, the methods at least as strong
+         * as a given method always form a prefix of the ordinals.
+         *
+         * @param snapshot the snapshot
+         */
+        DominanceTable(final AuthenticationMethodSnapshot snapshot) {
+            this.snapshot = snapshot;
+            final int size = snapshot.size();
+            this.atLeastAsStrongEnd = new int[size];
+
+            int end = 0;
+            for (int i = 0; i < size; i++) {
+                final Integer rank = snapshot.getByOrdinal(i).getRank();
+                if (rank == null) {
+                    this.atLeastAsStrongEnd[i] = -1;
+                } else {
+                    end = Math.max(end, i + 1);
+                    while (end < size && snapshot.getByOrdinal(end).getRank() != null
+                            && snapshot.getByOrdinal(end).getRank() <= rank) {
+                        end++;
+                    }
+                    this.atLeastAsStrongEnd[i] = end;
+                }
+            }
+        }
+
+        /**
+         * Gets the exclusive end of the ordinals of methods equal to or stronger than the given method.
+         * Those methods are exactly the ones with an ordinal lower than the returned value.
+         *
+         * @param mfaMethod the method
+         * @return the exclusive end of the ordinals
+         * @throws IllegalStateException if the method is not configured with a rank
+         */
+        int getEndOfMethodsAtLeastAsStrongAs(final String mfaMethod) {
+            final int ordinal = this.snapshot.getOrdinal(mfaMethod);
+            if (ordinal < 0 || this.atLeastAsStrongEnd[ordinal] < 0) {
+                throw new IllegalStateException("The [mfaRankingConfig] Map is mis-configured. It does not have a ranking value mapping for the"
+                        + " [" + mfaMethod + "] authentication method.");
+            }
+            return this.atLeastAsStrongEnd[ordinal];
+        }
+    }
 }
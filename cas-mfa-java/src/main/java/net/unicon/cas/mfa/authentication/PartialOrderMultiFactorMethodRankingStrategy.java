@@ -0,0 +1,262 @@
+package net.unicon.cas.mfa.authentication;
+
+import net.unicon.cas.mfa.web.support.ConflictingAuthenticationMethodsException;
+import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import javax.validation.constraints.NotNull;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Ranking strategy implementation that treats authentication methods as a partial order,
+ * rather than a total order by rank. Each method may declare the methods it satisfies:
+ *
+ * <pre><code>
+ [ {
+     "rank" : 1,
+     "name" : "hardware_token",
+     "satisfies" : [ "sms_two_factor" ]
+     }, {
+     "rank" : 1,
+     "name" : "duo_two_factor",
+     "satisfies" : [ "sms_two_factor" ]
+     }, {
+     "rank" : 2,
+     "name" : "sms_two_factor"
+ } ]
+ * </code></pre>
+ *
+ * <p>Here, both the hardware token and Duo satisfy SMS, but neither satisfies the other. Satisfaction is
+ * reflexive and transitive; the closure of the graph is computed once per configuration snapshot, so
+ * both decisions made by this strategy are bitset operations.</p>
+ *
+ * <p>Rank no longer implies satisfaction: a method only satisfies itself and the methods it declares,
+ * directly or transitively, whatever their ranks. Rank is only used to break ties between requests for
+ * methods that satisfy each other. Users holding one of two incomparable methods are prompted for the other
+ * when it is requested, and a login that requests incomparable methods is rejected with a
+ * {@link ConflictingAuthenticationMethodsException}, rather than silently satisfying only some of them.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class PartialOrderMultiFactorMethodRankingStrategy implements RequestedAuthenticationMethodRankingStrategy {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The authn method loader.
+     */
+    private final IndexedAuthenticationMethodConfigurationProvider authenticationMethodConfiguration;
+
+    /**
+     * Closure compiled from the most recently seen configuration snapshot.
+     */
+    private volatile SatisfactionClosure closure;
+
+    /**
+     * Ctor.
+     *
+     * @param authenticationMethodConfiguration the authentication method loader
+     */
+    public PartialOrderMultiFactorMethodRankingStrategy(
+            final IndexedAuthenticationMethodConfigurationProvider authenticationMethodConfiguration) {
+        this.authenticationMethodConfiguration = authenticationMethodConfiguration;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Selects the request whose method satisfies every requested method. If several do, they satisfy
+     * each other, and the tie is broken by rank, and then by authentication method source. Requested methods
+     * that are not configured are left out, unless no requested method is configured.</p>
+     *
+     * @throws ConflictingAuthenticationMethodsException if no requested method satisfies all others
+     */
+    @Override
+    public MultiFactorAuthenticationSupportingWebApplicationService
+    computeHighestRankingAuthenticationMethod(@NotNull final MultiFactorAuthenticationTransactionContext mfaTransaction) {
+        final SatisfactionClosure table = getClosure();
+        final Set<MultiFactorAuthenticationRequestContext> requests = mfaTransaction.getMfaRequests();
+
+        final BitSet requested = new BitSet(table.snapshot.size());
+        for (final MultiFactorAuthenticationRequestContext request : requests) {
+            final int ordinal = table.snapshot.getOrdinal(request.getMfaService().getAuthenticationMethod());
+            if (ordinal >= 0) {
+                requested.set(ordinal);
+            }
+        }
+
+        MultiFactorAuthenticationRequestContext highest = null;
+        for (final MultiFactorAuthenticationRequestContext request : requests) {
+            if (table.satisfiesAll(request.getMfaService().getAuthenticationMethod(), requested)
+                    && (highest == null || isRankedHigher(request, highest))) {
+                highest = request;
+            }
+        }
+        if (highest == null && !requests.isEmpty()) {
+            final Set<String> methods = new LinkedHashSet<>();
+            for (final MultiFactorAuthenticationRequestContext request : requests) {
+                methods.add(request.getMfaService().getAuthenticationMethod());
+            }
+            logger.warn("No single requested authentication method satisfies all of {} for [{}]", methods,
+                    mfaTransaction.getTargetServiceId());
+            throw new ConflictingAuthenticationMethodsException(methods, mfaTransaction.getTargetServiceId());
+        }
+        return highest == null ? null : highest.getMfaService();
+    }
+
+    @Override
+    public boolean anyPreviouslyAchievedAuthenticationMethodsStrongerThanRequestedOne(
+            final Set<String> previouslyAchievedAuthenticationMethods, final String requestedAuthenticationMethod) {
+
+        Assert.notNull(previouslyAchievedAuthenticationMethods);
+        Assert.notNull(requestedAuthenticationMethod);
+
+        if (previouslyAchievedAuthenticationMethods.isEmpty()) {
+            return false;
+        }
+
+        final SatisfactionClosure table = getClosure();
+        final int ordinal = table.snapshot.getOrdinal(requestedAuthenticationMethod);
+        if (ordinal < 0) {
+            throw new IllegalStateException("The authentication method configuration does not define the ["
+                    + requestedAuthenticationMethod + "] authentication method.");
+        }
+        for (final String prevMethod : previouslyAchievedAuthenticationMethods) {
+            final int prevOrdinal = table.snapshot.getOrdinal(prevMethod);
+            if (prevOrdinal >= 0 && table.satisfiedBy[ordinal].get(prevOrdinal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the first request is ranked higher than the second, by rank and then by source.
+     *
+     * @param request the request
+     * @param other the other request
+     * @return true if the request is ranked higher
+     */
+    private static boolean isRankedHigher(final MultiFactorAuthenticationRequestContext request,
+                                          final MultiFactorAuthenticationRequestContext other) {
+        if (request.getOrder() != other.getOrder()) {
+            return request.getOrder() < other.getOrder();
+        }
+        return getSourceOrder(request) < getSourceOrder(other);
+    }
+
+    /**
+     * Gets the order of the source of the request. Requests with no source are ordered last.
+     *
+     * @param request the request
+     * @return the source order
+     */
+    private static int getSourceOrder(final MultiFactorAuthenticationRequestContext request) {
+        final MultiFactorAuthenticationSupportingWebApplicationService.AuthenticationMethodSource source =
+                request.getMfaService().getAuthenticationMethodSource();
+        return source == null ? Integer.MAX_VALUE : source.ordinal();
+    }
+
+    /**
+     * Gets the closure for the current snapshot, compiling it if the snapshot has changed.
+     *
+     * @return the closure
+     */
+    private SatisfactionClosure getClosure() {
+        final AuthenticationMethodSnapshot snapshot = this.authenticationMethodConfiguration.getSnapshot();
+        SatisfactionClosure table = this.closure;
+        if (table == null || table.snapshot != snapshot) {
+            table = new SatisfactionClosure(snapshot);
+            this.closure = table;
+            logger.debug("Compiled authentication method satisfaction graph for configuration version [{}]", snapshot.getVersion());
+        }
+        return table;
+    }
+
+    /**
+     * Reflexive, transitive closure of the "satisfies" graph, indexed by method ordinal.
+     */
+    private final class SatisfactionClosure {
+        /**
+         * The snapshot the closure is compiled from.
+         */
+        private final AuthenticationMethodSnapshot snapshot;
+
+        /**
+         * Ordinals of the methods satisfied by each method.
+         */
+        private final BitSet[] satisfies;
+
+        /**
+         * Ordinals of the methods that satisfy each method.
+         */
+        private final BitSet[] satisfiedBy;
+
+        /**
+         * Compile the closure.
+         *
+         * @param snapshot the snapshot
+         */
+        SatisfactionClosure(final AuthenticationMethodSnapshot snapshot) {
+            this.snapshot = snapshot;
+            final int size = snapshot.size();
+            this.satisfies = new BitSet[size];
+            this.satisfiedBy = new BitSet[size];
+
+            for (int i = 0; i < size; i++) {
+                final AuthenticationMethod method = snapshot.getByOrdinal(i);
+                this.satisfies[i] = new BitSet(size);
+                this.satisfies[i].set(i);
+                for (final String name : method.getSatisfies()) {
+                    final int ordinal = snapshot.getOrdinal(name);
+                    if (ordinal >= 0) {
+                        this.satisfies[i].set(ordinal);
+                    } else {
+                        logger.warn("Authentication method [{}] satisfies [{}], which is not a configured method", method.getName(), name);
+                    }
+                }
+            }
+
+            for (int k = 0; k < size; k++) {
+                for (int i = 0; i < size; i++) {
+                    if (this.satisfies[i].get(k)) {
+                        this.satisfies[i].or(this.satisfies[k]);
+                    }
+                }
+            }
+
+            for (int i = 0; i < size; i++) {
+                this.satisfiedBy[i] = new BitSet(size);
+            }
+            for (int i = 0; i < size; i++) {
+                for (int j = this.satisfies[i].nextSetBit(0); j >= 0; j = this.satisfies[i].nextSetBit(j + 1)) {
+                    this.satisfiedBy[j].set(i);
+                }
+            }
+        }
+
+        /**
+         * Whether the given method satisfies all of the requested methods.
+         *
+         * @param mfaMethod the method
+         * @param requested ordinals of the requested methods
+         * @return false if the method does not satisfy one of the requested methods; methods that are
+         * not configured only satisfy an empty set of requested methods
+         */
+        boolean satisfiesAll(final String mfaMethod, final BitSet requested) {
+            final int ordinal = this.snapshot.getOrdinal(mfaMethod);
+            if (ordinal < 0) {
+                return requested.isEmpty();
+            }
+            for (int j = requested.nextSetBit(0); j >= 0; j = requested.nextSetBit(j + 1)) {
+                if (!this.satisfies[ordinal].get(j)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package net.unicon.cas.mfa.authentication;
 
+import net.unicon.cas.mfa.util.CompiledPatternCache;
 import net.unicon.cas.mfa.web.support.UnrecognizedAuthenticationMethodException;
 import org.jasig.cas.authentication.principal.WebApplicationService;
 
@@ -33,12 +34,24 @@ public class RegexAuthenticationMethodTranslator implements AuthenticationMethod
      * @param defaultMfaMethod the default MFA merhod to use if no match is found.
      */
     public RegexAuthenticationMethodTranslator(final Map<String, String> translationMap, final String defaultMfaMethod) {
+        this(translationMap, defaultMfaMethod, new CompiledPatternCache());
+    }
+
+    /**
+     * Instantiates a new Regex authentication method translator.
+     *
+     * @param translationMap the regex/mfa method translation map (maybe an ordered map)
+     * @param defaultMfaMethod the default MFA merhod to use if no match is found.
+     * @param patternCache the cache of compiled patterns, which may be shared with other components
+     */
+    public RegexAuthenticationMethodTranslator(final Map<String, String> translationMap, final String defaultMfaMethod,
+                                               final CompiledPatternCache patternCache) {
         this.defaultMfaMethod = defaultMfaMethod;
 
         final Map<Pattern, String> optimizedMap = new LinkedHashMap<>();
 
         for (final String pattern : translationMap.keySet()) {
-            optimizedMap.put(Pattern.compile(pattern), translationMap.get(pattern));
+            optimizedMap.put(patternCache.getPattern(pattern), translationMap.get(pattern));
         }
 
         this.translationMap = optimizedMap;
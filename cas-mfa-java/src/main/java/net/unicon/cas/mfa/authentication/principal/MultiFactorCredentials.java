@@ -15,11 +15,17 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A {@link Credential} implementation that is to ease multifactor authentication.
@@ -40,11 +46,18 @@ import java.util.Map;
  * <p>It is the responsibility of the authentication flow of course, to gather and carry on
  * the instance of {@link MultiFactorCredentials} as it knows how to authenticate the user agent
  * and is itself the recipient of each credential identifier.
+ *
+ * <p>Instances are kept in flow scope, and are externalized in a compact form that only carries
+ * the chained credentials and authentications.
  * @author Misagh Moayyed
  * @see #getChainedCredentials()
  * @see #getAuthentication()
  */
-public class MultiFactorCredentials implements Credential, Serializable {
+public class MultiFactorCredentials implements Credential, Externalizable {
+
+    private static final long serialVersionUID = -2219389713459218236L;
+
+    private static final byte VERSION = 1;
 
     private final PrincipalFactory principalFactory = new DefaultPrincipalFactory();
 
@@ -52,6 +65,11 @@ public class MultiFactorCredentials implements Credential, Serializable {
 
     private final List<Authentication> chainedAuthentication = new LinkedList<>();
 
+    /**
+     * Running merge of the authentication chain, into which each added authentication is folded.
+     */
+    private transient MergedChain mergedChain;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(MultiFactorCredentials.class);
 
     public final Map<String, Credential> getChainedCredentials() {
@@ -88,12 +106,16 @@ public class MultiFactorCredentials implements Credential, Serializable {
             throw new UnknownPrincipalMatchException(authentication);
         }
         this.chainedAuthentication.add(authentication);
+        if (this.mergedChain != null) {
+            this.mergedChain.fold(authentication);
+        }
     }
 
     /**
-     * Enumerates the list of available principals in the authentication chain
-     * and ensures that the newly given and provided principal is compliant
-     * and equals the rest of the principals in the chain. The match
+     * Ensures that the newly given and provided principal is compliant
+     * and equals the principal at the head of the authentication chain.
+     * Every other principal in the chain was verified against the head
+     * when it was added, so the head stands for the rest of the chain. The match
      * is explicitly controlled by {@link Principal#equals(Object)}
      * implementation.
      *
@@ -101,15 +123,11 @@ public class MultiFactorCredentials implements Credential, Serializable {
      * @return true if no mismatch is found; false otherwise.
      */
     private boolean doesPrincipalMatchAuthenticationChain(final Authentication authentication) {
-        for (final Authentication authn : this.chainedAuthentication) {
-            final Principal currentPrincipal = authn.getPrincipal();
-            final Principal newPrincipal = authentication.getPrincipal();
-
-            if (!currentPrincipal.equals(newPrincipal)) {
-                return false;
-            }
+        if (isEmpty()) {
+            return true;
         }
-        return true;
+        final Principal currentPrincipal = this.chainedAuthentication.get(0).getPrincipal();
+        return currentPrincipal.equals(authentication.getPrincipal());
     }
 
     /**
@@ -123,65 +141,55 @@ public class MultiFactorCredentials implements Credential, Serializable {
      * <p>Authentication attributes are merged from all authentications that make up the chain.
      * The merging strategy is such that duplicate attribute names are grouped together into an instance of
      * a {@link Collection} implementation and preserved.
+     *
+     * <p>The chain is merged once, as authentications are added to it. Each call then returns a new composite,
+     * copied from that merge, so that callers may modify the mutable attributes of their composite without
+     * affecting other callers. The chained credentials do not take part in the composite.</p>
      * @return an instance of {@link net.unicon.cas.mfa.authentication.CompositeAuthentication}
      */
     public final Authentication getAuthentication() {
-        if (!isEmpty()) {
-            /**
-             * Principal id is and must be enforced to be the same for all authentication contexts.
-             * Based on that restriction, it's safe to simply grab the first principal id in the chain
-             * when composing the authentication chain for the caller.
-             */
-            final String principalId = this.chainedAuthentication.get(0).getPrincipal().getId();
-            final Map<String, Object> principalAttributes = new HashMap<>();
-
-            final Map<String, Object> authenticationAttributes = new HashMap<>();
-
-            final List<CredentialMetaData> credentials = new ArrayList<>();
-            final Map<String, HandlerResult> successes = new LinkedHashMap<>();
-            final Map<String, Class<? extends Exception>> failures = new LinkedHashMap<>();
+        if (isEmpty()) {
+            return null;
+        }
+        return getMergedChain().toAuthentication(this.principalFactory, getPrincipalId());
+    }
 
+    /**
+     * Gets the running merge of the chain.
+     * The merge is rebuilt from the chain if it is not available, as is the case after deserialization.
+     * @return the merge of the chain
+     */
+    private MergedChain getMergedChain() {
+        if (this.mergedChain == null) {
+            final MergedChain merged = new MergedChain();
             for (final Authentication authn : this.chainedAuthentication) {
-                final Principal authenticatedPrincipal = authn.getPrincipal();
-                principalAttributes.putAll(authenticatedPrincipal.getAttributes());
-
-                credentials.addAll(authn.getCredentials());
-                successes.putAll(authn.getSuccesses());
-                failures.putAll(authn.getFailures());
-
-                for (final String attrName : authn.getAttributes().keySet()) {
-                    if (!authenticationAttributes.containsKey(attrName)) {
-                        authenticationAttributes.put(attrName, authn.getAttributes().get(attrName));
-                    } else {
-                        final Object oldValue = authenticationAttributes.remove(attrName);
-                        final Collection<Object> listOfValues = MultiFactorUtils.convertValueToCollection(oldValue);
-
-                        listOfValues.add(authn.getAttributes().get(attrName));
-                        authenticationAttributes.put(attrName, listOfValues);
-                    }
-                }
+                merged.fold(authn);
             }
-            final Principal compositePrincipal = principalFactory.createPrincipal(principalId, principalAttributes);
-            final DefaultCompositeAuthentication finalAuth =
-                    new DefaultCompositeAuthentication(compositePrincipal,
-                            authenticationAttributes, credentials, successes, failures);
-
-            return finalAuth;
+            this.mergedChain = merged;
         }
-        return null;
+        return this.mergedChain;
+    }
+
+    /**
+     * Principal id is and must be enforced to be the same for all authentication contexts.
+     * Based on that restriction, it's safe to simply grab the first principal id in the chain
+     * when composing the authentication chain for the caller.
+     * @return the principal id of the chain
+     */
+    private String getPrincipalId() {
+        return this.chainedAuthentication.get(0).getPrincipal().getId();
     }
 
     /**
      * Provides the ability to access the resolved
      * and primary principal based on the authentication context.
-     * @return the primary principal.
+     * @return the primary principal, with a copy of the merged principal attributes.
      */
     public final Principal getPrincipal() {
-        final Authentication auth = this.getAuthentication();
-        if (auth != null) {
-            return auth.getPrincipal();
+        if (isEmpty()) {
+            return null;
         }
-        return null;
+        return getMergedChain().toPrincipal(this.principalFactory, getPrincipalId());
     }
 
     public final Credential getCredentials() {
@@ -190,9 +198,120 @@ public class MultiFactorCredentials implements Credential, Serializable {
 
     @Override
     public String getId() {
-        if (getPrincipal() != null) {
-            return getPrincipal().getId();
+        if (!isEmpty()) {
+            return getPrincipalId();
         }
         return Credential.UNKNOWN_ID;
     }
+
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeInt(this.chainedCredentials.size());
+        for (final Map.Entry<String, Credential> entry : this.chainedCredentials.entrySet()) {
+            out.writeObject(entry.getKey());
+            out.writeObject(entry.getValue());
+        }
+        out.writeInt(this.chainedAuthentication.size());
+        for (final Authentication authentication : this.chainedAuthentication) {
+            out.writeObject(authentication);
+        }
+    }
+
+    @Override
+    public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+        final byte version = in.readByte();
+        if (version != VERSION) {
+            throw new InvalidObjectException("Unsupported serialized form version " + version);
+        }
+        final int credentialCount = in.readInt();
+        for (int i = 0; i < credentialCount; i++) {
+            this.chainedCredentials.put((String) in.readObject(), (Credential) in.readObject());
+        }
+        final int authenticationCount = in.readInt();
+        for (int i = 0; i < authenticationCount; i++) {
+            this.chainedAuthentication.add((Authentication) in.readObject());
+        }
+    }
+
+    /**
+     * Principal and authentication attributes, credentials, successes and failures merged from the
+     * authentications of the chain. Authentications are folded in one at a time, so adding a link costs
+     * the same regardless of the length of the chain.
+     */
+    private static final class MergedChain {
+
+        private final Map<String, Object> principalAttributes = new HashMap<>();
+
+        /**
+         * Authentication attributes that have been seen once so far.
+         */
+        private final Map<String, Object> authenticationAttributes = new HashMap<>();
+
+        /**
+         * Authentication attributes that have been seen more than once, with all of their values.
+         */
+        private final Map<String, Set<Object>> groupedAuthenticationAttributes = new HashMap<>();
+
+        private final List<CredentialMetaData> credentials = new ArrayList<>();
+
+        private final Map<String, HandlerResult> successes = new LinkedHashMap<>();
+
+        private final Map<String, Class<? extends Exception>> failures = new LinkedHashMap<>();
+
+        /**
+         * Fold the authentication into the merge.
+         * @param authn the authentication added to the chain
+         */
+        void fold(final Authentication authn) {
+            this.principalAttributes.putAll(authn.getPrincipal().getAttributes());
+
+            this.credentials.addAll(authn.getCredentials());
+            this.successes.putAll(authn.getSuccesses());
+            this.failures.putAll(authn.getFailures());
+
+            for (final Map.Entry<String, Object> attr : authn.getAttributes().entrySet()) {
+                final String attrName = attr.getKey();
+                final Set<Object> values = this.groupedAuthenticationAttributes.get(attrName);
+                if (values != null) {
+                    values.add(attr.getValue());
+                } else if (this.authenticationAttributes.containsKey(attrName)) {
+                    final Set<Object> listOfValues =
+                            MultiFactorUtils.convertValueToCollection(this.authenticationAttributes.remove(attrName));
+                    listOfValues.add(attr.getValue());
+                    this.groupedAuthenticationAttributes.put(attrName, listOfValues);
+                } else {
+                    this.authenticationAttributes.put(attrName, attr.getValue());
+                }
+            }
+        }
+
+        /**
+         * Create a composite authentication from a copy of the merge, so that neither
+         * authentications folded in later nor changes made to the composite affect one another.
+         * @param principalFactory the principal factory
+         * @param principalId the id of the principal of the chain
+         * @return the composite authentication
+         */
+        Authentication toAuthentication(final PrincipalFactory principalFactory, final String principalId) {
+            final Map<String, Object> attributes = new HashMap<>(this.authenticationAttributes);
+            for (final Map.Entry<String, Set<Object>> attr : this.groupedAuthenticationAttributes.entrySet()) {
+                attributes.put(attr.getKey(), new HashSet<>(attr.getValue()));
+            }
+            return new DefaultCompositeAuthentication(toPrincipal(principalFactory, principalId), attributes,
+                    new ArrayList<>(this.credentials),
+                    new LinkedHashMap<>(this.successes),
+                    new LinkedHashMap<>(this.failures));
+        }
+
+        /**
+         * Create the principal of the chain, with a copy of the merged principal attributes.
+         * @param principalFactory the principal factory
+         * @param principalId the id of the principal of the chain
+         * @return the principal
+         */
+        Principal toPrincipal(final PrincipalFactory principalFactory, final String principalId) {
+            return principalFactory.createPrincipal(principalId, new HashMap<>(this.principalAttributes));
+        }
+    }
 }
@@ -1,10 +1,13 @@
 package net.unicon.cas.mfa.authentication.principal;
 
 import net.unicon.cas.mfa.authentication.AuthenticationMethodConfigurationProvider;
+import net.unicon.cas.mfa.authentication.AuthenticationMethod;
 import net.unicon.cas.mfa.authentication.AuthenticationMethodTranslator;
+import net.unicon.cas.mfa.authentication.IndexedAuthenticationMethodConfigurationProvider;
 import net.unicon.cas.mfa.authentication.MultiFactorAuthenticationRequestContext;
 import net.unicon.cas.mfa.authentication.MultiFactorAuthenticationRequestResolver;
 import net.unicon.cas.mfa.authentication.RegisteredServiceMfaRoleProcessor;
+import net.unicon.cas.mfa.authentication.MultiFactorEligibility;
 import net.unicon.cas.mfa.authentication.StubAuthenticationMethodTranslator;
 import net.unicon.cas.mfa.web.support.MultiFactorWebApplicationServiceFactory;
 import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService;
@@ -17,6 +20,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.validation.constraints.NotNull;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import static net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService.AuthenticationMethodSource;
@@ -27,6 +31,10 @@ import static net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupporting
  * Note: It is assumed that the attribute value that specifies the
  * authentication method at this time is a single-valued attribute.
  *
+ * <p>When no authentication method translator is configured and the authentication carries a current
+ * {@link MultiFactorEligibility} summary, the methods recorded there at authentication time are used
+ * instead of reading the principal attribute again.</p>
+ *
  * @author Dmitriy Kopylenko
  * @author Unicon, inc.
  */
@@ -58,6 +66,11 @@ public class PrincipalAttributeMultiFactorAuthenticationRequestResolver implemen
      */
     private AuthenticationMethodTranslator authenticationMethodTranslator = new StubAuthenticationMethodTranslator();
 
+    /**
+     * Whether a translator was configured, in which case the methods recorded in eligibility summaries cannot be used.
+     */
+    private boolean translatorConfigured;
+
     /**
      * The mfa_role processor.
      */
@@ -107,6 +120,14 @@ public class PrincipalAttributeMultiFactorAuthenticationRequestResolver implemen
                 }
             }
 
+            final MultiFactorEligibility eligibility = this.translatorConfigured ? null
+                    : MultiFactorEligibility.getCurrent(authentication, this.authenticationMethodConfiguration);
+            if (eligibility != null) {
+                list.addAll(getMfaRequestContexts(eligibility, targetService, responseType));
+                logger.debug("Resolved multifactor authentication requests recorded at authentication time are {}", list);
+                return list;
+            }
+
             final Object mfaMethodAsObject = authentication.getPrincipal().getAttributes().get(this.authenticationMethodAttributeName);
 
             logger.debug("MFA attribute value from {} is {}", this.authenticationMethodAttributeName, mfaMethodAsObject);
@@ -164,18 +185,69 @@ public class PrincipalAttributeMultiFactorAuthenticationRequestResolver implemen
                         mfaMethod);
                 return null;
             }
-            final int mfaMethodRank = this.authenticationMethodConfiguration.getAuthenticationMethod(mfaMethod).getRank();
-            final MultiFactorAuthenticationSupportingWebApplicationService svc =
-                    this.mfaServiceFactory.create(targetService.getId(), targetService.getId(),
-                            targetService.getArtifactId(), responseType, mfaMethod, AuthenticationMethodSource.PRINCIPAL_ATTRIBUTE);
-
-            return new MultiFactorAuthenticationRequestContext(svc, mfaMethodRank);
+            final AuthenticationMethod method = this.authenticationMethodConfiguration.getAuthenticationMethod(mfaMethod);
+            return createMfaRequestContext(mfaMethod, getRank(method), targetService, responseType);
         }
         return null;
     }
 
+    /**
+     * Gets the mfa request contexts of the methods recorded in the eligibility summary.
+     *
+     * @param eligibility the current eligibility summary
+     * @param targetService the target service
+     * @param responseType the response type
+     * @return the mfa request contexts
+     */
+    private List<MultiFactorAuthenticationRequestContext> getMfaRequestContexts(final MultiFactorEligibility eligibility,
+                                                                                final WebApplicationService targetService,
+                                                                                final ResponseType responseType) {
+        final List<MultiFactorAuthenticationRequestContext> list = new ArrayList<>();
+        final BitSet ordinals = eligibility.getRequestedMethods();
+        for (int i = ordinals.nextSetBit(0); i >= 0; i = ordinals.nextSetBit(i + 1)) {
+            final AuthenticationMethod method =
+                    ((IndexedAuthenticationMethodConfigurationProvider) this.authenticationMethodConfiguration).getSnapshot().getByOrdinal(i);
+            list.add(createMfaRequestContext(method.getName(), getRank(method), targetService, responseType));
+        }
+        return list;
+    }
+
+    /**
+     * Gets the rank of a configured method. A method configured without a rank is ranked below every other
+     * method, as the authentication method snapshot orders it.
+     *
+     * @param method the method
+     * @return the rank
+     */
+    private int getRank(final AuthenticationMethod method) {
+        if (method.getRank() == null) {
+            logger.warn("Authentication method [{}] has no rank. It is ranked below every other method.", method.getName());
+            return Integer.MAX_VALUE;
+        }
+        return method.getRank();
+    }
+
+    /**
+     * Create the mfa request context of a configured method.
+     *
+     * @param mfaMethod the mfa method
+     * @param mfaMethodRank the rank of the method
+     * @param targetService the target service
+     * @param responseType the response type
+     * @return the mfa request context
+     */
+    private MultiFactorAuthenticationRequestContext createMfaRequestContext(final String mfaMethod, final int mfaMethodRank,
+                                                                            final WebApplicationService targetService,
+                                                                            final ResponseType responseType) {
+        final MultiFactorAuthenticationSupportingWebApplicationService svc =
+                this.mfaServiceFactory.create(targetService.getId(), targetService.getId(),
+                        targetService.getArtifactId(), responseType, mfaMethod, AuthenticationMethodSource.PRINCIPAL_ATTRIBUTE);
+        return new MultiFactorAuthenticationRequestContext(svc, mfaMethodRank);
+    }
+
     public void setAuthenticationMethodTranslator(final AuthenticationMethodTranslator authenticationMethodTranslator) {
         this.authenticationMethodTranslator = authenticationMethodTranslator;
+        this.translatorConfigured = true;
     }
 
     public void setMfaRoleProcessor(final RegisteredServiceMfaRoleProcessor mfaRoleProcessor) {
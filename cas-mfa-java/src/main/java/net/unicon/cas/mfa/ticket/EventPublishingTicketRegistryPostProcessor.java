@@ -0,0 +1,130 @@
+package net.unicon.cas.mfa.ticket;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.registry.TicketRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.NameMatchMethodPointcutAdvisor;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+
+import java.lang.reflect.Modifier;
+
+/**
+ * Proxies the ticket registry of the overlay so that a {@link TicketDestroyedEvent} is published for every
+ * ticket granting ticket deleted through it, without having to override the ticket registry configuration
+ * of the overlay. All ticket deletions on this node go through the registry, including those of the stock
+ * logout flow and of the registry cleaner.
+ *
+ * <p>The registry is proxied by subclassing its class, so the proxy can still be cast to the concrete registry
+ * type and to every interface the registry implements, such as
+ * {@link org.jasig.cas.ticket.registry.TicketRegistryState}. Only registries of final classes are proxied by
+ * their interfaces instead. Ticket granting tickets are recognized by the {@link TicketGrantingTicket#PREFIX}
+ * of their id, so that no extra registry lookup is made per deletion.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class EventPublishingTicketRegistryPostProcessor implements BeanPostProcessor, ApplicationEventPublisherAware {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String ticketRegistryBeanName;
+
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Instantiates a new post processor that proxies the bean named <code>ticketRegistry</code>.
+     */
+    public EventPublishingTicketRegistryPostProcessor() {
+        this("ticketRegistry");
+    }
+
+    /**
+     * Instantiates a new post processor.
+     *
+     * @param ticketRegistryBeanName the name of the ticket registry bean to proxy
+     */
+    public EventPublishingTicketRegistryPostProcessor(final String ticketRegistryBeanName) {
+        this.ticketRegistryBeanName = ticketRegistryBeanName;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(final ApplicationEventPublisher applicationEventPublisher) {
+        this.eventPublisher = applicationEventPublisher;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(final Object bean, final String beanName) throws BeansException {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(final Object bean, final String beanName) throws BeansException {
+        if (!this.ticketRegistryBeanName.equals(beanName) || !(bean instanceof TicketRegistry) || isPublishingEvents(bean)) {
+            return bean;
+        }
+        final NameMatchMethodPointcutAdvisor advisor = new NameMatchMethodPointcutAdvisor(
+                new TicketDestroyedEventPublisher(this.eventPublisher));
+        advisor.setMappedName("deleteTicket");
+
+        final ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(!Modifier.isFinal(bean.getClass().getModifiers()));
+        proxyFactory.addAdvisor(advisor);
+        logger.debug("Publishing ticket destroyed events for ticket registry [{}] of type [{}]", beanName, bean.getClass().getName());
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+    /**
+     * Whether the bean is already a proxy that publishes ticket destroyed events.
+     *
+     * @param bean the bean
+     * @return true if the bean is already proxied by this post processor
+     */
+    private static boolean isPublishingEvents(final Object bean) {
+        if (bean instanceof Advised) {
+            for (final Advisor advisor : ((Advised) bean).getAdvisors()) {
+                if (advisor.getAdvice() instanceof TicketDestroyedEventPublisher) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Publishes a {@link TicketDestroyedEvent} once a ticket granting ticket has been deleted.
+     */
+    private static final class TicketDestroyedEventPublisher implements MethodInterceptor {
+
+        private final ApplicationEventPublisher eventPublisher;
+
+        /**
+         * Instantiates a new interceptor.
+         *
+         * @param eventPublisher the publisher of the ticket destroyed events
+         */
+        TicketDestroyedEventPublisher(final ApplicationEventPublisher eventPublisher) {
+            this.eventPublisher = eventPublisher;
+        }
+
+        @Override
+        public Object invoke(final MethodInvocation invocation) throws Throwable {
+            final Object[] arguments = invocation.getArguments();
+            try {
+                return invocation.proceed();
+            } finally {
+                if (arguments.length == 1 && arguments[0] instanceof String
+                        && ((String) arguments[0]).startsWith(TicketGrantingTicket.PREFIX)) {
+                    this.eventPublisher.publishEvent(new TicketDestroyedEvent(invocation.getThis(), (String) arguments[0]));
+                }
+            }
+        }
+    }
+}
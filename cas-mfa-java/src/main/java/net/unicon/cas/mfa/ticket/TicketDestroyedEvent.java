@@ -0,0 +1,32 @@
+package net.unicon.cas.mfa.ticket;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when a ticket granting ticket is deleted from the ticket registry of this node, whether on logout,
+ * by the registry cleaner, or by any other component. Deletions of other tickets are not published.
+ *
+ * @author Unicon inc.
+ * @see EventPublishingTicketRegistryPostProcessor
+ */
+public final class TicketDestroyedEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 4512298047393212345L;
+
+    private final String ticketId;
+
+    /**
+     * Instantiates a new event.
+     *
+     * @param source the ticket registry the ticket was deleted from
+     * @param ticketId the id of the deleted ticket granting ticket
+     */
+    public TicketDestroyedEvent(final Object source, final String ticketId) {
+        super(source);
+        this.ticketId = ticketId;
+    }
+
+    public String getTicketId() {
+        return this.ticketId;
+    }
+}
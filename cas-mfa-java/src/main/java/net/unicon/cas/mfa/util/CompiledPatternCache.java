@@ -0,0 +1,118 @@
+package net.unicon.cas.mfa.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.regex.Pattern;
+
+/**
+ * Bounded, concurrent cache of compiled regular expressions, keyed by the expression.
+ * Each expression is compiled once and shared by all callers; lookups do not contend on a
+ * global lock, and the least recently used patterns are evicted once the cache is full, so that
+ * a misconfigured service registry cannot grow it without limit.
+ *
+ * <p>A single instance is meant to be shared by the components that match configured expressions,
+ * such as the mfa role processor and the regex authentication method translators.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class CompiledPatternCache {
+
+    /**
+     * Default maximum number of patterns kept in the cache.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 1000;
+
+    private final LoadingCache<String, Pattern> patterns;
+
+    /**
+     * Instantiates a new cache with the default maximum size.
+     */
+    public CompiledPatternCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Instantiates a new cache.
+     *
+     * @param maximumSize the maximum number of patterns kept in the cache
+     */
+    public CompiledPatternCache(final long maximumSize) {
+        this.patterns = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build(new CacheLoader<String, Pattern>() {
+                    @Override
+                    public Pattern load(final String regex) {
+                        return Pattern.compile(regex);
+                    }
+                });
+    }
+
+    /**
+     * Gets the compiled pattern for the given expression, compiling it if needed.
+     *
+     * @param regex the regular expression
+     * @return the compiled pattern
+     * @throws java.util.regex.PatternSyntaxException if the expression is not valid
+     */
+    public Pattern getPattern(final String regex) {
+        try {
+            return this.patterns.getUnchecked(regex);
+        } catch (final UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Whether the value matches the given expression in its entirety.
+     *
+     * @param regex the regular expression
+     * @param value the value
+     * @return true if the value matches
+     */
+    public boolean matches(final String regex, final CharSequence value) {
+        return getPattern(regex).matcher(value).matches();
+    }
+
+    /**
+     * Number of lookups that found an already compiled pattern.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return this.patterns.stats().hitCount();
+    }
+
+    /**
+     * Number of lookups that required a pattern to be compiled.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return this.patterns.stats().missCount();
+    }
+
+    /**
+     * Number of patterns evicted because the cache was full.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return this.patterns.stats().evictionCount();
+    }
+
+    /**
+     * Approximate number of patterns in the cache.
+     *
+     * @return the size
+     */
+    public long size() {
+        return this.patterns.size();
+    }
+}
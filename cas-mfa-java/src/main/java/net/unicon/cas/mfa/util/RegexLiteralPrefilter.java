@@ -0,0 +1,145 @@
+package net.unicon.cas.mfa.util;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Cheap prefilter for full-string regular expression matches, built from the literal
+ * prefix and suffix of an expression. A value that does not start with the prefix and end with
+ * the suffix cannot match the expression, so the regex engine only needs to run for values
+ * that pass the prefilter. An expression that is entirely literal is matched by string equality.
+ *
+ * <p>Extraction is deliberately conservative. Expressions with alternation, groups with
+ * inline flags or other constructs whose literal content cannot be trivially determined
+ * produce a prefilter that accepts every value.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class RegexLiteralPrefilter {
+
+    private static final String METACHARACTERS = "\\.[]{}()*+?|^$";
+
+    private static final String QUANTIFIERS = "*+?{";
+
+    private final String prefix;
+
+    private final String suffix;
+
+    private final boolean exact;
+
+    /**
+     * Instantiates a new prefilter.
+     *
+     * @param prefix the required prefix
+     * @param suffix the required suffix
+     * @param exact whether the prefix is the entire expression
+     */
+    private RegexLiteralPrefilter(final String prefix, final String suffix, final boolean exact) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.exact = exact;
+    }
+
+    /**
+     * Build the prefilter for the given expression.
+     *
+     * @param regex the regular expression, as used with {@link java.util.regex.Matcher#matches()}
+     * @return the prefilter
+     */
+    public static RegexLiteralPrefilter compile(final String regex) {
+        if (regex.indexOf('|') >= 0 || regex.contains("(?")) {
+            return new RegexLiteralPrefilter("", "", false);
+        }
+
+        int start = 0;
+        int end = regex.length();
+        if (end > 0 && regex.charAt(0) == '^') {
+            start = 1;
+        }
+        if (end > start && regex.charAt(end - 1) == '$' && (end < 2 || regex.charAt(end - 2) != '\\')) {
+            end--;
+        }
+
+        final StringBuilder prefix = new StringBuilder();
+        int i = start;
+        while (i < end) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < end && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    prefix.append(regex.charAt(i + 1));
+                    i += 2;
+                    continue;
+                }
+                break;
+            }
+            if (METACHARACTERS.indexOf(c) >= 0) {
+                if (QUANTIFIERS.indexOf(c) >= 0 && prefix.length() > 0) {
+                    final int last = prefix.offsetByCodePoints(prefix.length(), -1);
+                    prefix.setLength(last);
+                }
+                break;
+            }
+            prefix.append(c);
+            i++;
+        }
+
+        if (i >= end) {
+            return new RegexLiteralPrefilter(prefix.toString(), "", true);
+        }
+
+        final StringBuilder suffix = new StringBuilder();
+        int j = end - 1;
+        while (j > i) {
+            final char c = regex.charAt(j);
+            if (METACHARACTERS.indexOf(c) >= 0 || regex.charAt(j - 1) == '\\') {
+                break;
+            }
+            suffix.append(c);
+            j--;
+        }
+
+        return new RegexLiteralPrefilter(prefix.toString(), suffix.reverse().toString(), false);
+    }
+
+    /**
+     * Whether the value could possibly match the expression.
+     * If the prefilter is exact, this is also a sufficient condition.
+     *
+     * @param value the value
+     * @return false if the value cannot match the expression
+     */
+    public boolean mayMatch(final String value) {
+        if (this.exact) {
+            return this.prefix.equals(value);
+        }
+        return value.length() >= this.prefix.length() + this.suffix.length()
+                && value.startsWith(this.prefix)
+                && value.endsWith(this.suffix);
+    }
+
+    /**
+     * Whether the expression is entirely literal, in which case
+     * {@link #mayMatch(String)} answers the match without the regex engine.
+     *
+     * @return true if exact
+     */
+    public boolean isExact() {
+        return this.exact;
+    }
+
+    public String getPrefix() {
+        return this.prefix;
+    }
+
+    public String getSuffix() {
+        return this.suffix;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("prefix", this.prefix)
+                .append("suffix", this.suffix)
+                .append("exact", this.exact)
+                .toString();
+    }
+}
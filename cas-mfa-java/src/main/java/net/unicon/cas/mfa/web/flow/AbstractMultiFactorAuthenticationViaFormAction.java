@@ -1,5 +1,6 @@
 package net.unicon.cas.mfa.web.flow;
 
+import net.unicon.cas.mfa.authentication.AuthenticationReferenceCache;
 import net.unicon.cas.mfa.authentication.AuthenticationSupport;
 import net.unicon.cas.mfa.authentication.MultiFactorAuthenticationRequestContext;
 import net.unicon.cas.mfa.authentication.MultiFactorAuthenticationRequestResolver;
@@ -96,6 +97,23 @@ public abstract class AbstractMultiFactorAuthenticationViaFormAction extends Abs
     private MultiFactorAuthenticationSpringWebflowEventBuilder errorEventBuilder =
             new ErroringMultiFactorAuthenticationSpringWebflowEventBuilder();
 
+    /**
+     * Cache that hands out references to authentications, if any.
+     */
+    private AuthenticationReferenceCache authenticationReferenceCache;
+
+    /**
+     * Whether only a reference to the authentication is kept in flow scope.
+     */
+    private boolean storeAuthenticationReference;
+
+    /**
+     * Whether multifactor submissions must carry the login ticket of the flow. Only actions that are
+     * reached without a form being posted, once the flow itself decided the credentials are acceptable,
+     * should turn this off.
+     */
+    private boolean loginTicketRequired = true;
+
     /**
      * Ctor.
      *
@@ -172,7 +190,7 @@ public abstract class AbstractMultiFactorAuthenticationViaFormAction extends Abs
             }
 
             final Event result = multiFactorAuthenticationSuccessful(auth, context, credentials, messageContext, id);
-            MultiFactorRequestContextUtils.setAuthentication(context, auth);
+            putAuthenticationInFlowScope(context, auth);
             return result;
         } catch (final AuthenticationException e) {
             populateErrorsInstance(e.getMessage(), messageContext);
@@ -183,6 +201,24 @@ public abstract class AbstractMultiFactorAuthenticationViaFormAction extends Abs
     }
 
 
+    /**
+     * Put the authentication in flow scope, for the subsequent mfa flows. If so configured, the authentication
+     * is kept in the {@link AuthenticationReferenceCache} and flow scope only receives its handle.
+     * Multifactor credentials built for an earlier authentication of the flow are dropped.
+     *
+     * @param context the request context
+     * @param auth the authentication
+     */
+    private void putAuthenticationInFlowScope(final RequestContext context, final Authentication auth) {
+        MultiFactorRequestContextUtils.setMfaCredentials(context, null);
+        if (this.storeAuthenticationReference && this.authenticationReferenceCache != null) {
+            MultiFactorRequestContextUtils.setAuthenticationReference(context, this.authenticationReferenceCache.put(auth));
+            logger.debug("Placed a reference to the authentication of [{}] in flow scope", auth.getPrincipal().getId());
+        } else {
+            MultiFactorRequestContextUtils.setAuthentication(context, auth);
+        }
+    }
+
     /**
      * In the event of a non-MFA request, return the result of {@link #getErrorEvent(RequestContext)} by default.
      * Implementations are expected to override this method if they wish to respond to authentication
@@ -236,7 +272,7 @@ public abstract class AbstractMultiFactorAuthenticationViaFormAction extends Abs
                               final String id) throws Exception {
 
         if (isMultiFactorAuthenticationRequest(context)) {
-            if (isValidLoginTicket(context, messageContext)) {
+            if (!this.loginTicketRequired || isValidLoginTicket(context, messageContext)) {
                 return doMultiFactorAuthentication(context, credentials, messageContext, id);
             }
             return getErrorEvent(context);
@@ -278,6 +314,18 @@ public abstract class AbstractMultiFactorAuthenticationViaFormAction extends Abs
         this.errorEventBuilder = errorEventBuilder;
     }
 
+    public void setAuthenticationReferenceCache(final AuthenticationReferenceCache authenticationReferenceCache) {
+        this.authenticationReferenceCache = authenticationReferenceCache;
+    }
+
+    public void setStoreAuthenticationReference(final boolean storeAuthenticationReference) {
+        this.storeAuthenticationReference = storeAuthenticationReference;
+    }
+
+    public void setLoginTicketRequired(final boolean loginTicketRequired) {
+        this.loginTicketRequired = loginTicketRequired;
+    }
+
     /**
      * Authentication manager instance to authenticate the user by its configured
      * handlers as the first leg of an multifactor authentication sequence.
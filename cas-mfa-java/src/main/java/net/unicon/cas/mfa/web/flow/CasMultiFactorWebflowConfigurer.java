@@ -73,6 +73,8 @@ public class CasMultiFactorWebflowConfigurer implements InitializingBean {
     private static final String UNKNOWN_PRINCIPAL_ERROR_EVENT_ID = "unknownPrincipalError";
     private static final String MFA_UNRECOGNIZED_AUTHN_METHOD_ERROR_EVENT_ID = "mfaUnrecognizedAuthnMethodError";
     private static final String MFA_SUCCESS_EVENT_ID = "mfaSuccess";
+    private static final String MFA_FALLBACK_EVENT_ID = "mfaFallback";
+    private static final String STATE_DEFINITION_ID_MFA_FALLBACK_CHECK = "mfaFallbackCheck";
     private static final String SUCCESS_EVENT_ID = "success";
 
     @Autowired
@@ -143,6 +145,7 @@ public class CasMultiFactorWebflowConfigurer implements InitializingBean {
             addMultiFactorGlobalTransitionsForExceptionHandling(flow);
             addOnEntryActionToServiceCheckState(flow);
             createMultiFactorSubflowStateDefinitions(flow, flowIds);
+            addMultiFactorFallbackCheck(flow, flowIds);
         } catch (final Exception e) {
             LOGGER.error(e.getMessage(), e);
         }
@@ -436,6 +439,23 @@ public class CasMultiFactorWebflowConfigurer implements InitializingBean {
                 "viewUnknownPrincipalErrorView"));
         subflowState.getTransitionSet().add(createTransition(MFA_UNRECOGNIZED_AUTHN_METHOD_ERROR_EVENT_ID,
                 VIEW_MFA_UNRECOGNIZED_AUTHN_METHOD_ERROR_VIEW));
+        subflowState.getTransitionSet().add(createTransition(MFA_FALLBACK_EVENT_ID, STATE_DEFINITION_ID_MFA_FALLBACK_CHECK));
+    }
+
+    /**
+     * Add the action state that routes the flow to the subflow of an alternate authentication method,
+     * when an mfa subflow ends because its provider is unavailable.
+     *
+     * @param flow the flow
+     * @param flowIds the flow ids
+     */
+    protected void addMultiFactorFallbackCheck(final Flow flow, final String[] flowIds) {
+        final ActionState actionState = new ActionState(flow, STATE_DEFINITION_ID_MFA_FALLBACK_CHECK);
+        actionState.getActionList().add(createEvaluateAction("mfaFallbackAction"));
+        for (final String flowId : flowIds) {
+            addTransitionToActionState(actionState, flowId, flowId);
+        }
+        LOGGER.debug("Created action state {} with transitions to {}", actionState.getId(), Arrays.toString(flowIds));
     }
 
     /**
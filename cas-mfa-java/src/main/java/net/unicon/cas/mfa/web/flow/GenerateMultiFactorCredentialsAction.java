@@ -1,5 +1,6 @@
 package net.unicon.cas.mfa.web.flow;
 
+import net.unicon.cas.mfa.authentication.AuthenticationReferenceCache;
 import net.unicon.cas.mfa.authentication.AuthenticationSupport;
 import net.unicon.cas.mfa.authentication.principal.MultiFactorCredentials;
 import net.unicon.cas.mfa.web.flow.util.MultiFactorRequestContextUtils;
@@ -22,6 +23,9 @@ import javax.validation.constraints.NotNull;
  * An action to obtain/construct the {@link MultiFactorCredentials} instance and pass it along
  * to the subsequent authentication flow. For transitions between authentication sequences and flows,
  * credentials need to be reconstructed before moving on to the next flow.
+ * Credentials already built for the current login are passed along as they are, since the primary
+ * authentication is already part of their chain. This is the case when an mfa subflow falls back
+ * to the subflow of an alternate method.
  * @author Misagh Moayyed
  */
 public final class GenerateMultiFactorCredentialsAction extends AbstractAction {
@@ -40,6 +44,8 @@ public final class GenerateMultiFactorCredentialsAction extends AbstractAction {
     /** The authentication support. */
     private AuthenticationSupport authenticationSupport;
 
+    /** The cache that resolves authentication references, if any. */
+    private AuthenticationReferenceCache authenticationReferenceCache;
 
     /**
      * Sets the authentication support.
@@ -50,6 +56,15 @@ public final class GenerateMultiFactorCredentialsAction extends AbstractAction {
         this.authenticationSupport = authSupport;
     }
 
+    /**
+     * Sets the cache used to resolve authentication references found in flow scope.
+     *
+     * @param authenticationReferenceCache the authentication reference cache
+     */
+    public void setAuthenticationReferenceCache(final AuthenticationReferenceCache authenticationReferenceCache) {
+        this.authenticationReferenceCache = authenticationReferenceCache;
+    }
+
     /**
      * Construct the {@link MultiFactorCredentials} instance by chaining current {@link Credential}
      * and the {@link Authentication}.
@@ -79,20 +94,47 @@ public final class GenerateMultiFactorCredentialsAction extends AbstractAction {
             credentials.getChainedCredentials().put(id, upCredentials);
         }
         MultiFactorRequestContextUtils.setMfaCredentials(context, credentials);
+        releaseAuthenticationReference(context);
 
         LOGGER.debug("Added multifactor credentials to the request context.");
         return credentials;
     }
 
     /**
-     * Obtain the {@link Authentication} object from the webflow's flow scope. If none,
+     * Drop the authentication reference kept in flow scope, if any, now that the authentication
+     * is held by the multifactor credentials, so the cache does not retain it until it expires.
+     * @param context the request context
+     */
+    private void releaseAuthenticationReference(final RequestContext context) {
+        if (this.authenticationReferenceCache == null) {
+            return;
+        }
+        final String handle = MultiFactorRequestContextUtils.getAuthenticationReference(context);
+        if (handle != null) {
+            LOGGER.debug("Releasing authentication reference [{}]", handle);
+            this.authenticationReferenceCache.remove(handle);
+            MultiFactorRequestContextUtils.setAuthenticationReference(context, null);
+        }
+    }
+
+    /**
+     * Obtain the {@link Authentication} object from the webflow's flow scope, resolving the
+     * authentication reference kept there if any. If none,
      * attempt to obtain the authentication object from the current TGT.
      * @param context the request context
      * @return the {@link Authentication} object
      */
     private Authentication getCasAuthentication(final RequestContext context) {
 
-        final Authentication authentication = MultiFactorRequestContextUtils.getAuthentication(context);
+        Authentication authentication = MultiFactorRequestContextUtils.getAuthentication(context);
+
+        if (authentication == null && this.authenticationReferenceCache != null) {
+            final String handle = MultiFactorRequestContextUtils.getAuthenticationReference(context);
+            if (handle != null) {
+                LOGGER.debug("Resolving authentication context from reference [{}]", handle);
+                authentication = this.authenticationReferenceCache.get(handle);
+            }
+        }
 
         if (authentication == null) {
             LOGGER.debug("Request is missing authentication context. Examining TGT...");
@@ -128,6 +170,12 @@ public final class GenerateMultiFactorCredentialsAction extends AbstractAction {
         final FlowSession session = context.getFlowExecutionContext().getActiveSession();
         LOGGER.debug("Authentication has entered the flow [{}] executing state [{}",
                 context.getActiveFlow().getId(), session.getState().getId());
+        final MultiFactorCredentials existingCreds = MultiFactorRequestContextUtils.getMfaCredentials(context);
+        if (existingCreds != null && !existingCreds.isEmpty()) {
+            LOGGER.debug("Multifactor credentials are already built for this login, e.g. on fallback to an alternate method");
+            return new Event(this, EVENT_ID_SUCCESS, new LocalAttributeMap(ATTRIBUTE_ID_MFA_CREDENTIALS, existingCreds));
+        }
+
         final Credential creds = WebUtils.getCredential(context);
         final String id = creds != null ? creds.getId() : null;
 
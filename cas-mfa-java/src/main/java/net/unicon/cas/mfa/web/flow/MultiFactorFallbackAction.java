@@ -0,0 +1,78 @@
+package net.unicon.cas.mfa.web.flow;
+
+import net.unicon.cas.mfa.authentication.AuthenticationMethodConfigurationProvider;
+import net.unicon.cas.mfa.web.flow.event.MultiFactorAuthenticationSpringWebflowEventBuilder;
+import net.unicon.cas.mfa.web.flow.util.MultiFactorRequestContextUtils;
+import net.unicon.cas.mfa.web.support.DefaultMultiFactorAuthenticationSupportingWebApplicationService;
+import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService;
+import net.unicon.cas.mfa.web.support.MultiFactorWebApplicationServiceFactory;
+import net.unicon.cas.mfa.web.support.UnrecognizedAuthenticationMethodException;
+import org.apache.commons.lang3.StringUtils;
+import org.jasig.cas.authentication.principal.Response.ResponseType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.webflow.action.AbstractAction;
+import org.springframework.webflow.execution.Event;
+import org.springframework.webflow.execution.RequestContext;
+
+/**
+ * Routes the login flow to the subflow of an alternate authentication method, once an mfa subflow
+ * has given up because its provider is unavailable, and has named the alternate method in conversation scope.
+ * The alternate method must be part of the authentication method configuration, and differ from the method
+ * that gave up, which would otherwise be routed back to the very subflow that failed. The multifactor service
+ * in the flow is replaced by one that requires the alternate method, so that the alternate subflow completes
+ * as it would have if the method had been requested in the first place.
+ *
+ * <p>Tickets issued after a fallback satisfy the alternate method only; services that require a higher
+ * ranked method will reject them at validation time.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class MultiFactorFallbackAction extends AbstractAction {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final MultiFactorWebApplicationServiceFactory mfaServiceFactory;
+
+    private final AuthenticationMethodConfigurationProvider authenticationMethodConfiguration;
+
+    /**
+     * Instantiates a new fallback action.
+     *
+     * @param mfaServiceFactory the mfa service factory
+     * @param authenticationMethodConfiguration the authentication method configuration
+     */
+    public MultiFactorFallbackAction(final MultiFactorWebApplicationServiceFactory mfaServiceFactory,
+                                     final AuthenticationMethodConfigurationProvider authenticationMethodConfiguration) {
+        this.mfaServiceFactory = mfaServiceFactory;
+        this.authenticationMethodConfiguration = authenticationMethodConfiguration;
+    }
+
+    @Override
+    protected Event doExecute(final RequestContext context) throws Exception {
+        final MultiFactorAuthenticationSupportingWebApplicationService svc =
+                MultiFactorRequestContextUtils.getMultifactorWebApplicationService(context);
+        final String fallbackMethod = MultiFactorRequestContextUtils.getFallbackAuthenticationMethod(context);
+        final String serviceId = svc != null ? svc.getId() : null;
+
+        if (svc == null || StringUtils.isBlank(fallbackMethod)
+                || !this.authenticationMethodConfiguration.containsAuthenticationMethod(fallbackMethod)
+                || fallbackMethod.equals(svc.getAuthenticationMethod())) {
+            logger.warn("Cannot fall back to authentication method [{}] for service [{}]", fallbackMethod, serviceId);
+            throw new UnrecognizedAuthenticationMethodException(fallbackMethod, serviceId);
+        }
+
+        final ResponseType responseType = svc instanceof DefaultMultiFactorAuthenticationSupportingWebApplicationService
+                ? ((DefaultMultiFactorAuthenticationSupportingWebApplicationService) svc).getResponseType()
+                : ResponseType.REDIRECT;
+        final MultiFactorAuthenticationSupportingWebApplicationService fallbackService = this.mfaServiceFactory.create(
+                svc.getId(), svc.getId(), svc.getArtifactId(), responseType, fallbackMethod, svc.getAuthenticationMethodSource());
+
+        logger.info("Falling back from authentication method [{}] to [{}] for service [{}]",
+                svc.getAuthenticationMethod(), fallbackMethod, serviceId);
+        MultiFactorRequestContextUtils.setMultifactorWebApplicationService(context, fallbackService);
+        MultiFactorRequestContextUtils.setRequiredAuthenticationMethod(context, fallbackMethod);
+        MultiFactorRequestContextUtils.setFallbackAuthenticationMethod(context, null);
+        return new Event(this, MultiFactorAuthenticationSpringWebflowEventBuilder.MFA_EVENT_ID_PREFIX + fallbackMethod);
+    }
+}
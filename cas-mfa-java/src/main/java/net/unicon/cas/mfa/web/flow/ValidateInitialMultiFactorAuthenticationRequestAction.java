@@ -1,6 +1,7 @@
 package net.unicon.cas.mfa.web.flow;
 
 import net.unicon.cas.mfa.authentication.AuthenticationSupport;
+import net.unicon.cas.mfa.authentication.MultiFactorAuthenticationDecisionCache;
 import net.unicon.cas.mfa.authentication.MultiFactorAuthenticationTransactionContext;
 import net.unicon.cas.mfa.authentication.RequestedAuthenticationMethodRankingStrategy;
 import net.unicon.cas.mfa.util.MultiFactorUtils;
@@ -71,6 +72,11 @@ public final class ValidateInitialMultiFactorAuthenticationRequestAction extends
      */
     private final RequestedAuthenticationMethodRankingStrategy authnMethodRankingStrategy;
 
+    /**
+     * Cache of the decisions made per SSO session, if any.
+     */
+    private MultiFactorAuthenticationDecisionCache decisionCache;
+
     /**
      * Instantiates a new validate initial multifactor authentication request action.
      *
@@ -118,6 +124,16 @@ public final class ValidateInitialMultiFactorAuthenticationRequestAction extends
         }
 
         logger.trace("Service [{}] requires authentication method [{}]", mfaTx.getTargetServiceId(), requestedAuthenticationMethod);
+
+        if (this.decisionCache != null) {
+            final Boolean fulfilled = this.decisionCache.getDecision(tgt, requestedAuthenticationMethod);
+            if (fulfilled != null) {
+                logger.trace("Found decision for authentication method [{}] in the SSO session; fulfilled: [{}]",
+                        requestedAuthenticationMethod, fulfilled);
+                return getDecisionEvent(context, mfaService, fulfilled);
+            }
+        }
+
         final Authentication authentication = this.authenticationSupport.getAuthenticationFrom(tgt);
 
         /*
@@ -140,25 +156,52 @@ public final class ValidateInitialMultiFactorAuthenticationRequestAction extends
          * If any of the recorded authentication methods from the prior Authentication are 'stronger'
          * than the authentication method requested to access the CAS-using service, proceed with the normal authentication flow.
          */
-        if (this.authnMethodRankingStrategy
+        final boolean fulfilled = this.authnMethodRankingStrategy
                 .anyPreviouslyAchievedAuthenticationMethodsStrongerThanRequestedOne(previouslyAchievedAuthenticationMethods,
-                        requestedAuthenticationMethod)) {
+                        requestedAuthenticationMethod);
+        if (fulfilled) {
             logger.trace("Authentication method [{}] is EQUAL -- OR -- WEAKER than any previously fulfilled methods [{}]; "
                     + "proceeding with flow normally...", requestedAuthenticationMethod, previouslyAchievedAuthenticationMethods);
-            return new Event(this, EVENT_ID_REQUIRE_TGT);
+        } else {
+            logger.trace("Authentication method [{}] is STRONGER than any previously fulfilled methods [{}]; "
+                    + "branching to prompt for required authentication method unless renew is requested.",
+                    requestedAuthenticationMethod, previouslyAchievedAuthenticationMethods);
         }
 
-        if (context.getRequestParameters().get(CasProtocolConstants.PARAMETER_RENEW) != null) {
-            return new Event(this, EVENT_ID_REQUIRE_TGT);
+        if (this.decisionCache != null) {
+            this.decisionCache.putDecision(tgt, requestedAuthenticationMethod, fulfilled);
         }
+        return getDecisionEvent(context, mfaService, fulfilled);
+    }
 
-        logger.trace("Authentication method [{}] is STRONGER than any previously fulfilled methods [{}]; "
-                + "branching to prompt for required authentication method.",
-                requestedAuthenticationMethod, previouslyAchievedAuthenticationMethods);
+    /**
+     * Sets the cache of the decisions made per SSO session. When set, whether the SSO session
+     * fulfills the requested authentication method is only computed once per session and method.
+     *
+     * @param decisionCache the decision cache
+     */
+    public void setDecisionCache(final MultiFactorAuthenticationDecisionCache decisionCache) {
+        this.decisionCache = decisionCache;
+    }
+
+    /**
+     * Gets the event to fire, once it is known whether the SSO session fulfills the requested authentication method.
+     *
+     * @param context the request context
+     * @param mfaService the ranked mfa service
+     * @param fulfilled whether the SSO session fulfills the authentication method of the mfa service
+     * @return the event
+     */
+    private Event getDecisionEvent(final RequestContext context,
+                                   final MultiFactorAuthenticationSupportingWebApplicationService mfaService,
+                                   final boolean fulfilled) {
+        if (fulfilled || context.getRequestParameters().get(CasProtocolConstants.PARAMETER_RENEW) != null) {
+            return new Event(this, EVENT_ID_REQUIRE_TGT);
+        }
 
         //Place the ranked mfa service into the flow scope to be available in the actual mfa subflows
         MultiFactorRequestContextUtils.setMultifactorWebApplicationService(context, mfaService);
-        return new Event(this, getMultiFactorEventIdByAuthenticationMethod(requestedAuthenticationMethod));
+        return new Event(this, getMultiFactorEventIdByAuthenticationMethod(mfaService.getAuthenticationMethod()));
     }
 
     /**
@@ -44,6 +44,11 @@ public final class MultiFactorRequestContextUtils {
      */
     public static final String CAS_AUTHENTICATION_ATTR_NAME = "casAuthentication";
 
+    /**
+     * Attribute name by which the handle of the authentication context can be retrieved/placed in the flow.
+     */
+    public static final String CAS_AUTHENTICATION_REFERENCE_ATTR_NAME = "casAuthenticationReference";
+
     /**
      * Attribute name by which the TGT can be retrieved/placed in the flow.
      */
@@ -59,6 +64,11 @@ public final class MultiFactorRequestContextUtils {
      */
     public static final String CAS_MFA_REQ_AUTHN_METHOD = "requiredAuthenticationMethod";
 
+    /**
+     * Attribute name by which an mfa subflow names the authentication method to fall back to, in conversation scope.
+     */
+    public static final String CAS_MFA_FALLBACK_AUTHN_METHOD = "mfaFallbackAuthenticationMethod";
+
 
     private static final String CAS_EXCEPTION_ATTR_NAME = "authenticationException";
 
@@ -101,6 +111,18 @@ public final class MultiFactorRequestContextUtils {
         return (Authentication) context.getFlowScope().get(CAS_AUTHENTICATION_ATTR_NAME);
     }
 
+    /**
+     * Gets the handle of the authentication, when the flow keeps a reference to the authentication
+     * rather than the authentication itself.
+     *
+     * @param context the context
+     *
+     * @return the authentication handle
+     */
+    public static String getAuthenticationReference(final RequestContext context) {
+        return (String) context.getFlowScope().get(CAS_AUTHENTICATION_REFERENCE_ATTR_NAME);
+    }
+
     /**
      * Sets the mfa credentials.
      *
@@ -121,6 +143,16 @@ public final class MultiFactorRequestContextUtils {
         context.getFlowScope().put(CAS_AUTHENTICATION_ATTR_NAME, auth);
     }
 
+    /**
+     * Sets the handle of the authentication.
+     *
+     * @param context the context
+     * @param handle the authentication handle, or null to clear it
+     */
+    public static void setAuthenticationReference(final RequestContext context, final String handle) {
+        context.getFlowScope().put(CAS_AUTHENTICATION_REFERENCE_ATTR_NAME, handle);
+    }
+
     /**
      * Gets the principal id.
      *
@@ -213,6 +245,27 @@ public final class MultiFactorRequestContextUtils {
                 .cast(context.getConversationScope().get(MultiFactorAuthenticationTransactionContext.class.getSimpleName()));
     }
 
+    /**
+     * Sets the authentication method to fall back to, when an mfa subflow cannot complete.
+     *
+     * @param context the context
+     * @param authenticationMethod the authentication method
+     */
+    public static void setFallbackAuthenticationMethod(final RequestContext context, final String authenticationMethod) {
+        context.getConversationScope().put(CAS_MFA_FALLBACK_AUTHN_METHOD, authenticationMethod);
+    }
+
+    /**
+     * Get the authentication method to fall back to from conversation scope.
+     *
+     * @param context the context
+     *
+     * @return authentication method or null
+     */
+    public static String getFallbackAuthenticationMethod(final RequestContext context) {
+        return String.class.cast(context.getConversationScope().get(CAS_MFA_FALLBACK_AUTHN_METHOD));
+    }
+
     /**
      * Set mfa transaction into conversation scope.
      *
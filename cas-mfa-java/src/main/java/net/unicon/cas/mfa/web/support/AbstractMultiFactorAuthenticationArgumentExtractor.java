@@ -66,7 +66,20 @@ public abstract class AbstractMultiFactorAuthenticationArgumentExtractor impleme
 
     @Override
     public final WebApplicationService extractService(final HttpServletRequest request) {
-        final WebApplicationService targetService = getTargetService(request);
+        return extractService(request, extractTargetService(request));
+    }
+
+    /**
+     * Extract the mfa service for a target service that has already been resolved from the request.
+     * Allows callers that consult several mfa extractors for the same request to resolve the
+     * target service only once.
+     *
+     * @param request http request
+     * @param targetService the target service resolved from the request, may be null
+     *
+     * @return the mfa service, or null if the request carries no mfa requirement for this extractor
+     */
+    public final WebApplicationService extractService(final HttpServletRequest request, final WebApplicationService targetService) {
         if (targetService == null) {
             return null;
         }
@@ -101,7 +114,7 @@ public abstract class AbstractMultiFactorAuthenticationArgumentExtractor impleme
      *
      * @return target service that would potentially be wrapped with an MFA supporting service
      */
-    private WebApplicationService getTargetService(final HttpServletRequest request) {
+    public final WebApplicationService extractTargetService(final HttpServletRequest request) {
         WebApplicationService targetService = null;
         for (final ArgumentExtractor extractor : this.supportedArgumentExtractors) {
             targetService = extractor.extractService(request);
@@ -0,0 +1,33 @@
+package net.unicon.cas.mfa.web.support;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Thrown if the authentication methods requested for a service cannot all be satisfied by any one
+ * of them, such as when they are incomparable peers under a partial order of authentication methods.
+ * The login flow handles it as it does an unrecognized authentication method.
+ * @author Unicon inc.
+ * @see net.unicon.cas.mfa.authentication.PartialOrderMultiFactorMethodRankingStrategy
+ */
+public class ConflictingAuthenticationMethodsException extends UnrecognizedAuthenticationMethodException {
+
+    private static final long serialVersionUID = 3196468453224476562L;
+
+    private final Set<String> authnMethods;
+
+    /**
+     * Spin up the exception instance with the conflicting authentication methods.
+     * @param authnMethods the requested authentication methods, none of which satisfies all others
+     * @param service the service we are trying to log into
+     */
+    public ConflictingAuthenticationMethodsException(final Set<String> authnMethods, final String service) {
+        super(String.valueOf(new TreeSet<>(authnMethods)), service);
+        this.authnMethods = Collections.unmodifiableSet(new TreeSet<>(authnMethods));
+    }
+
+    public final Set<String> getAuthenticationMethods() {
+        return this.authnMethods;
+    }
+}
@@ -3,6 +3,7 @@ package net.unicon.cas.mfa.web.support;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.jasig.cas.authentication.principal.AbstractWebApplicationService;
 import org.jasig.cas.authentication.principal.DefaultResponse;
+import org.jasig.cas.authentication.principal.Principal;
 import org.jasig.cas.authentication.principal.Response;
 import org.jasig.cas.authentication.principal.Response.ResponseType;
 import org.jasig.cas.authentication.principal.SimpleWebApplicationServiceImpl;
@@ -11,6 +12,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
 import javax.validation.constraints.NotNull;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
 import java.util.HashMap;
 
 /**
@@ -21,6 +28,9 @@ import java.util.HashMap;
  * <p>NOTE: The delegation is necessary because the {@link SimpleWebApplicationServiceImpl}
  * itself is marked as final. Future versions of CAS might make the class more available.
  *
+ * <p>Instances are serialized in a compact form, written by hand, as they are kept in flow scope
+ * and end up in every flow execution snapshot.</p>
+ *
  * @author Misagh Moayyed
  */
 public final class DefaultMultiFactorAuthenticationSupportingWebApplicationService
@@ -33,9 +43,6 @@ public final class DefaultMultiFactorAuthenticationSupportingWebApplicationServi
 
     private static final long serialVersionUID = 7537062414761087535L;
 
-    /** The wrapped service. */
-    private final SimpleWebApplicationServiceImpl wrapperService;
-
     /** The authentication method. */
     private final String authenticationMethod;
 
@@ -58,7 +65,6 @@ public final class DefaultMultiFactorAuthenticationSupportingWebApplicationServi
                                                                            final String artifactId, final ResponseType responseType,
                                                                            @NotNull final String authnMethod) {
         super(cleanupUrl(id), originalUrl, artifactId);
-        this.wrapperService = new SimpleWebApplicationServiceImpl(id);
         this.authenticationMethod = authnMethod;
         this.responseType = responseType;
     }
@@ -132,4 +138,132 @@ public final class DefaultMultiFactorAuthenticationSupportingWebApplicationServi
     public AuthenticationMethodSource getAuthenticationMethodSource() {
         return this.authenticationMethodSource;
     }
+
+    public ResponseType getResponseType() {
+        return this.responseType;
+    }
+
+    /**
+     * Replace this service with its compact serialized form.
+     *
+     * @return the serialized form
+     */
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    /**
+     * Instances are only ever deserialized through their serialized form.
+     *
+     * @param in the stream
+     * @throws InvalidObjectException always
+     */
+    private void readObject(final ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialized form is required");
+    }
+
+    /**
+     * Compact serialized form of the service. Enum constants are written by name, so that forms remain
+     * readable after constants are added or reordered. Forms of the first version, which wrote ordinals,
+     * can still be read.
+     */
+    private static final class SerializedForm implements Externalizable {
+
+        private static final long serialVersionUID = -2867459520138542063L;
+
+        private static final byte ORDINAL_VERSION = 1;
+
+        private static final byte VERSION = 2;
+
+        private DefaultMultiFactorAuthenticationSupportingWebApplicationService service;
+
+        /**
+         * Instantiates an empty form, to be read from a stream.
+         */
+        public SerializedForm() {
+        }
+
+        /**
+         * Instantiates the form of the given service.
+         *
+         * @param service the service
+         */
+        SerializedForm(final DefaultMultiFactorAuthenticationSupportingWebApplicationService service) {
+            this.service = service;
+        }
+
+        @Override
+        public void writeExternal(final ObjectOutput out) throws IOException {
+            out.writeByte(VERSION);
+            out.writeObject(this.service.getId());
+            out.writeObject(this.service.getOriginalUrl());
+            out.writeObject(this.service.getArtifactId());
+            out.writeObject(this.service.responseType == null ? null : this.service.responseType.name());
+            out.writeObject(this.service.authenticationMethod);
+            out.writeObject(this.service.authenticationMethodSource == null ? null : this.service.authenticationMethodSource.name());
+            out.writeBoolean(this.service.isLoggedOutAlready());
+            out.writeObject(this.service.getPrincipal());
+        }
+
+        @Override
+        public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+            final byte version = in.readByte();
+            if (version != VERSION && version != ORDINAL_VERSION) {
+                throw new InvalidObjectException("Unsupported serialized form version " + version);
+            }
+            final String id = (String) in.readObject();
+            final String originalUrl = (String) in.readObject();
+            final String artifactId = (String) in.readObject();
+            final ResponseType responseType = readEnum(in, version, ResponseType.class);
+            final String authenticationMethod = (String) in.readObject();
+            final AuthenticationMethodSource authenticationMethodSource = readEnum(in, version, AuthenticationMethodSource.class);
+
+            this.service = new DefaultMultiFactorAuthenticationSupportingWebApplicationService(id, originalUrl, artifactId,
+                    responseType, authenticationMethod);
+            this.service.authenticationMethodSource = authenticationMethodSource;
+            this.service.setLoggedOutAlready(in.readBoolean());
+            this.service.setPrincipal((Principal) in.readObject());
+        }
+
+        /**
+         * Read an enum constant, written by name or, in forms of the first version, by ordinal.
+         *
+         * @param in the stream
+         * @param version the version of the form
+         * @param type the enum type
+         * @param <E> the enum type
+         * @return the constant, or null if none was written
+         * @throws IOException if the stream cannot be read, or names no constant of the type
+         * @throws ClassNotFoundException if the class of a written object cannot be found
+         */
+        private static <E extends Enum<E>> E readEnum(final ObjectInput in, final byte version, final Class<E> type)
+                throws IOException, ClassNotFoundException {
+            if (version == ORDINAL_VERSION) {
+                final byte ordinal = in.readByte();
+                final E[] constants = type.getEnumConstants();
+                if (ordinal >= constants.length) {
+                    throw new InvalidObjectException("Unknown " + type.getSimpleName() + " ordinal " + ordinal);
+                }
+                return ordinal < 0 ? null : constants[ordinal];
+            }
+            final String name = (String) in.readObject();
+            if (name == null) {
+                return null;
+            }
+            try {
+                return Enum.valueOf(type, name);
+            } catch (final IllegalArgumentException e) {
+                throw new InvalidObjectException("Unknown " + type.getSimpleName() + " " + name);
+            }
+        }
+
+        /**
+         * Resolve the form into the service it was read from.
+         *
+         * @return the service
+         */
+        private Object readResolve() {
+            return this.service;
+        }
+    }
 }
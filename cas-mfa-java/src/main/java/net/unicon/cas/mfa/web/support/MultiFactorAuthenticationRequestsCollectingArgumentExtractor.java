@@ -5,23 +5,41 @@ import net.unicon.cas.mfa.authentication.AuthenticationMethodConfigurationProvid
 import net.unicon.cas.mfa.authentication.MultiFactorAuthenticationRequestContext;
 import net.unicon.cas.mfa.authentication.MultiFactorAuthenticationTransactionContext;
 import org.jasig.cas.authentication.principal.WebApplicationService;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.ServicesManager;
 import org.jasig.cas.web.support.ArgumentExtractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
 import org.springframework.webflow.execution.RequestContextHolder;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Iterator;
 import java.util.Set;
 
+import static net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD;
+
 /**
  * Composite argument extractor that collects and aggregates all possible mfa requests
  * (from different sources e.g. request param, registered service attribute), encapsulates them in
  * {@link net.unicon.cas.mfa.authentication.MultiFactorAuthenticationTransactionContext} and binds it to the SWF's conversation scope
  * under the {@code MultiFactorAuthenticationTransactionContext.class#getSimpleName} key.
  *
+ * <p>The target service is resolved from the request once, and handed to every delegate extractor.
+ * Delegate extractors are expected to share the same supported argument extractors, as they do when
+ * declared from a common parent bean definition; the first delegate is used to resolve the target service.</p>
+ *
+ * <p>If a {@link MultiFactorServicesIndex} is configured, requests that carry no {@code authn_method} parameter
+ * and target a service whose registered service cannot trigger mfa skip the delegate extractors altogether.
+ * The registered service is then resolved through the configured services manager, if any, which is expected
+ * to be the request caching services manager the delegate extractors use.</p>
+ *
  * @author Dmitriy Kopylenko
  * @author Unicon inc.
  */
 public final class MultiFactorAuthenticationRequestsCollectingArgumentExtractor implements ArgumentExtractor {
 
+    private final Logger logger = LoggerFactory.getLogger(getClass());
 
     /**
      * A set of delegate mfa argument extractors.
@@ -38,6 +56,16 @@ public final class MultiFactorAuthenticationRequestsCollectingArgumentExtractor
      */
     private final AuthenticationMethodVerifier authenticationMethodVerifier;
 
+    /**
+     * Index of the registered services able to trigger mfa, if any.
+     */
+    private MultiFactorServicesIndex multiFactorServicesIndex;
+
+    /**
+     * Services manager the registered service of the target service is resolved with, if any.
+     */
+    private ServicesManager servicesManager;
+
     /**
      * Ctor.
      *
@@ -59,9 +87,21 @@ public final class MultiFactorAuthenticationRequestsCollectingArgumentExtractor
     public WebApplicationService extractService(final HttpServletRequest request) {
         MultiFactorAuthenticationTransactionContext mfaTxCtx = null;
 
+        final WebApplicationService targetService = extractTargetService(request);
+        if (targetService == null) {
+            return null;
+        }
+
+        if (this.multiFactorServicesIndex != null
+                && !StringUtils.hasText(request.getParameter(CONST_PARAM_AUTHN_METHOD))
+                && !isMultiFactorCandidate(targetService)) {
+            logger.debug("The registered service of [{}] cannot trigger mfa. Skipping mfa argument extractors", targetService.getId());
+            return null;
+        }
+
         for (final AbstractMultiFactorAuthenticationArgumentExtractor extractor : this.mfaArgumentExstractors) {
             final MultiFactorAuthenticationSupportingWebApplicationService service =
-                    MultiFactorAuthenticationSupportingWebApplicationService.class.cast(extractor.extractService(request));
+                    MultiFactorAuthenticationSupportingWebApplicationService.class.cast(extractor.extractService(request, targetService));
 
             if (service != null
                 && this.authenticationMethodVerifier.verifyAuthenticationMethod(service.getAuthenticationMethod(), service, request)) {
@@ -89,6 +129,40 @@ public final class MultiFactorAuthenticationRequestsCollectingArgumentExtractor
         return null;
     }
 
+    public void setMultiFactorServicesIndex(final MultiFactorServicesIndex multiFactorServicesIndex) {
+        this.multiFactorServicesIndex = multiFactorServicesIndex;
+    }
+
+    public void setServicesManager(final ServicesManager servicesManager) {
+        this.servicesManager = servicesManager;
+    }
+
+    /**
+     * Whether the registered service of the target service is able to trigger mfa.
+     *
+     * @param targetService the target service
+     * @return false if no registered service matches, or if it cannot trigger mfa
+     */
+    private boolean isMultiFactorCandidate(final WebApplicationService targetService) {
+        if (this.servicesManager == null) {
+            return this.multiFactorServicesIndex.isMultiFactorCandidate(targetService);
+        }
+        final RegisteredService registeredService = this.servicesManager.findServiceBy(targetService);
+        return registeredService != null && this.multiFactorServicesIndex.isMultiFactorCandidate(registeredService);
+    }
+
+    /**
+     * Resolve the target service once for all delegate extractors.
+     *
+     * @param request http request
+     *
+     * @return the target service, or null if the request does not identify one
+     */
+    private WebApplicationService extractTargetService(final HttpServletRequest request) {
+        final Iterator<AbstractMultiFactorAuthenticationArgumentExtractor> it = this.mfaArgumentExstractors.iterator();
+        return it.hasNext() ? it.next().extractTargetService(request) : null;
+    }
+
     /**
      * Helper to create mfa requests.
      *
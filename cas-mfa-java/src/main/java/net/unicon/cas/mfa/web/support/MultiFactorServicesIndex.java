@@ -0,0 +1,460 @@
+package net.unicon.cas.mfa.web.support;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import net.unicon.cas.mfa.authentication.RegisteredServiceMfaRoleProcessor;
+import net.unicon.cas.mfa.util.RegexLiteralPrefilter;
+import org.apache.commons.lang3.StringUtils;
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.services.RegexRegisteredService;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.RegisteredServiceProperty;
+import org.jasig.cas.services.ServicesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Precomputed index of the registered services, used to tell which services are able to trigger multifactor
+ * authentication, and to find the registered service of a service without evaluating every service pattern.
+ * Registered services are able to trigger mfa if they define the authentication method attribute, or the
+ * {@link RegisteredServiceMfaRoleProcessor#MFA_ATTRIBUTE_NAME} / {@link RegisteredServiceMfaRoleProcessor#MFA_ATTRIBUTE_PATTERN}
+ * role settings consumed by the principal attribute resolution. When a default authentication method is configured,
+ * every registered service is able to trigger mfa.
+ *
+ * <p>Registered services are organized in a trie keyed by the literal prefix of their service url pattern, so that
+ * a lookup only evaluates the patterns of the services whose prefix the service url starts with, and the cost of
+ * a lookup grows with the length of the url rather than with the size of the registry. Patterns without a literal
+ * prefix, such as those using alternation, and non regex registered services are kept in a fallback bucket
+ * that is evaluated for every lookup. Services that cannot trigger mfa are indexed as well, so that the evaluation
+ * order of the registry is honored and a lookup finds the very registered service
+ * {@link ServicesManager#findServiceBy(Service)} would.</p>
+ *
+ * <p>The index is rebuilt when the service registry is reloaded. At most once per refresh interval,
+ * the registered service instances held by the services manager are compared by identity against those
+ * the index was built from, and the index is rebuilt if any of them has been added, removed or replaced.</p>
+ *
+ * <p>Each build of the index carries a version, which only counts rebuilds within this JVM, and a fingerprint of
+ * the registered service ids and their mfa settings, which is the same on every node and across restarts for the
+ * same registry. State that outlives the JVM, such as authentication attributes kept in a shared ticket registry,
+ * should be tagged with the fingerprint rather than the version.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class MultiFactorServicesIndex {
+
+    /**
+     * Default interval between checks of the service registry, in milliseconds.
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL = 5000;
+
+    /**
+     * Orders registered services by id, so that fingerprints do not depend on the order of the registry.
+     */
+    private static final Comparator<RegisteredService> ID_COMPARATOR = new Comparator<RegisteredService>() {
+        @Override
+        public int compare(final RegisteredService s1, final RegisteredService s2) {
+            return Long.compare(s1.getId(), s2.getId());
+        }
+    };
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ServicesManager servicesManager;
+
+    private String authenticationMethodAttribute = MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD;
+
+    private String defaultAuthenticationMethod;
+
+    private long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+
+    private volatile Snapshot snapshot;
+
+    private volatile long lastCheckTime;
+
+    private long version;
+
+    /**
+     * Instantiates a new index.
+     *
+     * @param servicesManager the services manager
+     */
+    public MultiFactorServicesIndex(final ServicesManager servicesManager) {
+        this.servicesManager = servicesManager;
+    }
+
+    /**
+     * Find the registered service that matches the service, honoring the evaluation order of the registry.
+     *
+     * @param service the service
+     * @return the registered service, or null if none matches
+     */
+    public RegisteredService findRegisteredService(final Service service) {
+        final IndexEntry entry = find(service);
+        return entry == null ? null : entry.registeredService;
+    }
+
+    /**
+     * Whether the registered service that matches the service is able to trigger mfa.
+     *
+     * @param service the service
+     * @return false if the registered service definition cannot trigger mfa for the service
+     */
+    public boolean isMultiFactorCandidate(final Service service) {
+        final IndexEntry entry = find(service);
+        return entry != null && entry.candidate;
+    }
+
+    /**
+     * Whether the registered service is able to trigger mfa, for callers that already resolved it.
+     *
+     * @param registeredService the registered service
+     * @return false if the registered service definition cannot trigger mfa
+     */
+    public boolean isMultiFactorCandidate(final RegisteredService registeredService) {
+        return StringUtils.isNotBlank(this.defaultAuthenticationMethod) || isConfiguredForMultiFactor(registeredService);
+    }
+
+    /**
+     * Number of registered services able to trigger mfa.
+     *
+     * @return the candidate count
+     */
+    public int getCandidateCount() {
+        return getSnapshot().candidateCount;
+    }
+
+    /**
+     * Version of the index, increased each time the index is rebuilt. Components that derive state from the
+     * registered services may tag that state with the version, and discard it once the version changes.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return getSnapshot().version;
+    }
+
+    /**
+     * Fingerprint of the registered service ids and their mfa settings. Components that derive state from the
+     * registered services, and keep it beyond the lifetime of this JVM or share it with other nodes, may tag that
+     * state with the fingerprint, and discard it once the fingerprint changes.
+     *
+     * @return the fingerprint
+     */
+    public long getFingerprint() {
+        return getSnapshot().fingerprint;
+    }
+
+    /**
+     * Registered services the index was built from, in the order returned by the services manager.
+     *
+     * @return unmodifiable list of registered services
+     */
+    public List<RegisteredService> getRegisteredServices() {
+        return Collections.unmodifiableList(getSnapshot().all);
+    }
+
+    /**
+     * Rebuild the index from the registered services currently held by the services manager.
+     */
+    public synchronized void rebuild() {
+        final List<RegisteredService> all = new ArrayList<>(this.servicesManager.getAllServices());
+        final List<RegisteredService> ordered = new ArrayList<>(all);
+        Collections.sort(ordered);
+
+        final boolean everyServiceIsCandidate = StringUtils.isNotBlank(this.defaultAuthenticationMethod);
+        final Node root = new Node();
+        int candidateCount = 0;
+        for (int i = 0; i < ordered.size(); i++) {
+            final RegisteredService registeredService = ordered.get(i);
+            final boolean candidate = everyServiceIsCandidate || isConfiguredForMultiFactor(registeredService);
+            if (candidate) {
+                candidateCount++;
+            }
+            root.add(getLiteralPrefix(registeredService), new IndexEntry(registeredService, i, candidate));
+        }
+
+        this.snapshot = new Snapshot(all, root, candidateCount, ++this.version, computeFingerprint(all));
+        this.lastCheckTime = System.currentTimeMillis();
+        logger.debug("Indexed [{}] registered services, [{}] of which are able to trigger mfa", all.size(), candidateCount);
+    }
+
+    public void setAuthenticationMethodAttribute(final String authenticationMethodAttribute) {
+        this.authenticationMethodAttribute = authenticationMethodAttribute;
+        this.snapshot = null;
+    }
+
+    public void setDefaultAuthenticationMethod(final String defaultAuthenticationMethod) {
+        this.defaultAuthenticationMethod = defaultAuthenticationMethod;
+        this.snapshot = null;
+    }
+
+    public void setRefreshInterval(final long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Find the index entry of the first registered service, in evaluation order, that matches the service.
+     * Only the buckets along the path of the service url in the trie are evaluated; within a bucket, entries
+     * are kept in evaluation order, so evaluation stops as soon as an entry cannot beat the best match so far.
+     *
+     * @param service the service
+     * @return the entry, or null if no registered service matches
+     */
+    private IndexEntry find(final Service service) {
+        if (service == null || service.getId() == null) {
+            return null;
+        }
+        final String url = service.getId();
+        Node node = getSnapshot().root;
+        IndexEntry best = node.findFirstMatch(service, null);
+        for (int i = 0; i < url.length(); i++) {
+            node = node.getChild(Character.toLowerCase(url.charAt(i)));
+            if (node == null) {
+                break;
+            }
+            best = node.findFirstMatch(service, best);
+        }
+        logger.trace("Service [{}] is matched by registered service [{}]", url, best == null ? null : best.registeredService.getId());
+        return best;
+    }
+
+    /**
+     * Gets the current snapshot, building or rebuilding it if the service registry has changed.
+     *
+     * @return the snapshot
+     */
+    private Snapshot getSnapshot() {
+        final Snapshot current = this.snapshot;
+        if (current != null && System.currentTimeMillis() - this.lastCheckTime < this.refreshInterval) {
+            return current;
+        }
+        synchronized (this) {
+            if (this.snapshot != null && this.snapshot != current) {
+                return this.snapshot;
+            }
+            if (this.snapshot == null || !this.snapshot.isBuiltFrom(this.servicesManager.getAllServices())) {
+                rebuild();
+            } else {
+                this.lastCheckTime = System.currentTimeMillis();
+            }
+            return this.snapshot;
+        }
+    }
+
+    /**
+     * Whether the registered service defines any of the properties that let it trigger mfa.
+     *
+     * @param registeredService the registered service
+     * @return true if the service is configured for mfa
+     */
+    private boolean isConfiguredForMultiFactor(final RegisteredService registeredService) {
+        final Map<String, ?> properties = registeredService.getProperties();
+        return properties != null
+                && (properties.containsKey(this.authenticationMethodAttribute)
+                || properties.containsKey(RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_NAME)
+                || properties.containsKey(RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_PATTERN));
+    }
+
+    /**
+     * Compute the fingerprint of the registered service ids and of the settings that decide whether, and how,
+     * they trigger mfa.
+     *
+     * @param registeredServices the registered services
+     * @return the fingerprint
+     */
+    private long computeFingerprint(final List<RegisteredService> registeredServices) {
+        final List<RegisteredService> byId = new ArrayList<>(registeredServices);
+        Collections.sort(byId, ID_COMPARATOR);
+
+        final Hasher hasher = Hashing.sha256().newHasher();
+        putString(hasher, this.authenticationMethodAttribute);
+        putString(hasher, this.defaultAuthenticationMethod);
+        for (final RegisteredService registeredService : byId) {
+            hasher.putLong(registeredService.getId());
+            putString(hasher, registeredService.getServiceId());
+            final Map<String, RegisteredServiceProperty> properties = registeredService.getProperties();
+            for (final String name : new String[] {this.authenticationMethodAttribute,
+                    RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_NAME, RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_PATTERN}) {
+                final RegisteredServiceProperty property = properties == null ? null : properties.get(name);
+                putString(hasher, property == null ? null : property.getValue());
+            }
+        }
+        return hasher.hash().asLong();
+    }
+
+    /**
+     * Add a nullable string to the hasher, prefixed with its length so that consecutive strings cannot run together.
+     *
+     * @param hasher the hasher
+     * @param value the string, may be null
+     */
+    private static void putString(final Hasher hasher, final String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length()).putString(value, Charsets.UTF_8);
+        }
+    }
+
+    /**
+     * Gets the literal prefix every url matched by the registered service starts with.
+     *
+     * @param registeredService the registered service
+     * @return the prefix, empty if the service belongs to the fallback bucket
+     */
+    private static String getLiteralPrefix(final RegisteredService registeredService) {
+        if (registeredService instanceof RegexRegisteredService && registeredService.getServiceId() != null) {
+            return RegexLiteralPrefilter.compile(registeredService.getServiceId()).getPrefix();
+        }
+        return "";
+    }
+
+    /**
+     * Immutable state of the index, built from one version of the service registry.
+     */
+    private static final class Snapshot {
+
+        private final List<RegisteredService> all;
+
+        private final Node root;
+
+        private final int candidateCount;
+
+        private final long version;
+
+        private final long fingerprint;
+
+        /**
+         * Instantiates a new snapshot.
+         *
+         * @param all every registered service, in the order returned by the services manager
+         * @param root the root of the trie, holding the fallback bucket
+         * @param candidateCount the number of registered services able to trigger mfa
+         * @param version the version of the index
+         * @param fingerprint the fingerprint of the registered services
+         */
+        Snapshot(final List<RegisteredService> all, final Node root, final int candidateCount, final long version,
+                 final long fingerprint) {
+            this.all = all;
+            this.root = root;
+            this.candidateCount = candidateCount;
+            this.version = version;
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * Whether the given registered services are the very instances this snapshot was built from.
+         *
+         * @param registeredServices the registered services currently held by the services manager
+         * @return true if the registry has not changed
+         */
+        boolean isBuiltFrom(final Collection<RegisteredService> registeredServices) {
+            if (registeredServices.size() != this.all.size()) {
+                return false;
+            }
+            final Iterator<RegisteredService> it = this.all.iterator();
+            for (final RegisteredService registeredService : registeredServices) {
+                if (!it.hasNext() || it.next() != registeredService) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Trie node, keyed by lower cased characters so that case insensitive patterns are found as well;
+     * the pattern of each entry still decides whether it matches.
+     */
+    private static final class Node {
+
+        private final Map<Character, Node> children = new HashMap<>();
+
+        private final List<IndexEntry> entries = new ArrayList<>(1);
+
+        /**
+         * Add an entry under the given prefix. Entries must be added in evaluation order.
+         *
+         * @param prefix the literal prefix of the entry, relative to this node
+         * @param entry the entry
+         */
+        void add(final String prefix, final IndexEntry entry) {
+            Node node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                final Character key = Character.toLowerCase(prefix.charAt(i));
+                Node child = node.children.get(key);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(key, child);
+                }
+                node = child;
+            }
+            node.entries.add(entry);
+        }
+
+        /**
+         * Gets the child for the given lower cased character.
+         *
+         * @param c the character
+         * @return the child, or null
+         */
+        Node getChild(final char c) {
+            return this.children.get(c);
+        }
+
+        /**
+         * Find the first entry of this node that matches the service and precedes the best match so far.
+         *
+         * @param service the service
+         * @param best the best match so far, or null
+         * @return the new best match, or the given one
+         */
+        IndexEntry findFirstMatch(final Service service, final IndexEntry best) {
+            for (final IndexEntry entry : this.entries) {
+                if (best != null && entry.position >= best.position) {
+                    break;
+                }
+                if (entry.registeredService.matches(service)) {
+                    return entry;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * A registered service, with its position in evaluation order.
+     */
+    private static final class IndexEntry {
+
+        private final RegisteredService registeredService;
+
+        private final int position;
+
+        private final boolean candidate;
+
+        /**
+         * Instantiates a new entry.
+         *
+         * @param registeredService the registered service
+         * @param position the position of the service in evaluation order
+         * @param candidate whether the service is able to trigger mfa
+         */
+        IndexEntry(final RegisteredService registeredService, final int position, final boolean candidate) {
+            this.registeredService = registeredService;
+            this.position = position;
+            this.candidate = candidate;
+        }
+    }
+}
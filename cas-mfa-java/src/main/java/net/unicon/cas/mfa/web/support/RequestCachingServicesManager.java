@@ -0,0 +1,172 @@
+package net.unicon.cas.mfa.web.support;
+
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.ServicesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ServicesManager} decorator that remembers, for the duration of the current HTTP request,
+ * the registered service found for each service. All mfa components that look up the registered
+ * service of the target service during a request are configured with this decorator, so that
+ * the registered service is resolved once per request and service, and every component sees the same one.
+ * If a {@link MultiFactorServicesIndex} is configured, it resolves the registered service instead of
+ * the delegate, which may have to evaluate every registered service pattern.
+ *
+ * <p>Lookups made outside of a request are passed straight through to the delegate. Saving or deleting
+ * a registered service clears what was remembered for the current request.</p>
+ *
+ * @author Unicon inc.
+ */
+public final class RequestCachingServicesManager implements ServicesManager {
+
+    /**
+     * Name of the request attribute that holds the lookups made during the request.
+     */
+    private static final String REQUEST_ATTRIBUTE_NAME = RequestCachingServicesManager.class.getName() + ".lookups";
+
+    /**
+     * Placeholder remembered when no registered service matches a service.
+     */
+    private static final Object NO_MATCH = new Object();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ServicesManager delegate;
+
+    private MultiFactorServicesIndex multiFactorServicesIndex;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Instantiates a new request caching services manager.
+     *
+     * @param delegate the services manager to delegate to
+     */
+    public RequestCachingServicesManager(final ServicesManager delegate) {
+        this.delegate = delegate;
+    }
+
+    public void setMultiFactorServicesIndex(final MultiFactorServicesIndex multiFactorServicesIndex) {
+        this.multiFactorServicesIndex = multiFactorServicesIndex;
+    }
+
+    @Override
+    public RegisteredService findServiceBy(final Service service) {
+        final Map<String, Object> lookups = getRequestLookups(true);
+        if (lookups == null || service == null || service.getId() == null) {
+            return resolve(service);
+        }
+
+        final Object found = lookups.get(service.getId());
+        if (found != null) {
+            this.hitCount.incrementAndGet();
+            logger.trace("Found registered service for [{}] in request scope", service.getId());
+            return found == NO_MATCH ? null : (RegisteredService) found;
+        }
+
+        this.missCount.incrementAndGet();
+        final RegisteredService registeredService = resolve(service);
+        lookups.put(service.getId(), registeredService == null ? NO_MATCH : registeredService);
+        return registeredService;
+    }
+
+    @Override
+    public RegisteredService findServiceBy(final long id) {
+        return this.delegate.findServiceBy(id);
+    }
+
+    @Override
+    public Collection<RegisteredService> getAllServices() {
+        return this.delegate.getAllServices();
+    }
+
+    @Override
+    public boolean matchesExistingService(final Service service) {
+        return findServiceBy(service) != null;
+    }
+
+    @Override
+    public RegisteredService save(final RegisteredService registeredService) {
+        clearRequestLookups();
+        return this.delegate.save(registeredService);
+    }
+
+    @Override
+    public RegisteredService delete(final long id) {
+        clearRequestLookups();
+        return this.delegate.delete(id);
+    }
+
+    /**
+     * Number of lookups answered from the request scope, each of which saved a delegate lookup.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * Number of lookups passed on to the delegate from within a request.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Resolve the registered service of the service, through the index if one is configured.
+     *
+     * @param service the service
+     * @return the registered service, or null if none matches
+     */
+    private RegisteredService resolve(final Service service) {
+        if (this.multiFactorServicesIndex != null && service != null) {
+            return this.multiFactorServicesIndex.findRegisteredService(service);
+        }
+        return this.delegate.findServiceBy(service);
+    }
+
+    /**
+     * Gets the lookups remembered for the current request.
+     *
+     * @param create whether to create the holder if the request does not have one yet
+     * @return the lookups, or null if there is no current request
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getRequestLookups(final boolean create) {
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        Map<String, Object> lookups = (Map<String, Object>) attributes.getAttribute(REQUEST_ATTRIBUTE_NAME,
+                RequestAttributes.SCOPE_REQUEST);
+        if (lookups == null && create) {
+            lookups = new HashMap<>();
+            attributes.setAttribute(REQUEST_ATTRIBUTE_NAME, lookups, RequestAttributes.SCOPE_REQUEST);
+        }
+        return lookups;
+    }
+
+    /**
+     * Forget the lookups remembered for the current request.
+     */
+    private void clearRequestLookups() {
+        final Map<String, Object> lookups = getRequestLookups(false);
+        if (lookups != null) {
+            lookups.clear();
+        }
+    }
+}
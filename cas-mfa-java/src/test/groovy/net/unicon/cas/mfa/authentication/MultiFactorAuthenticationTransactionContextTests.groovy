@@ -1,7 +1,11 @@
 package net.unicon.cas.mfa.authentication
 
+import net.unicon.cas.mfa.web.support.DefaultMultiFactorAuthenticationSupportingWebApplicationService
 import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService
+import org.apache.commons.lang3.SerializationUtils
+import org.jasig.cas.TestUtils
 import org.jasig.cas.authentication.Authentication
+import org.jasig.cas.authentication.principal.Response
 import spock.lang.Specification
 import spock.lang.Subject
 import static net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService.AuthenticationMethodSource
@@ -85,4 +89,28 @@ class MultiFactorAuthenticationTransactionContextTests extends Specification {
         then:
         thrown(IllegalArgumentException)
     }
+
+    def "serialized form round trips target service, primary authentication and mfa requests"() {
+        given:
+        def viaParam = new MultiFactorAuthenticationRequestContext(new DefaultMultiFactorAuthenticationSupportingWebApplicationService(
+                'test service', 'test service', null, Response.ResponseType.REDIRECT, 'strong_two_factor',
+                AuthenticationMethodSource.REQUEST_PARAM), 3)
+        def viaRegSvc = new MultiFactorAuthenticationRequestContext(new DefaultMultiFactorAuthenticationSupportingWebApplicationService(
+                'test service', 'test service', null, Response.ResponseType.POST, 'sample_two_factor',
+                AuthenticationMethodSource.REGISTERED_SERVICE_DEFINITION), 2)
+
+        @Subject
+        def authnTxCtxUnderTest = new MultiFactorAuthenticationTransactionContext('test service')
+                .setPrimaryAuthentication(TestUtils.getAuthentication('casuser'))
+                .addMfaRequest(viaParam).addMfaRequest(viaRegSvc)
+
+        when:
+        MultiFactorAuthenticationTransactionContext copy = SerializationUtils.clone(authnTxCtxUnderTest)
+
+        then:
+        copy.targetServiceId == 'test service'
+        copy.primaryAuthentication.principal.id == 'casuser'
+        copy.mfaRequests == [viaParam, viaRegSvc] as Set
+        copy.mfaRequests.find { it == viaParam }.order == 3
+    }
 }
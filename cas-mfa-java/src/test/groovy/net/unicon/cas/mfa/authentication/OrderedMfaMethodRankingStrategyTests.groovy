@@ -37,6 +37,35 @@ class OrderedMfaMethodRankingStrategyTests extends Specification {
         rankingStrategyUnderTest.computeHighestRankingAuthenticationMethod(mfaTransactionFixture).authenticationMethodSource == AuthenticationMethodSource.PRINCIPAL_ATTRIBUTE
     }
 
+    def "requests of equal rank are broken by authentication method source"() {
+        given:
+        def mfaTransaction = new MultiFactorAuthenticationTransactionContext("test service")
+                .addMfaRequest(new MultiFactorAuthenticationRequestContext(Stub(MultiFactorAuthenticationSupportingWebApplicationService) {
+            getId() >> 'test service'
+            getAuthenticationMethodSource() >> AuthenticationMethodSource.PRINCIPAL_ATTRIBUTE
+
+        }, 1)).addMfaRequest(new MultiFactorAuthenticationRequestContext(Stub(MultiFactorAuthenticationSupportingWebApplicationService) {
+            getId() >> 'test service'
+            getAuthenticationMethodSource() >> AuthenticationMethodSource.REGISTERED_SERVICE_DEFINITION
+
+        }, 1))
+
+        @Subject
+        def rankingStrategyUnderTest = new OrderedMultiFactorMethodRankingStrategy(new JsonBackedAuthenticationMethodConfigurationProvider())
+
+        expect:
+        rankingStrategyUnderTest.computeHighestRankingAuthenticationMethod(mfaTransaction).authenticationMethodSource == AuthenticationMethodSource.REGISTERED_SERVICE_DEFINITION
+    }
+
+    def "no highest ranking authentication method for an empty transaction"() {
+        given:
+        @Subject
+        def rankingStrategyUnderTest = new OrderedMultiFactorMethodRankingStrategy(new JsonBackedAuthenticationMethodConfigurationProvider())
+
+        expect:
+        rankingStrategyUnderTest.computeHighestRankingAuthenticationMethod(new MultiFactorAuthenticationTransactionContext("test service")) == null
+    }
+
     def "correct implementation of OrderedMfaMethodRankingStrategy#anyPreviouslyAchievedAuthenticationMethodsStrongerThanRequestedOne"() {
         given:
         def s1 = [new AuthenticationMethod("highest_factor",1),
@@ -53,5 +82,33 @@ class OrderedMfaMethodRankingStrategyTests extends Specification {
         and:
         !rankingStrategyUnderTest.anyPreviouslyAchievedAuthenticationMethodsStrongerThanRequestedOne(['lowest_factor', 'lower_factor'] as Set, 'highest_factor')
     }
-}
 
+    def "equal ranks satisfy and unknown achieved methods are ignored"() {
+        given:
+        def s1 = [new AuthenticationMethod("highest_factor",1),
+                  new AuthenticationMethod("other_highest_factor",1),
+                  new AuthenticationMethod("lowest_factor",3)] as Set
+
+        @Subject
+        def rankingStrategyUnderTest = new OrderedMultiFactorMethodRankingStrategy(new JsonBackedAuthenticationMethodConfigurationProvider(s1))
+
+        expect:
+        rankingStrategyUnderTest.anyPreviouslyAchievedAuthenticationMethodsStrongerThanRequestedOne(['other_highest_factor'] as Set, 'highest_factor')
+
+        and:
+        !rankingStrategyUnderTest.anyPreviouslyAchievedAuthenticationMethodsStrongerThanRequestedOne(['removed_factor', 'lowest_factor'] as Set, 'highest_factor')
+    }
+
+    def "requested method missing from the configuration is a configuration error"() {
+        given:
+        @Subject
+        def rankingStrategyUnderTest = new OrderedMultiFactorMethodRankingStrategy(
+                new JsonBackedAuthenticationMethodConfigurationProvider([new AuthenticationMethod("highest_factor",1)] as Set))
+
+        when:
+        rankingStrategyUnderTest.anyPreviouslyAchievedAuthenticationMethodsStrongerThanRequestedOne(['highest_factor'] as Set, 'unknown_factor')
+
+        then:
+        thrown(IllegalStateException)
+    }
+}
@@ -0,0 +1,97 @@
+package net.unicon.cas.mfa.authentication
+
+import net.unicon.cas.mfa.web.support.ConflictingAuthenticationMethodsException
+import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService
+import spock.lang.Specification
+import spock.lang.Subject
+
+import static net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService.AuthenticationMethodSource
+
+/**
+ *
+ * @author Unicon inc.
+ */
+class PartialOrderMfaMethodRankingStrategyTests extends Specification {
+
+    def config = new JsonBackedAuthenticationMethodConfigurationProvider([
+            new AuthenticationMethod("hardware_token", 1, ['duo_two_factor_legacy', 'sms_two_factor'] as Set),
+            new AuthenticationMethod("duo_two_factor", 1, ['sms_two_factor'] as Set),
+            new AuthenticationMethod("duo_two_factor_legacy", 2, ['email_two_factor'] as Set),
+            new AuthenticationMethod("sms_two_factor", 3),
+            new AuthenticationMethod("email_two_factor", 4)] as Set)
+
+    @Subject
+    def rankingStrategyUnderTest = new PartialOrderMultiFactorMethodRankingStrategy(config)
+
+    def "satisfaction follows the transitive closure of the graph"() {
+        expect:
+        rankingStrategyUnderTest.anyPreviouslyAchievedAuthenticationMethodsStrongerThanRequestedOne(achieved as Set, requested) == satisfied
+
+        where:
+        achieved                 | requested           | satisfied
+        ['hardware_token']       | 'email_two_factor'  | true
+        ['hardware_token']       | 'hardware_token'    | true
+        ['duo_two_factor']       | 'sms_two_factor'    | true
+        ['duo_two_factor']       | 'hardware_token'    | false
+        ['hardware_token']       | 'duo_two_factor'    | false
+        ['sms_two_factor']       | 'email_two_factor'  | false
+        ['unknown', 'sms_two_factor'] | 'duo_two_factor' | false
+        []                       | 'sms_two_factor'    | false
+    }
+
+    def "requests for methods that no requested method dominates are rejected as conflicting"() {
+        given:
+        def mfaTransaction = new MultiFactorAuthenticationTransactionContext("test service")
+                .addMfaRequest(request('sms_two_factor', AuthenticationMethodSource.REQUEST_PARAM, 3))
+                .addMfaRequest(request('hardware_token', AuthenticationMethodSource.PRINCIPAL_ATTRIBUTE, 1))
+                .addMfaRequest(request('duo_two_factor', AuthenticationMethodSource.REGISTERED_SERVICE_DEFINITION, 1))
+
+        when:
+        rankingStrategyUnderTest.computeHighestRankingAuthenticationMethod(mfaTransaction)
+
+        then:
+        def e = thrown(ConflictingAuthenticationMethodsException)
+        e.authenticationMethods == ['sms_two_factor', 'hardware_token', 'duo_two_factor'] as Set
+    }
+
+    def "ties between dominating requests are broken by source"() {
+        given:
+        def mfaTransaction = new MultiFactorAuthenticationTransactionContext("test service")
+                .addMfaRequest(request('sms_two_factor', AuthenticationMethodSource.REQUEST_PARAM, 3))
+                .addMfaRequest(request('duo_two_factor', AuthenticationMethodSource.REQUEST_PARAM, 1))
+                .addMfaRequest(request('duo_two_factor', AuthenticationMethodSource.REGISTERED_SERVICE_DEFINITION, 1))
+
+        when:
+        def selected = rankingStrategyUnderTest.computeHighestRankingAuthenticationMethod(mfaTransaction)
+
+        then:
+        selected.authenticationMethod == 'duo_two_factor'
+        selected.authenticationMethodSource == AuthenticationMethodSource.REGISTERED_SERVICE_DEFINITION
+    }
+
+    def "a method that satisfies the other requested method is selected"() {
+        given:
+        def mfaTransaction = new MultiFactorAuthenticationTransactionContext("test service")
+                .addMfaRequest(request('duo_two_factor_legacy', AuthenticationMethodSource.REQUEST_PARAM, 2))
+                .addMfaRequest(request('email_two_factor', AuthenticationMethodSource.PRINCIPAL_ATTRIBUTE, 4))
+
+        expect:
+        rankingStrategyUnderTest.computeHighestRankingAuthenticationMethod(mfaTransaction).authenticationMethod == 'duo_two_factor_legacy'
+    }
+
+    def "unknown requested method is a configuration error"() {
+        when:
+        rankingStrategyUnderTest.anyPreviouslyAchievedAuthenticationMethodsStrongerThanRequestedOne(['hardware_token'] as Set, 'unknown')
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    private request(final String method, final AuthenticationMethodSource source, final int rank) {
+        new MultiFactorAuthenticationRequestContext(Stub(MultiFactorAuthenticationSupportingWebApplicationService) {
+            getId() >> 'test service'
+            getAuthenticationMethod() >> method
+            getAuthenticationMethodSource() >> source
+        }, rank)
+    }
+}
@@ -86,4 +86,18 @@ class PrincipalAttributeMultiFactorAuthenticationRequestResolverTests extends Sp
         and:
         mfaContext.mfaService.authenticationMethodSource == AuthenticationMethodSource.PRINCIPAL_ATTRIBUTE
     }
+
+    def "method configured without a rank is ranked below every other method"() {
+        given:
+        def unranked = new JsonBackedAuthenticationMethodConfigurationProvider([new AuthenticationMethod("strong_two_factor", null)] as Set)
+        def resolver = new PrincipalAttributeMultiFactorAuthenticationRequestResolver(mfaWebApplicationServiceFactory, unranked)
+
+        when:
+        def mfaReq = resolver.resolve(authenticationWithValidPrincipalAttributeFor_strong_two_factor, targetService,
+                Response.ResponseType.REDIRECT)
+
+        then:
+        mfaReq.size() == 1
+        mfaReq.get(0).order == Integer.MAX_VALUE
+    }
 }
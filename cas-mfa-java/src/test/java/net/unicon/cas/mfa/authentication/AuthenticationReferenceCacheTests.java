@@ -0,0 +1,37 @@
+package net.unicon.cas.mfa.authentication;
+
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.authentication.Authentication;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AuthenticationReferenceCacheTests {
+
+    @Test
+    public void testHandleResolvesAuthentication() {
+        final AuthenticationReferenceCache cache = new AuthenticationReferenceCache();
+        final Authentication authentication = TestUtils.getAuthentication("user");
+
+        final String handle = cache.put(authentication);
+        assertNotNull(handle);
+        assertSame(authentication, cache.get(handle));
+        assertNotEquals(handle, cache.put(authentication));
+    }
+
+    @Test
+    public void testUnknownHandlesAreNotResolved() {
+        final AuthenticationReferenceCache cache = new AuthenticationReferenceCache();
+        assertNull(cache.get(null));
+        assertNull(cache.get("unknown"));
+    }
+
+    @Test
+    public void testRemovedHandleIsNotResolved() {
+        final AuthenticationReferenceCache cache = new AuthenticationReferenceCache();
+        final String handle = cache.put(TestUtils.getAuthentication("user"));
+        cache.remove(handle);
+        assertNull(cache.get(handle));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,140 @@
+package net.unicon.cas.mfa.authentication;
+
+import net.unicon.cas.mfa.ticket.EventPublishingTicketRegistryPostProcessor;
+import net.unicon.cas.mfa.ticket.InMemoryTicketRegistry;
+import net.unicon.cas.mfa.ticket.TicketDestroyedEvent;
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.authentication.Authentication;
+import org.jasig.cas.ticket.registry.TicketRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class CachingAuthenticationSupportTests {
+
+    private static final String TGT_ID = "TGT-1";
+
+    private final Map<String, Object> requestScope = new HashMap<>();
+
+    private final Authentication authentication = TestUtils.getAuthentication("user");
+
+    private AuthenticationSupport delegate;
+
+    @Before
+    public void setUp() {
+        final RequestAttributes attributes = mock(RequestAttributes.class);
+        when(attributes.getAttribute(anyString(), anyInt())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                return requestScope.get(invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                requestScope.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(attributes).setAttribute(anyString(), any(), anyInt());
+        RequestContextHolder.setRequestAttributes(attributes);
+
+        this.delegate = mock(AuthenticationSupport.class);
+        when(this.delegate.getAuthenticationFrom(TGT_ID)).thenReturn(this.authentication);
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void testLookupIsMadeOncePerRequest() {
+        final CachingAuthenticationSupport support = new CachingAuthenticationSupport(this.delegate);
+        assertSame(this.authentication, support.getAuthenticationFrom(TGT_ID));
+        assertSame(this.authentication.getPrincipal(), support.getAuthenticatedPrincipalFrom(TGT_ID));
+        assertEquals(this.authentication.getPrincipal().getAttributes(), support.getPrincipalAttributesFrom(TGT_ID));
+
+        verify(this.delegate, times(1)).getAuthenticationFrom(TGT_ID);
+        assertEquals(2, support.getHitCount());
+        assertEquals(1, support.getMissCount());
+    }
+
+    @Test
+    public void testMissingAuthenticationIsRememberedForTheRequest() {
+        final CachingAuthenticationSupport support = new CachingAuthenticationSupport(this.delegate);
+        assertNull(support.getAuthenticationFrom("TGT-unknown"));
+        assertNull(support.getAuthenticationFrom("TGT-unknown"));
+        verify(this.delegate, times(1)).getAuthenticationFrom("TGT-unknown");
+    }
+
+    @Test
+    public void testNewRequestLooksUpAgainWithoutNearCache() {
+        final CachingAuthenticationSupport support = new CachingAuthenticationSupport(this.delegate);
+        support.getAuthenticationFrom(TGT_ID);
+        requestScope.clear();
+        support.getAuthenticationFrom(TGT_ID);
+        verify(this.delegate, times(2)).getAuthenticationFrom(TGT_ID);
+    }
+
+    @Test
+    public void testNearCacheIsSharedAcrossRequests() {
+        final CachingAuthenticationSupport support = new CachingAuthenticationSupport(this.delegate, 100, 60);
+        support.getAuthenticationFrom(TGT_ID);
+        requestScope.clear();
+        assertSame(this.authentication, support.getAuthenticationFrom(TGT_ID));
+        RequestContextHolder.resetRequestAttributes();
+        assertSame(this.authentication, support.getAuthenticationFrom(TGT_ID));
+        verify(this.delegate, times(1)).getAuthenticationFrom(TGT_ID);
+    }
+
+    @Test
+    public void testInvalidatedTicketIsLookedUpAgain() {
+        final CachingAuthenticationSupport support = new CachingAuthenticationSupport(this.delegate, 100, 60);
+        support.getAuthenticationFrom(TGT_ID);
+        support.invalidate(TGT_ID);
+        when(this.delegate.getAuthenticationFrom(TGT_ID)).thenReturn(null);
+        assertNull(support.getAuthenticationFrom(TGT_ID));
+        requestScope.clear();
+        assertNull(support.getAuthenticationFrom(TGT_ID));
+        verify(this.delegate, times(3)).getAuthenticationFrom(TGT_ID);
+    }
+
+    @Test
+    public void testTicketDeletedFromRegistryIsLookedUpAgain() {
+        final CachingAuthenticationSupport support = new CachingAuthenticationSupport(this.delegate, 100, 60);
+        final EventPublishingTicketRegistryPostProcessor postProcessor = new EventPublishingTicketRegistryPostProcessor();
+        postProcessor.setApplicationEventPublisher(new ApplicationEventPublisher() {
+            @Override
+            public void publishEvent(final ApplicationEvent event) {
+                support.onApplicationEvent((TicketDestroyedEvent) event);
+            }
+        });
+        final InMemoryTicketRegistry registry = new InMemoryTicketRegistry();
+        final TicketRegistry proxy = (TicketRegistry) postProcessor.postProcessAfterInitialization(registry, "ticketRegistry");
+
+        support.getAuthenticationFrom(TGT_ID);
+        requestScope.clear();
+        support.getAuthenticationFrom(TGT_ID);
+        verify(this.delegate, times(1)).getAuthenticationFrom(TGT_ID);
+
+        proxy.deleteTicket(TGT_ID);
+        assertEquals(Collections.singletonList(TGT_ID), registry.getDeletedTicketIds());
+        when(this.delegate.getAuthenticationFrom(TGT_ID)).thenReturn(null);
+        requestScope.clear();
+        assertNull(support.getAuthenticationFrom(TGT_ID));
+        verify(this.delegate, times(2)).getAuthenticationFrom(TGT_ID);
+    }
+}
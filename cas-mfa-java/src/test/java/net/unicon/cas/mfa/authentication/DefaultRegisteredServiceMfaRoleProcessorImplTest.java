@@ -3,6 +3,7 @@ package net.unicon.cas.mfa.authentication;
 
 import net.unicon.cas.mfa.web.support.DefaultMultiFactorAuthenticationSupportingWebApplicationService;
 import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService;
+import net.unicon.cas.mfa.web.support.MultiFactorServicesIndex;
 import net.unicon.cas.mfa.web.support.MultiFactorWebApplicationServiceFactory;
 import org.jasig.cas.TestUtils;
 import org.jasig.cas.authentication.Authentication;
@@ -10,6 +11,7 @@ import org.jasig.cas.authentication.principal.Principal;
 import org.jasig.cas.authentication.principal.Response;
 import org.jasig.cas.authentication.principal.Service;
 import org.jasig.cas.authentication.principal.WebApplicationService;
+import org.jasig.cas.services.AbstractRegisteredService;
 import org.jasig.cas.services.DefaultRegisteredServiceProperty;
 import org.jasig.cas.services.RegisteredService;
 import org.jasig.cas.services.ServicesManager;
@@ -18,6 +20,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -118,6 +121,107 @@ public class DefaultRegisteredServiceMfaRoleProcessorImplTest {
         assertEquals(CAS_AUTHN_METHOD, result.get(0).getMfaService().getAuthenticationMethod());
     }
 
+    @Test
+    public void testResolveLooksUpServiceOncePerRequest() throws Exception {
+        final WebApplicationService was = getTargetService();
+
+        final Map<String, Object> attributes = new HashMap<>();
+        attributes.put(MEMBER_OF, Arrays.asList("cn=other", MEMBER_OF_VALUE, "cn=another"));
+        final Authentication auth = TestUtils.getAuthentication(TestUtils.getPrincipal("jdoe", attributes));
+
+        final RegisteredService rswa = getRegisteredServiceWithMfaRole();
+        final ServicesManager servicesManager = getServicesManager(rswa);
+        final DefaultRegisteredServiceMfaRoleProcessorImpl resolver = new DefaultRegisteredServiceMfaRoleProcessorImpl(
+                getMFWASF(was), getAMCP(), servicesManager);
+
+        final List<MultiFactorAuthenticationRequestContext> result = resolver.resolve(auth, was);
+        assertNotNull(result);
+        assertEquals(CAS_AUTHN_METHOD, result.get(0).getMfaService().getAuthenticationMethod());
+        verify(servicesManager, times(1)).findServiceBy(any(Service.class));
+    }
+
+    @Test
+    public void testResolveRecompilesSettingsForReloadedService() throws Exception {
+        final WebApplicationService was = getTargetService();
+        final Authentication auth = getAuthentication(true);
+
+        final RegisteredService original = getRegisteredServiceWithMfaRole();
+        final RegisteredService reloaded = TestUtils.getRegisteredService("test1");
+        final DefaultRegisteredServiceProperty prop = new DefaultRegisteredServiceProperty();
+        prop.setValues(Collections.singleton(CAS_AUTHN_METHOD));
+        reloaded.getProperties().put(MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD, prop);
+
+        final ServicesManager servicesManager = getServicesManager(original);
+        final DefaultRegisteredServiceMfaRoleProcessorImpl resolver = new DefaultRegisteredServiceMfaRoleProcessorImpl(
+                getMFWASF(was), getAMCP(), servicesManager);
+        assertNotNull(resolver.resolve(auth, was));
+
+        when(servicesManager.findServiceBy(any(Service.class))).thenReturn(reloaded);
+        assertEquals(0, resolver.resolve(auth, was).size());
+    }
+
+    @Test
+    public void testReloadEvictsSettingsOfRemovedServices() throws Exception {
+        final WebApplicationService was = getTargetService();
+        final Authentication auth = getAuthentication(true);
+
+        final RegisteredService removed = getRegisteredServiceWithMfaRole(1);
+        final RegisteredService kept = getRegisteredServiceWithMfaRole(2);
+        final ServicesManager servicesManager = getServicesManager(removed);
+        when(servicesManager.getAllServices()).thenReturn(Arrays.asList(removed, kept));
+        final MultiFactorServicesIndex index = new MultiFactorServicesIndex(servicesManager);
+        index.setRefreshInterval(0);
+
+        final DefaultRegisteredServiceMfaRoleProcessorImpl resolver = new DefaultRegisteredServiceMfaRoleProcessorImpl(
+                getMFWASF(was), getAMCP(), servicesManager);
+        resolver.setMultiFactorServicesIndex(index);
+        assertNotNull(resolver.resolve(auth, was));
+        when(servicesManager.findServiceBy(any(Service.class))).thenReturn(kept);
+        assertNotNull(resolver.resolve(auth, was));
+        assertEquals(2, resolver.getCachedPolicyCount());
+
+        when(servicesManager.getAllServices()).thenReturn(Collections.singletonList(kept));
+        assertNotNull(resolver.resolve(auth, was));
+        assertEquals(1, resolver.getCachedPolicyCount());
+    }
+
+    @Test
+    public void testResolveRanksMethodWithoutRankLast() throws Exception {
+        final WebApplicationService was = getTargetService();
+        final AuthenticationMethodConfigurationProvider provider = mock(AuthenticationMethodConfigurationProvider.class);
+        when(provider.containsAuthenticationMethod(CAS_AUTHN_METHOD)).thenReturn(true);
+        when(provider.getAuthenticationMethod(CAS_AUTHN_METHOD)).thenReturn(new AuthenticationMethod(CAS_AUTHN_METHOD, null));
+
+        final DefaultRegisteredServiceMfaRoleProcessorImpl resolver = new DefaultRegisteredServiceMfaRoleProcessorImpl(
+                getMFWASF(was), provider, getServicesManager(getRegisteredServiceWithMfaRole()));
+
+        final List<MultiFactorAuthenticationRequestContext> result = resolver.resolve(getAuthentication(true), was);
+        assertEquals(Integer.MAX_VALUE, result.get(0).getOrder());
+    }
+
+    private static RegisteredService getRegisteredServiceWithMfaRole(final long id) {
+        final RegisteredService rswa = getRegisteredServiceWithMfaRole();
+        ((AbstractRegisteredService) rswa).setId(id);
+        return rswa;
+    }
+
+    private static RegisteredService getRegisteredServiceWithMfaRole() {
+        final RegisteredService rswa = TestUtils.getRegisteredService("test1");
+
+        DefaultRegisteredServiceProperty prop = new DefaultRegisteredServiceProperty();
+        prop.setValues(Collections.singleton(CAS_AUTHN_METHOD));
+        rswa.getProperties().put(MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD, prop);
+
+        prop = new DefaultRegisteredServiceProperty();
+        prop.setValues(Collections.singleton(MEMBER_OF));
+        rswa.getProperties().put(RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_NAME, prop);
+
+        prop = new DefaultRegisteredServiceProperty();
+        prop.setValues(Collections.singleton(MEMBER_OF_VALUE));
+        rswa.getProperties().put(RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_PATTERN, prop);
+        return rswa;
+    }
+
     @Test
     public void testResolveServiceWithOnlyAuthnMethodAttribute() throws Exception {
         final WebApplicationService was = getTargetService();
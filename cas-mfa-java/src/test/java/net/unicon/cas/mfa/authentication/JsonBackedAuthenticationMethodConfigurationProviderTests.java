@@ -0,0 +1,148 @@
+package net.unicon.cas.mfa.authentication;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class JsonBackedAuthenticationMethodConfigurationProviderTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLoadFromResource() throws Exception {
+        final File file = folder.newFile("authn-methods.conf");
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 2, \"name\" : \"strong_two_factor\" }, "
+                + "{ \"rank\" : 1, \"name\" : \"duo_two_factor\" } ]");
+
+        final JsonBackedAuthenticationMethodConfigurationProvider provider =
+                new JsonBackedAuthenticationMethodConfigurationProvider(new FileSystemResource(file));
+        assertTrue(provider.containsAuthenticationMethod("duo_two_factor"));
+        assertEquals(Integer.valueOf(2), provider.getAuthenticationMethod("strong_two_factor").getRank());
+        assertFalse(provider.containsAuthenticationMethod("sample_two_factor"));
+        assertNull(provider.getAuthenticationMethod("sample_two_factor"));
+    }
+
+    @Test
+    public void testReloadPublishesNewSnapshot() throws Exception {
+        final File file = folder.newFile("authn-methods.conf");
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 1, \"name\" : \"duo_two_factor\" } ]");
+
+        final JsonBackedAuthenticationMethodConfigurationProvider provider =
+                new JsonBackedAuthenticationMethodConfigurationProvider(new FileSystemResource(file));
+        final AuthenticationMethodSnapshot original = provider.getSnapshot();
+        assertFalse(provider.containsAuthenticationMethod("strong_two_factor"));
+
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 1, \"name\" : \"duo_two_factor\" }, "
+                + "{ \"rank\" : 2, \"name\" : \"strong_two_factor\" } ]");
+        assertTrue(provider.reload());
+        assertTrue(provider.containsAuthenticationMethod("strong_two_factor"));
+        assertEquals(original.getVersion() + 1, provider.getSnapshot().getVersion());
+        assertNotEquals(original.getFingerprint(), provider.getSnapshot().getFingerprint());
+        assertEquals(1, original.size());
+    }
+
+    @Test
+    public void testInvalidReloadKeepsCurrentSnapshot() throws Exception {
+        final File file = folder.newFile("authn-methods.conf");
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 1, \"name\" : \"duo_two_factor\" } ]");
+
+        final JsonBackedAuthenticationMethodConfigurationProvider provider =
+                new JsonBackedAuthenticationMethodConfigurationProvider(new FileSystemResource(file));
+        final AuthenticationMethodSnapshot original = provider.getSnapshot();
+
+        FileUtils.writeStringToFile(file, "[ { \"name\" : \"strong_two_factor\" } ]");
+        assertFalse(provider.reload());
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 1, \"name\" : ");
+        assertFalse(provider.reload());
+        assertSame(original, provider.getSnapshot());
+    }
+
+    @Test
+    public void testReloadRejectsUnknownSatisfiedMethodsAndDuplicates() throws Exception {
+        final File file = folder.newFile("authn-methods.conf");
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 1, \"name\" : \"duo_two_factor\" } ]");
+
+        final JsonBackedAuthenticationMethodConfigurationProvider provider =
+                new JsonBackedAuthenticationMethodConfigurationProvider(new FileSystemResource(file));
+        final AuthenticationMethodSnapshot original = provider.getSnapshot();
+
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 1, \"name\" : \"duo_two_factor\", \"satisfies\" : [ \"sms_two_factor\" ] } ]");
+        assertFalse(provider.reload());
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 1, \"name\" : \"duo_two_factor\" }, "
+                + "{ \"rank\" : 1, \"name\" : \"duo_two_factor\" } ]");
+        assertFalse(provider.reload());
+        assertSame(original, provider.getSnapshot());
+    }
+
+    @Test
+    public void testSatisfiedMethodsChangeTheFingerprint() throws Exception {
+        final File file = folder.newFile("authn-methods.conf");
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 1, \"name\" : \"duo_two_factor\" }, "
+                + "{ \"rank\" : 2, \"name\" : \"sms_two_factor\" } ]");
+
+        final JsonBackedAuthenticationMethodConfigurationProvider provider =
+                new JsonBackedAuthenticationMethodConfigurationProvider(new FileSystemResource(file));
+        final AuthenticationMethodSnapshot original = provider.getSnapshot();
+
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 1, \"name\" : \"duo_two_factor\", \"satisfies\" : [ \"sms_two_factor\" ] }, "
+                + "{ \"rank\" : 2, \"name\" : \"sms_two_factor\" } ]");
+        assertTrue(provider.reload());
+        assertEquals(Collections.singleton("sms_two_factor"), provider.getAuthenticationMethod("duo_two_factor").getSatisfies());
+        assertNotEquals(original.getFingerprint(), provider.getSnapshot().getFingerprint());
+    }
+
+    @Test
+    public void testStartupConfigurationIsNotValidated() throws Exception {
+        final File file = folder.newFile("authn-methods.conf");
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 1, \"name\" : \"duo_two_factor\" }, "
+                + "{ \"name\" : \"unranked_two_factor\" } ]");
+
+        final JsonBackedAuthenticationMethodConfigurationProvider provider =
+                new JsonBackedAuthenticationMethodConfigurationProvider(new FileSystemResource(file));
+        assertTrue(provider.containsAuthenticationMethod("unranked_two_factor"));
+        assertEquals(1, provider.getSnapshot().getOrdinal("unranked_two_factor"));
+
+        final AuthenticationMethodSnapshot original = provider.getSnapshot();
+        assertFalse(provider.reload());
+        assertSame(original, provider.getSnapshot());
+    }
+
+    @Test
+    public void testSnapshotOrdinalsFollowRank() {
+        final Set<AuthenticationMethod> methods = new HashSet<>();
+        methods.add(new AuthenticationMethod("sample_two_factor", 3));
+        methods.add(new AuthenticationMethod("duo_two_factor", 1));
+        methods.add(new AuthenticationMethod("strong_two_factor", 2));
+        methods.add(new AuthenticationMethod("unranked", null));
+
+        final AuthenticationMethodSnapshot snapshot =
+                new JsonBackedAuthenticationMethodConfigurationProvider(methods).getSnapshot();
+        assertEquals(4, snapshot.size());
+        assertEquals(0, snapshot.getOrdinal("duo_two_factor"));
+        assertEquals(1, snapshot.getOrdinal("strong_two_factor"));
+        assertEquals(2, snapshot.getOrdinal("sample_two_factor"));
+        assertEquals(3, snapshot.getOrdinal("unranked"));
+        assertEquals(-1, snapshot.getOrdinal("unknown"));
+        assertEquals("strong_two_factor", snapshot.getByOrdinal(1).getName());
+        assertEquals("duo_two_factor", snapshot.getRankOrderedMethods().get(0).getName());
+    }
+
+    @Test
+    public void testEmptyProvider() {
+        final JsonBackedAuthenticationMethodConfigurationProvider provider =
+                new JsonBackedAuthenticationMethodConfigurationProvider();
+        assertFalse(provider.containsAuthenticationMethod("duo_two_factor"));
+        assertNull(provider.getAuthenticationMethod(null));
+        assertEquals(0, provider.getSnapshot().size());
+    }
+}
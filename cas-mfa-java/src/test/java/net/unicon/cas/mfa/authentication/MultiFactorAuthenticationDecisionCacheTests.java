@@ -0,0 +1,66 @@
+package net.unicon.cas.mfa.authentication;
+
+import net.unicon.cas.mfa.ticket.TicketDestroyedEvent;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class MultiFactorAuthenticationDecisionCacheTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDecisionsAreKeptPerSessionAndMethod() throws Exception {
+        final MultiFactorAuthenticationDecisionCache cache = new MultiFactorAuthenticationDecisionCache(getProvider());
+        cache.putDecision("TGT-1", "strong_two_factor", true);
+        cache.putDecision("TGT-1", "duo_two_factor", false);
+
+        assertEquals(Boolean.TRUE, cache.getDecision("TGT-1", "strong_two_factor"));
+        assertEquals(Boolean.FALSE, cache.getDecision("TGT-1", "duo_two_factor"));
+        assertNull(cache.getDecision("TGT-2", "strong_two_factor"));
+        assertEquals(1, cache.size());
+
+        cache.invalidate("TGT-1");
+        assertNull(cache.getDecision("TGT-1", "strong_two_factor"));
+    }
+
+    @Test
+    public void testDestroyedTicketDiscardsDecisions() throws Exception {
+        final MultiFactorAuthenticationDecisionCache cache = new MultiFactorAuthenticationDecisionCache(getProvider());
+        cache.putDecision("TGT-1", "strong_two_factor", true);
+        cache.putDecision("TGT-2", "strong_two_factor", true);
+
+        cache.onApplicationEvent(new TicketDestroyedEvent(this, "TGT-1"));
+        assertNull(cache.getDecision("TGT-1", "strong_two_factor"));
+        assertEquals(Boolean.TRUE, cache.getDecision("TGT-2", "strong_two_factor"));
+    }
+
+    @Test
+    public void testConfigurationReloadDiscardsDecisions() throws Exception {
+        final File file = folder.newFile("authn-methods.conf");
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 1, \"name\" : \"duo_two_factor\" } ]");
+        final JsonBackedAuthenticationMethodConfigurationProvider provider =
+                new JsonBackedAuthenticationMethodConfigurationProvider(new FileSystemResource(file));
+
+        final MultiFactorAuthenticationDecisionCache cache = new MultiFactorAuthenticationDecisionCache(provider);
+        cache.putDecision("TGT-1", "duo_two_factor", true);
+
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 2, \"name\" : \"duo_two_factor\" } ]");
+        assertTrue(provider.reload());
+        assertNull(cache.getDecision("TGT-1", "duo_two_factor"));
+    }
+
+    private JsonBackedAuthenticationMethodConfigurationProvider getProvider() throws Exception {
+        final File file = folder.newFile("authn-methods.conf");
+        FileUtils.writeStringToFile(file, "[ { \"rank\" : 2, \"name\" : \"strong_two_factor\" }, "
+                + "{ \"rank\" : 1, \"name\" : \"duo_two_factor\" } ]");
+        return new JsonBackedAuthenticationMethodConfigurationProvider(new FileSystemResource(file));
+    }
+}
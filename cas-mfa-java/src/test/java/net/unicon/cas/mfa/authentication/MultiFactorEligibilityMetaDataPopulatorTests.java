@@ -0,0 +1,156 @@
+package net.unicon.cas.mfa.authentication;
+
+import net.unicon.cas.mfa.web.support.DefaultMultiFactorAuthenticationSupportingWebApplicationService;
+import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService;
+import net.unicon.cas.mfa.web.support.MultiFactorServicesIndex;
+import net.unicon.cas.mfa.web.support.MultiFactorWebApplicationServiceFactory;
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.authentication.Authentication;
+import org.jasig.cas.authentication.AuthenticationBuilder;
+import org.jasig.cas.authentication.principal.Principal;
+import org.jasig.cas.authentication.principal.Response;
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.authentication.principal.WebApplicationService;
+import org.jasig.cas.services.AbstractRegisteredService;
+import org.jasig.cas.services.DefaultRegisteredServiceProperty;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.ServicesManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class MultiFactorEligibilityMetaDataPopulatorTests {
+
+    private static final String CAS_SERVICE = "https://mfa.cas.edu";
+
+    private static final String MEMBER_OF = "memberOf";
+
+    private final RegisteredService roleService = getRegisteredService(1, "cn=staff");
+
+    private final RegisteredService otherRoleService = getRegisteredService(2, "cn=faculty");
+
+    private JsonBackedAuthenticationMethodConfigurationProvider authenticationMethodConfiguration;
+
+    private DefaultRegisteredServiceMfaRoleProcessorImpl mfaRoleProcessor;
+
+    private MultiFactorEligibilityMetaDataPopulator populator;
+
+    @Before
+    public void setUp() {
+        this.authenticationMethodConfiguration = new JsonBackedAuthenticationMethodConfigurationProvider(new HashSet<>(Arrays.asList(
+                new AuthenticationMethod("strong_two_factor", 1), new AuthenticationMethod("sample_two_factor", 2))));
+
+        final ServicesManager servicesManager = mock(ServicesManager.class);
+        when(servicesManager.getAllServices()).thenReturn(Arrays.asList(this.otherRoleService, this.roleService,
+                TestUtils.getRegisteredService("https://www.example.org")));
+        when(servicesManager.findServiceBy(any(Service.class))).thenReturn(this.roleService);
+
+        final MultiFactorWebApplicationServiceFactory factory = mock(MultiFactorWebApplicationServiceFactory.class);
+        when(factory.create(anyString(), anyString(), anyString(), any(Response.ResponseType.class), anyString(),
+                any(MultiFactorAuthenticationSupportingWebApplicationService.AuthenticationMethodSource.class)))
+                .thenReturn(new DefaultMultiFactorAuthenticationSupportingWebApplicationService(CAS_SERVICE, CAS_SERVICE, null,
+                        Response.ResponseType.REDIRECT, "strong_two_factor"));
+        this.mfaRoleProcessor = new DefaultRegisteredServiceMfaRoleProcessorImpl(factory,
+                this.authenticationMethodConfiguration, servicesManager);
+        this.mfaRoleProcessor.setMultiFactorServicesIndex(new MultiFactorServicesIndex(servicesManager));
+
+        this.populator = new MultiFactorEligibilityMetaDataPopulator(this.authenticationMethodConfiguration);
+    }
+
+    @Test
+    public void testEligibilityIsRecorded() {
+        final Map<String, Object> attributes = new HashMap<>();
+        attributes.put(MEMBER_OF, Arrays.asList("cn=students", "cn=staff"));
+        attributes.put(MultiFactorAuthenticationRequestResolver.DEFAULT_MFA_METHOD_ATTRIBUTE_NAME,
+                Arrays.asList("sample_two_factor", "unknown_two_factor"));
+
+        final MultiFactorEligibility eligibility = populate(TestUtils.getPrincipal("jdoe", attributes));
+        assertEquals(this.authenticationMethodConfiguration.getSnapshot().getFingerprint(), eligibility.getMethodConfigurationFingerprint());
+        assertEquals(this.authenticationMethodConfiguration.getSnapshot().getOrdinals(Collections.singleton("sample_two_factor")),
+                eligibility.getRequestedMethods());
+    }
+
+    @Test
+    public void testRoleIsMatchedForTheRequestedServiceOnly() {
+        final Map<String, Object> attributes = new HashMap<>();
+        attributes.put(MEMBER_OF, "cn=staff");
+        final Principal principal = TestUtils.getPrincipal("jdoe", attributes);
+        final MultiFactorEligibility eligibility = populate(principal);
+
+        final Authentication authentication = mock(Authentication.class);
+        when(authentication.getPrincipal()).thenReturn(principal);
+        when(authentication.getAttributes()).thenReturn(
+                Collections.<String, Object>singletonMap(MultiFactorEligibility.ATTRIBUTE_NAME, eligibility));
+
+        final List<MultiFactorAuthenticationRequestContext> result = this.mfaRoleProcessor.resolve(authentication, getTargetService());
+        assertNotNull(result);
+        assertEquals("strong_two_factor", result.get(0).getMfaService().getAuthenticationMethod());
+        assertEquals(1, this.mfaRoleProcessor.getCachedPolicyCount());
+    }
+
+    @Test
+    public void testEligibilityOfAnotherConfigurationWithTheSameVersionIsIgnored() {
+        final Map<String, Object> attributes = new HashMap<>();
+        attributes.put(MEMBER_OF, "cn=staff");
+        final Authentication authentication = getAuthentication(populate(TestUtils.getPrincipal("jdoe", attributes)));
+
+        final JsonBackedAuthenticationMethodConfigurationProvider restarted = new JsonBackedAuthenticationMethodConfigurationProvider(
+                new HashSet<>(Arrays.asList(new AuthenticationMethod("strong_two_factor", 1), new AuthenticationMethod("sample_two_factor", 2))));
+        final JsonBackedAuthenticationMethodConfigurationProvider other = new JsonBackedAuthenticationMethodConfigurationProvider(
+                new HashSet<>(Arrays.asList(new AuthenticationMethod("strong_two_factor", 2), new AuthenticationMethod("sample_two_factor", 1))));
+        assertEquals(restarted.getSnapshot().getVersion(), other.getSnapshot().getVersion());
+
+        assertNotNull(MultiFactorEligibility.getCurrent(authentication, restarted));
+        assertNull(MultiFactorEligibility.getCurrent(authentication, other));
+    }
+
+    private static Authentication getAuthentication(final MultiFactorEligibility eligibility) {
+        final Authentication authentication = mock(Authentication.class);
+        when(authentication.getPrincipal()).thenReturn(TestUtils.getPrincipal("jdoe"));
+        when(authentication.getAttributes()).thenReturn(
+                Collections.<String, Object>singletonMap(MultiFactorEligibility.ATTRIBUTE_NAME, eligibility));
+        return authentication;
+    }
+
+    private MultiFactorEligibility populate(final Principal principal) {
+        final AuthenticationBuilder builder = mock(AuthenticationBuilder.class);
+        when(builder.getPrincipal()).thenReturn(principal);
+        this.populator.populateAttributes(builder, TestUtils.getCredentialsWithSameUsernameAndPassword());
+
+        final ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(builder).addAttribute(eq(MultiFactorEligibility.ATTRIBUTE_NAME), captor.capture());
+        return (MultiFactorEligibility) captor.getValue();
+    }
+
+    private static RegisteredService getRegisteredService(final long id, final String role) {
+        final RegisteredService svc = TestUtils.getRegisteredService(CAS_SERVICE + "/app" + id);
+        ((AbstractRegisteredService) svc).setId(id);
+        putProperty(svc, MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD, "strong_two_factor");
+        putProperty(svc, RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_NAME, MEMBER_OF);
+        putProperty(svc, RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_PATTERN, role);
+        return svc;
+    }
+
+    private static void putProperty(final RegisteredService svc, final String name, final String value) {
+        final DefaultRegisteredServiceProperty prop = new DefaultRegisteredServiceProperty();
+        prop.setValues(Collections.singleton(value));
+        svc.getProperties().put(name, prop);
+    }
+
+    private static WebApplicationService getTargetService() {
+        final WebApplicationService was = mock(WebApplicationService.class);
+        when(was.getId()).thenReturn(CAS_SERVICE + "/app1");
+        when(was.getArtifactId()).thenReturn("test");
+        return was;
+    }
+}
@@ -9,6 +9,8 @@ import java.util.Set;
 
 import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService;
 
+import org.apache.commons.lang3.SerializationUtils;
+import org.jasig.cas.TestUtils;
 import org.jasig.cas.authentication.Authentication;
 import org.jasig.cas.authentication.principal.DefaultPrincipalFactory;
 import org.jasig.cas.authentication.principal.Principal;
@@ -108,4 +110,76 @@ public class MultiFactorCredentialsTests {
         assertEquals(authn.getAttributes().get(MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD),
                 set);
     }
+
+    @Test
+    public void testEachCallReturnsItsOwnCompositeAuthentication() {
+        final MultiFactorCredentials c = new MultiFactorCredentials();
+        assertNull(c.getAuthentication());
+        assertNull(c.getPrincipal());
+
+        c.addAuthenticationToChain(getAuthentication("casuser", "first_method"));
+        final Authentication authn = c.getAuthentication();
+        authn.getAttributes().put("added", "value");
+
+        final Authentication other = c.getAuthentication();
+        assertNotSame(authn, other);
+        assertFalse(other.getAttributes().containsKey("added"));
+        assertEquals("first_method",
+                other.getAttributes().get(MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD));
+        assertEquals(authn.getPrincipal(), c.getPrincipal());
+        assertEquals("casuser", c.getId());
+    }
+
+    @Test
+    public void testAttributesAreMergedIncrementally() {
+        final MultiFactorCredentials c = new MultiFactorCredentials();
+        c.addAuthenticationToChain(getAuthentication("casuser", "first_method"));
+        final Authentication first = c.getAuthentication();
+
+        c.addAuthenticationToChain(getAuthentication("casuser", "second_method"));
+        final Authentication second = c.getAuthentication();
+        c.addAuthenticationToChain(getAuthentication("casuser", "third_method"));
+        final Authentication third = c.getAuthentication();
+
+        assertEquals("first_method",
+                first.getAttributes().get(MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD));
+        assertEquals(new HashSet(Arrays.asList("first_method", "second_method")),
+                second.getAttributes().get(MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD));
+        assertEquals(new HashSet(Arrays.asList("first_method", "second_method", "third_method")),
+                third.getAttributes().get(MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD));
+    }
+
+    @Test(expected = UnknownPrincipalMatchException.class)
+    public void testMismatchedPrincipalIsRejectedAfterSeveralLinks() {
+        final MultiFactorCredentials c = new MultiFactorCredentials();
+        c.addAuthenticationToChain(getAuthentication("casuser", "first_method"));
+        c.addAuthenticationToChain(getAuthentication("casuser", "second_method"));
+        c.addAuthenticationToChain(getAuthentication("anotheruser", "third_method"));
+    }
+
+    private static Authentication getAuthentication(final String principalId, final String method) {
+        final Authentication authentication = mock(Authentication.class);
+        when(authentication.getPrincipal()).thenReturn(new DefaultPrincipalFactory().createPrincipal(principalId));
+        when(authentication.getAttributes())
+                .thenReturn(Collections.singletonMap(MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD,
+                        (Object) method));
+        return authentication;
+    }
+
+    @Test
+    public void testSerializationRoundTrip() {
+        final MultiFactorCredentials c = new MultiFactorCredentials();
+        c.getChainedCredentials().put("usernamePassword", TestUtils.getCredentialsWithSameUsernameAndPassword());
+        c.addAuthenticationToChain(TestUtils.getAuthentication("casuser"));
+        c.addAuthenticationToChain(TestUtils.getAuthentication("casuser"));
+
+        final byte[] bytes = SerializationUtils.serialize(c);
+        assertFalse(new String(bytes).contains("DefaultPrincipalFactory"));
+
+        final MultiFactorCredentials copy = SerializationUtils.deserialize(bytes);
+        assertEquals(2, copy.countChainedAuthentications());
+        assertEquals(c.getChainedCredentials().keySet(), copy.getChainedCredentials().keySet());
+        assertEquals("casuser", copy.getId());
+        assertEquals(c.getAuthentication().getPrincipal(), copy.getAuthentication().getPrincipal());
+    }
 }
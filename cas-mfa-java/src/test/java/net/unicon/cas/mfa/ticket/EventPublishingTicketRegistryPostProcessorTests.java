@@ -0,0 +1,58 @@
+package net.unicon.cas.mfa.ticket;
+
+import org.jasig.cas.ticket.registry.TicketRegistry;
+import org.jasig.cas.ticket.registry.TicketRegistryState;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventPublishingTicketRegistryPostProcessorTests {
+
+    private final List<String> destroyedTicketIds = new ArrayList<>();
+
+    private EventPublishingTicketRegistryPostProcessor postProcessor;
+
+    @Before
+    public void setUp() {
+        this.postProcessor = new EventPublishingTicketRegistryPostProcessor();
+        this.postProcessor.setApplicationEventPublisher(new ApplicationEventPublisher() {
+            @Override
+            public void publishEvent(final ApplicationEvent event) {
+                destroyedTicketIds.add(((TicketDestroyedEvent) event).getTicketId());
+            }
+        });
+    }
+
+    @Test
+    public void testProxyKeepsTheConcreteTypeOfTheRegistry() {
+        final InMemoryTicketRegistry registry = new InMemoryTicketRegistry();
+        assertSame(registry, this.postProcessor.postProcessAfterInitialization(registry, "serviceRegistryDao"));
+
+        final Object proxy = this.postProcessor.postProcessAfterInitialization(registry, "ticketRegistry");
+        assertNotSame(registry, proxy);
+        assertTrue(proxy instanceof InMemoryTicketRegistry);
+        assertTrue(proxy instanceof TicketRegistryState);
+        assertSame(proxy, this.postProcessor.postProcessAfterInitialization(proxy, "ticketRegistry"));
+    }
+
+    @Test
+    public void testOnlyTicketGrantingTicketDeletionsArePublished() {
+        final InMemoryTicketRegistry registry = new InMemoryTicketRegistry();
+        final TicketRegistry proxy = (TicketRegistry) this.postProcessor.postProcessAfterInitialization(registry, "ticketRegistry");
+
+        proxy.deleteTicket("ST-1-service");
+        proxy.deleteTicket("TGT-1-session");
+        proxy.getTicket("TGT-2-session");
+
+        assertEquals(Arrays.asList("ST-1-service", "TGT-1-session"), registry.getDeletedTicketIds());
+        assertEquals(Collections.singletonList("TGT-1-session"), this.destroyedTicketIds);
+    }
+}
@@ -0,0 +1,64 @@
+package net.unicon.cas.mfa.ticket;
+
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.registry.TicketRegistry;
+import org.jasig.cas.ticket.registry.TicketRegistryState;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Minimal ticket registry backed by a map, which also records the ids of the tickets deleted from it.
+ * Unlike a mock, it is a plain class that can be proxied by subclassing.
+ */
+public class InMemoryTicketRegistry implements TicketRegistry, TicketRegistryState {
+
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+
+    private final List<String> deletedTicketIds = new ArrayList<>();
+
+    @Override
+    public void addTicket(final Ticket ticket) {
+        this.tickets.put(ticket.getId(), ticket);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends Ticket> T getTicket(final String ticketId, final Class<? extends Ticket> clazz) {
+        final Ticket ticket = getTicket(ticketId);
+        return clazz.isInstance(ticket) ? (T) ticket : null;
+    }
+
+    @Override
+    public Ticket getTicket(final String ticketId) {
+        return ticketId == null ? null : this.tickets.get(ticketId);
+    }
+
+    @Override
+    public boolean deleteTicket(final String ticketId) {
+        this.deletedTicketIds.add(ticketId);
+        return ticketId != null && this.tickets.remove(ticketId) != null;
+    }
+
+    @Override
+    public Collection<Ticket> getTickets() {
+        return new ArrayList<>(this.tickets.values());
+    }
+
+    @Override
+    public int sessionCount() {
+        return 0;
+    }
+
+    @Override
+    public int serviceTicketCount() {
+        return 0;
+    }
+
+    public List<String> getDeletedTicketIds() {
+        return this.deletedTicketIds;
+    }
+}
@@ -0,0 +1,42 @@
+package net.unicon.cas.mfa.util;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.*;
+
+public class CompiledPatternCacheTests {
+
+    @Test
+    public void testPatternIsCompiledOnce() {
+        final CompiledPatternCache cache = new CompiledPatternCache();
+        final Pattern pattern = cache.getPattern("^CN=.*,OU=Groups$");
+        assertSame(pattern, cache.getPattern("^CN=.*,OU=Groups$"));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testMatches() {
+        final CompiledPatternCache cache = new CompiledPatternCache();
+        assertTrue(cache.matches("^CN=.*,OU=Groups$", "CN=Staff,OU=Groups"));
+        assertFalse(cache.matches("^CN=.*,OU=Groups$", "CN=Staff,OU=People"));
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        final CompiledPatternCache cache = new CompiledPatternCache(2);
+        cache.getPattern("a");
+        cache.getPattern("b");
+        cache.getPattern("c");
+        assertTrue(cache.size() <= 2);
+        assertTrue(cache.getEvictionCount() >= 1);
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void testInvalidPattern() {
+        new CompiledPatternCache().getPattern("[unclosed");
+    }
+}
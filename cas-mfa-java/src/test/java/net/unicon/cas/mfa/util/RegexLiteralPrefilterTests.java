@@ -0,0 +1,59 @@
+package net.unicon.cas.mfa.util;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class RegexLiteralPrefilterTests {
+
+    @Test
+    public void testLiteralPatternIsExact() {
+        final RegexLiteralPrefilter prefilter = RegexLiteralPrefilter.compile("^cn=test\\.staff$");
+        assertTrue(prefilter.isExact());
+        assertTrue(prefilter.mayMatch("cn=test.staff"));
+        assertFalse(prefilter.mayMatch("cn=testXstaff"));
+    }
+
+    @Test
+    public void testPrefixAndSuffix() {
+        final RegexLiteralPrefilter prefilter = RegexLiteralPrefilter.compile("^CN=.*,OU=Groups,DC=example,DC=edu$");
+        assertFalse(prefilter.isExact());
+        assertEquals("CN=", prefilter.getPrefix());
+        assertEquals(",OU=Groups,DC=example,DC=edu", prefilter.getSuffix());
+        assertTrue(prefilter.mayMatch("CN=Staff,OU=Groups,DC=example,DC=edu"));
+        assertFalse(prefilter.mayMatch("CN=Staff,OU=People,DC=example,DC=edu"));
+    }
+
+    @Test
+    public void testQuantifiedCharacterIsNotRequired() {
+        final RegexLiteralPrefilter prefilter = RegexLiteralPrefilter.compile("abc?d+");
+        assertEquals("ab", prefilter.getPrefix());
+        assertEquals("", prefilter.getSuffix());
+        assertTrue(prefilter.mayMatch("abd"));
+    }
+
+    @Test
+    public void testAlternationAndFlagsAcceptEverything() {
+        assertTrue(RegexLiteralPrefilter.compile("staff|faculty").mayMatch("faculty"));
+        assertTrue(RegexLiteralPrefilter.compile("(?i)STAFF").mayMatch("staff"));
+    }
+
+    @Test
+    public void testPrefilterNeverRejectsAMatch() {
+        final String[] patterns = {"cn=test", "^a.*b$", "a\\.b.*", "x[0-9]+y", "a{2}b", "(ab)+c", "\\d+x", "a\\\\b", ".*", "^$"};
+        final String[] values = {"cn=test", "ab", "a.bc", "x12y", "aab", "ababc", "12x", "a\\b", "", "axb", "cn=testing"};
+        for (final String regex : patterns) {
+            final Pattern pattern = Pattern.compile(regex);
+            final RegexLiteralPrefilter prefilter = RegexLiteralPrefilter.compile(regex);
+            for (final String value : values) {
+                if (pattern.matcher(value).matches()) {
+                    assertTrue(regex + " / " + value, prefilter.mayMatch(value));
+                } else if (prefilter.isExact()) {
+                    assertFalse(regex + " / " + value, prefilter.mayMatch(value));
+                }
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package net.unicon.cas.mfa.web.support;
 
 import static org.junit.Assert.*;
 
+import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService.AuthenticationMethodSource;
+import org.apache.commons.lang3.SerializationUtils;
 import org.jasig.cas.authentication.principal.Response;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -28,4 +30,35 @@ public class DefaultMultiFactorAuthenticationSupportingWebApplicationServiceTest
         assertEquals(res.getUrl(), "https://www.github.com?ticket=testTicketId");
     }
 
+    @Test
+    public void testSerializationRoundTrip() {
+        final DefaultMultiFactorAuthenticationSupportingWebApplicationService svc =
+                new DefaultMultiFactorAuthenticationSupportingWebApplicationService("https://www.github.com",
+                        "https://www.github.com", "artifact", Response.ResponseType.POST,
+                        "test_authn_method", AuthenticationMethodSource.REGISTERED_SERVICE_DEFINITION);
+
+        final byte[] bytes = SerializationUtils.serialize(svc);
+        assertFalse(new String(bytes).contains("SimpleWebApplicationServiceImpl"));
+
+        final DefaultMultiFactorAuthenticationSupportingWebApplicationService copy = SerializationUtils.deserialize(bytes);
+        assertEquals(svc, copy);
+        assertEquals(svc.getOriginalUrl(), copy.getOriginalUrl());
+        assertEquals(svc.getArtifactId(), copy.getArtifactId());
+        assertEquals(Response.ResponseType.POST, copy.getResponse("testTicketId").getResponseType());
+        assertEquals(AuthenticationMethodSource.REGISTERED_SERVICE_DEFINITION, copy.getAuthenticationMethodSource());
+    }
+
+    @Test
+    public void testSerializedFormWritesEnumsByName() {
+        final DefaultMultiFactorAuthenticationSupportingWebApplicationService svc =
+                new DefaultMultiFactorAuthenticationSupportingWebApplicationService("https://www.github.com",
+                        "https://www.github.com", null, Response.ResponseType.POST,
+                        "test_authn_method", AuthenticationMethodSource.REQUEST_PARAM);
+
+        final byte[] bytes = SerializationUtils.serialize(svc);
+        assertTrue(new String(bytes).contains(AuthenticationMethodSource.REQUEST_PARAM.name()));
+
+        final DefaultMultiFactorAuthenticationSupportingWebApplicationService copy = SerializationUtils.deserialize(bytes);
+        assertEquals(AuthenticationMethodSource.REQUEST_PARAM, copy.getAuthenticationMethodSource());
+    }
 }
@@ -0,0 +1,137 @@
+package net.unicon.cas.mfa.web.support;
+
+import net.unicon.cas.mfa.authentication.RegisteredServiceMfaRoleProcessor;
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.services.AbstractRegisteredService;
+import org.jasig.cas.services.DefaultRegisteredServiceProperty;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.ServicesManager;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class MultiFactorServicesIndexTests {
+
+    private static final String MFA_SERVICE = "https://mfa.example.org/.*";
+
+    private static final String PLAIN_SERVICE = "https://www.example.org/.*";
+
+    @Test
+    public void testServicesWithoutMfaPropertiesAreNotCandidates() {
+        final ServicesManager servicesManager = mock(ServicesManager.class);
+        when(servicesManager.getAllServices()).thenReturn(
+                Arrays.asList(getRegisteredService(MFA_SERVICE, MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD),
+                        getRegisteredService(PLAIN_SERVICE, null)));
+
+        final MultiFactorServicesIndex index = new MultiFactorServicesIndex(servicesManager);
+        assertEquals(1, index.getCandidateCount());
+        assertTrue(index.isMultiFactorCandidate(TestUtils.getService("https://mfa.example.org/app")));
+        assertFalse(index.isMultiFactorCandidate(TestUtils.getService("https://www.example.org/app")));
+        assertFalse(index.isMultiFactorCandidate(TestUtils.getService("https://unknown.example.org/app")));
+    }
+
+    @Test
+    public void testServicesWithMfaRolesAreCandidates() {
+        final ServicesManager servicesManager = mock(ServicesManager.class);
+        when(servicesManager.getAllServices()).thenReturn(
+                Collections.singletonList(getRegisteredService(MFA_SERVICE, RegisteredServiceMfaRoleProcessor.MFA_ATTRIBUTE_NAME)));
+
+        final MultiFactorServicesIndex index = new MultiFactorServicesIndex(servicesManager);
+        assertTrue(index.isMultiFactorCandidate(TestUtils.getService("https://mfa.example.org/app")));
+    }
+
+    @Test
+    public void testEveryServiceIsCandidateWithDefaultMethod() {
+        final ServicesManager servicesManager = mock(ServicesManager.class);
+        when(servicesManager.getAllServices()).thenReturn(
+                Collections.singletonList(getRegisteredService(PLAIN_SERVICE, null)));
+
+        final MultiFactorServicesIndex index = new MultiFactorServicesIndex(servicesManager);
+        index.setDefaultAuthenticationMethod("strong_two_factor");
+        assertTrue(index.isMultiFactorCandidate(TestUtils.getService("https://www.example.org/app")));
+    }
+
+    @Test
+    public void testIndexIsRebuiltWhenRegistryChanges() {
+        final List<RegisteredService> registeredServices = new ArrayList<>();
+        registeredServices.add(getRegisteredService(PLAIN_SERVICE, null));
+        final ServicesManager servicesManager = mock(ServicesManager.class);
+        when(servicesManager.getAllServices()).thenReturn(registeredServices);
+
+        final MultiFactorServicesIndex index = new MultiFactorServicesIndex(servicesManager);
+        index.setRefreshInterval(0);
+        assertFalse(index.isMultiFactorCandidate(TestUtils.getService("https://www.example.org/app")));
+
+        registeredServices.set(0, getRegisteredService(PLAIN_SERVICE,
+                MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD));
+        assertTrue(index.isMultiFactorCandidate(TestUtils.getService("https://www.example.org/app")));
+    }
+
+    @Test
+    public void testRegistryIsNotCheckedWithinRefreshInterval() {
+        final ServicesManager servicesManager = mock(ServicesManager.class);
+        when(servicesManager.getAllServices()).thenReturn(
+                Collections.singletonList(getRegisteredService(PLAIN_SERVICE, null)));
+
+        final MultiFactorServicesIndex index = new MultiFactorServicesIndex(servicesManager);
+        index.setRefreshInterval(60000);
+        index.isMultiFactorCandidate(TestUtils.getService("https://www.example.org/app"));
+        index.isMultiFactorCandidate(TestUtils.getService("https://www.example.org/app"));
+        verify(servicesManager, times(1)).getAllServices();
+    }
+
+    @Test
+    public void testLookupHonorsEvaluationOrder() {
+        final RegisteredService mfaService = getRegisteredService("https://www.example.org/secure/.*",
+                MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD);
+        ((AbstractRegisteredService) mfaService).setEvaluationOrder(2);
+        final RegisteredService plainService = getRegisteredService(PLAIN_SERVICE, null);
+        ((AbstractRegisteredService) plainService).setEvaluationOrder(1);
+
+        final ServicesManager servicesManager = mock(ServicesManager.class);
+        when(servicesManager.getAllServices()).thenReturn(Arrays.asList(mfaService, plainService));
+
+        final MultiFactorServicesIndex index = new MultiFactorServicesIndex(servicesManager);
+        assertSame(plainService, index.findRegisteredService(TestUtils.getService("https://www.example.org/secure/app")));
+        assertFalse(index.isMultiFactorCandidate(TestUtils.getService("https://www.example.org/secure/app")));
+
+        ((AbstractRegisteredService) mfaService).setEvaluationOrder(0);
+        index.rebuild();
+        assertSame(mfaService, index.findRegisteredService(TestUtils.getService("https://www.example.org/secure/app")));
+        assertSame(plainService, index.findRegisteredService(TestUtils.getService("https://www.example.org/app")));
+    }
+
+    @Test
+    public void testPatternsWithoutLiteralPrefixAreFound() {
+        final RegisteredService fallbackService = getRegisteredService("^(https|imaps)://.*",
+                MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD);
+        ((AbstractRegisteredService) fallbackService).setEvaluationOrder(10);
+        final RegisteredService mfaService = getRegisteredService(MFA_SERVICE,
+                MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD);
+        ((AbstractRegisteredService) mfaService).setEvaluationOrder(1);
+
+        final ServicesManager servicesManager = mock(ServicesManager.class);
+        when(servicesManager.getAllServices()).thenReturn(Arrays.asList(fallbackService, mfaService));
+
+        final MultiFactorServicesIndex index = new MultiFactorServicesIndex(servicesManager);
+        assertSame(mfaService, index.findRegisteredService(TestUtils.getService("https://mfa.example.org/app")));
+        assertSame(fallbackService, index.findRegisteredService(TestUtils.getService("imaps://mail.example.org")));
+        assertNull(index.findRegisteredService(TestUtils.getService("ftp://files.example.org")));
+    }
+
+    private static RegisteredService getRegisteredService(final String serviceId, final String property) {
+        final RegisteredService svc = TestUtils.getRegisteredService(serviceId);
+        if (property != null) {
+            final DefaultRegisteredServiceProperty prop = new DefaultRegisteredServiceProperty();
+            prop.setValues(Collections.singleton("strong_two_factor"));
+            svc.getProperties().put(property, prop);
+        }
+        return svc;
+    }
+}
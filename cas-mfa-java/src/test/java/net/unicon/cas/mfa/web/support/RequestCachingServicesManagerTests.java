@@ -0,0 +1,118 @@
+package net.unicon.cas.mfa.web.support;
+
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.ServicesManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RequestCachingServicesManagerTests {
+
+    private final Map<String, Object> requestScope = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        final RequestAttributes attributes = mock(RequestAttributes.class);
+        when(attributes.getAttribute(anyString(), anyInt())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                return requestScope.get(invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                requestScope.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(attributes).setAttribute(anyString(), any(), anyInt());
+        RequestContextHolder.setRequestAttributes(attributes);
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void testLookupIsMadeOncePerRequest() {
+        final Service service = TestUtils.getService();
+        final RegisteredService registeredService = TestUtils.getRegisteredService(service.getId());
+        final ServicesManager delegate = mock(ServicesManager.class);
+        when(delegate.findServiceBy(service)).thenReturn(registeredService);
+
+        final RequestCachingServicesManager servicesManager = new RequestCachingServicesManager(delegate);
+        assertSame(registeredService, servicesManager.findServiceBy(service));
+        assertSame(registeredService, servicesManager.findServiceBy(service));
+        assertTrue(servicesManager.matchesExistingService(service));
+
+        verify(delegate, times(1)).findServiceBy(service);
+        assertEquals(2, servicesManager.getHitCount());
+        assertEquals(1, servicesManager.getMissCount());
+    }
+
+    @Test
+    public void testMissingServiceIsRemembered() {
+        final Service service = TestUtils.getService();
+        final ServicesManager delegate = mock(ServicesManager.class);
+
+        final RequestCachingServicesManager servicesManager = new RequestCachingServicesManager(delegate);
+        assertNull(servicesManager.findServiceBy(service));
+        assertNull(servicesManager.findServiceBy(service));
+        verify(delegate, times(1)).findServiceBy(service);
+    }
+
+    @Test
+    public void testNewRequestLooksUpAgain() {
+        final Service service = TestUtils.getService();
+        final ServicesManager delegate = mock(ServicesManager.class);
+
+        final RequestCachingServicesManager servicesManager = new RequestCachingServicesManager(delegate);
+        servicesManager.findServiceBy(service);
+        requestScope.clear();
+        servicesManager.findServiceBy(service);
+        verify(delegate, times(2)).findServiceBy(service);
+    }
+
+    @Test
+    public void testLookupIsMadeThroughIndex() {
+        final Service service = TestUtils.getService("https://www.example.org/app");
+        final RegisteredService registeredService = TestUtils.getRegisteredService("https://www.example.org/.*");
+        final ServicesManager delegate = mock(ServicesManager.class);
+        when(delegate.getAllServices()).thenReturn(Collections.singletonList(registeredService));
+
+        final RequestCachingServicesManager servicesManager = new RequestCachingServicesManager(delegate);
+        servicesManager.setMultiFactorServicesIndex(new MultiFactorServicesIndex(delegate));
+        assertSame(registeredService, servicesManager.findServiceBy(service));
+        assertSame(registeredService, servicesManager.findServiceBy(service));
+
+        verify(delegate, never()).findServiceBy(service);
+        assertEquals(1, servicesManager.getHitCount());
+    }
+
+    @Test
+    public void testLookupOutsideOfRequestIsNotCached() {
+        RequestContextHolder.resetRequestAttributes();
+        final Service service = TestUtils.getService();
+        final ServicesManager delegate = mock(ServicesManager.class);
+
+        final RequestCachingServicesManager servicesManager = new RequestCachingServicesManager(delegate);
+        servicesManager.findServiceBy(service);
+        servicesManager.findServiceBy(service);
+        verify(delegate, times(2)).findServiceBy(service);
+        assertEquals(0, servicesManager.getHitCount());
+    }
+}
@@ -1,5 +1,6 @@
 package net.unicon.cas.mfa.web.flow;
 
+import net.unicon.cas.mfa.authentication.AuthenticationReferenceCache;
 import net.unicon.cas.mfa.authentication.AuthenticationSupport;
 import net.unicon.cas.mfa.authentication.CompositeAuthentication;
 import net.unicon.cas.mfa.authentication.principal.MultiFactorCredentials;
@@ -170,6 +171,84 @@ public class GenerateMultiFactorCredentialsActionTests {
         assertEquals(mfaCreds.getCredentials(), c);
     }
 
+    @Test
+    public void testAuthenticationViaReference() {
+        final AuthenticationReferenceCache cache = new AuthenticationReferenceCache();
+        this.action.setAuthenticationReferenceCache(cache);
+        setMockAuthenticationContextWith(null);
+        setMockTgtContextWith(null);
+        when(requestContext.getFlowScope().get(MultiFactorRequestContextUtils.CAS_AUTHENTICATION_REFERENCE_ATTR_NAME))
+                .thenReturn(cache.put(authentication));
+
+        final Credential c = getCredentials();
+        when(this.sessionFlowScope.getRequired(anyString(),
+                any(UsernamePasswordCredentials.class.getClass()))).thenReturn(c);
+        when(this.requestContext.getFlowScope().get("credential")).thenReturn(c);
+
+        final Event event = this.action.doExecute(this.requestContext);
+        final MultiFactorCredentials mfaCreds = (MultiFactorCredentials)
+                event.getAttributes().get(GenerateMultiFactorCredentialsAction.ATTRIBUTE_ID_MFA_CREDENTIALS);
+
+        assertEquals(mfaCreds.countChainedAuthentications(), 1);
+        assertEquals(mfaCreds.getAuthentication().getPrincipal().getId(), authentication.getPrincipal().getId());
+        assertEquals(0, cache.size());
+        verify(this.requestContext.getFlowScope()).put(MultiFactorRequestContextUtils.CAS_AUTHENTICATION_REFERENCE_ATTR_NAME, null);
+    }
+
+    @Test
+    public void testFallbackReusesCredentialsViaContext() {
+        setMockAuthenticationContextWith(authentication);
+        setMockTgtContextWith(null);
+        when(this.requestContext.getFlowScope().get("credential")).thenReturn(getCredentials());
+
+        final MultiFactorCredentials mfaCreds = executeAndStoreCredentials();
+        final Event fallback = this.action.doExecute(this.requestContext);
+
+        assertSame(mfaCreds, fallback.getAttributes().get(GenerateMultiFactorCredentialsAction.ATTRIBUTE_ID_MFA_CREDENTIALS));
+        assertEquals(1, mfaCreds.countChainedAuthentications());
+        assertEquals(1, mfaCreds.getChainedCredentials().size());
+    }
+
+    @Test
+    public void testFallbackReusesCredentialsViaReference() {
+        final AuthenticationReferenceCache cache = new AuthenticationReferenceCache();
+        this.action.setAuthenticationReferenceCache(cache);
+        setMockAuthenticationContextWith(null);
+        setMockTgtContextWith(null);
+        when(requestContext.getFlowScope().get(MultiFactorRequestContextUtils.CAS_AUTHENTICATION_REFERENCE_ATTR_NAME))
+                .thenReturn(cache.put(authentication));
+        when(this.requestContext.getFlowScope().get("credential")).thenReturn(getCredentials());
+
+        final MultiFactorCredentials mfaCreds = executeAndStoreCredentials();
+        assertEquals(0, cache.size());
+        final Event fallback = this.action.doExecute(this.requestContext);
+
+        assertSame(mfaCreds, fallback.getAttributes().get(GenerateMultiFactorCredentialsAction.ATTRIBUTE_ID_MFA_CREDENTIALS));
+        assertEquals(1, mfaCreds.countChainedAuthentications());
+        assertEquals(authentication.getPrincipal().getId(), mfaCreds.getAuthentication().getPrincipal().getId());
+    }
+
+    @Test(expected=NoAuthenticationContextAvailable.class)
+    public void testUnknownReference() {
+        this.action.setAuthenticationReferenceCache(new AuthenticationReferenceCache());
+        setMockAuthenticationContextWith(null);
+        setMockTgtContextWith(null);
+        when(requestContext.getFlowScope().get(MultiFactorRequestContextUtils.CAS_AUTHENTICATION_REFERENCE_ATTR_NAME))
+                .thenReturn("unknown");
+        when(this.requestContext.getFlowScope().get("credential")).thenReturn(getCredentials());
+
+        this.action.doExecute(this.requestContext);
+    }
+
+    private MultiFactorCredentials executeAndStoreCredentials() {
+        final Event event = this.action.doExecute(this.requestContext);
+        final MultiFactorCredentials mfaCreds = (MultiFactorCredentials)
+                event.getAttributes().get(GenerateMultiFactorCredentialsAction.ATTRIBUTE_ID_MFA_CREDENTIALS);
+        verify(this.requestContext.getFlowScope()).put(MultiFactorRequestContextUtils.CAS_MFA_CREDENTIALS_ATTR_NAME, mfaCreds);
+        when(this.requestContext.getFlowScope().get(MultiFactorRequestContextUtils.CAS_MFA_CREDENTIALS_ATTR_NAME)).thenReturn(mfaCreds);
+        return mfaCreds;
+    }
+
     private static Credential getCredentials() {
         final UsernamePasswordCredential c = new UsernamePasswordCredential();
         c.setUsername("user");
@@ -0,0 +1,80 @@
+package net.unicon.cas.mfa.web.flow;
+
+import net.unicon.cas.mfa.authentication.AuthenticationMethodConfigurationProvider;
+import net.unicon.cas.mfa.web.flow.util.MultiFactorRequestContextUtils;
+import net.unicon.cas.mfa.web.support.DefaultMultiFactorWebApplicationServiceFactory;
+import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService;
+import net.unicon.cas.mfa.web.support.MultiFactorAuthenticationSupportingWebApplicationService.AuthenticationMethodSource;
+import net.unicon.cas.mfa.web.support.UnrecognizedAuthenticationMethodException;
+import org.jasig.cas.authentication.principal.Response.ResponseType;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.springframework.webflow.core.collection.LocalAttributeMap;
+import org.springframework.webflow.execution.Event;
+import org.springframework.webflow.execution.RequestContext;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(JUnit4.class)
+public class MultiFactorFallbackActionTests {
+
+    private static final String SERVICE = "https://www.github.com";
+
+    private final DefaultMultiFactorWebApplicationServiceFactory factory = new DefaultMultiFactorWebApplicationServiceFactory();
+
+    private MultiFactorFallbackAction action;
+
+    private RequestContext requestContext;
+
+    @Before
+    public void setup() {
+        final AuthenticationMethodConfigurationProvider provider = mock(AuthenticationMethodConfigurationProvider.class);
+        when(provider.containsAuthenticationMethod("strong-two-factor")).thenReturn(true);
+        when(provider.containsAuthenticationMethod("duo-two-factor")).thenReturn(true);
+        this.action = new MultiFactorFallbackAction(this.factory, provider);
+
+        this.requestContext = mock(RequestContext.class);
+        when(this.requestContext.getFlowScope()).thenReturn(new LocalAttributeMap());
+        when(this.requestContext.getConversationScope()).thenReturn(new LocalAttributeMap());
+
+        MultiFactorRequestContextUtils.setMultifactorWebApplicationService(this.requestContext,
+                this.factory.create(SERVICE, SERVICE, null, ResponseType.POST, "duo-two-factor",
+                        AuthenticationMethodSource.REQUEST_PARAM));
+    }
+
+    @Test
+    public void testFallbackToConfiguredMethod() throws Exception {
+        MultiFactorRequestContextUtils.setFallbackAuthenticationMethod(this.requestContext, "strong-two-factor");
+
+        final Event event = this.action.execute(this.requestContext);
+        assertEquals("mfa-strong-two-factor", event.getId());
+
+        final MultiFactorAuthenticationSupportingWebApplicationService svc =
+                MultiFactorRequestContextUtils.getMultifactorWebApplicationService(this.requestContext);
+        assertEquals(SERVICE, svc.getId());
+        assertEquals("strong-two-factor", svc.getAuthenticationMethod());
+        assertEquals(AuthenticationMethodSource.REQUEST_PARAM, svc.getAuthenticationMethodSource());
+        assertEquals("strong-two-factor", MultiFactorRequestContextUtils.getRequiredAuthenticationMethod(this.requestContext));
+        assertNull(MultiFactorRequestContextUtils.getFallbackAuthenticationMethod(this.requestContext));
+    }
+
+    @Test(expected = UnrecognizedAuthenticationMethodException.class)
+    public void testFallbackToUnknownMethod() throws Exception {
+        MultiFactorRequestContextUtils.setFallbackAuthenticationMethod(this.requestContext, "unknown-method");
+        this.action.execute(this.requestContext);
+    }
+
+    @Test(expected = UnrecognizedAuthenticationMethodException.class)
+    public void testFallbackToFailingMethod() throws Exception {
+        MultiFactorRequestContextUtils.setFallbackAuthenticationMethod(this.requestContext, "duo-two-factor");
+        this.action.execute(this.requestContext);
+    }
+
+    @Test(expected = UnrecognizedAuthenticationMethodException.class)
+    public void testNoFallbackMethod() throws Exception {
+        this.action.execute(this.requestContext);
+    }
+}
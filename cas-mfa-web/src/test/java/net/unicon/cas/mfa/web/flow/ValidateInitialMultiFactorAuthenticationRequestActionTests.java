@@ -3,6 +3,7 @@ package net.unicon.cas.mfa.web.flow;
 import net.unicon.cas.mfa.authentication.AuthenticationSupport;
 import net.unicon.cas.mfa.authentication.AuthenticationMethod;
 import net.unicon.cas.mfa.authentication.JsonBackedAuthenticationMethodConfigurationProvider;
+import net.unicon.cas.mfa.authentication.MultiFactorAuthenticationDecisionCache;
 import net.unicon.cas.mfa.authentication.MultiFactorAuthenticationRequestContext;
 import net.unicon.cas.mfa.authentication.MultiFactorAuthenticationTransactionContext;
 import net.unicon.cas.mfa.authentication.OrderedMultiFactorMethodRankingStrategy;
@@ -23,6 +24,7 @@ import org.springframework.webflow.core.collection.ParameterMap;
 import org.springframework.webflow.execution.Event;
 import org.springframework.webflow.execution.RequestContext;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -30,6 +32,8 @@ import java.util.TreeSet;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(JUnit4.class)
@@ -47,6 +51,10 @@ public class ValidateInitialMultiFactorAuthenticationRequestActionTests {
 
     private MutableAttributeMap mockFlowScope;
 
+    private AuthenticationSupport support;
+
+    private JsonBackedAuthenticationMethodConfigurationProvider loader;
+
     private MultiFactorAuthenticationTransactionContext mfaTx =
             new MultiFactorAuthenticationTransactionContext("test service").addMfaRequest(
                     new MultiFactorAuthenticationRequestContext(
@@ -105,7 +113,7 @@ public class ValidateInitialMultiFactorAuthenticationRequestActionTests {
 
     @Before
     public void setup() {
-        final AuthenticationSupport support = mock(AuthenticationSupport.class);
+        support = mock(AuthenticationSupport.class);
         when(support.getAuthenticationFrom(TGT_ID)).thenReturn(authentication);
 
         final SortedSet<AuthenticationMethod> validAuthenticationMethods =
@@ -113,8 +121,7 @@ public class ValidateInitialMultiFactorAuthenticationRequestActionTests {
         validAuthenticationMethods.add(new AuthenticationMethod("sample_two_factor", 2));
         validAuthenticationMethods.add(new AuthenticationMethod("strong_two_factor", 4));
 
-        final JsonBackedAuthenticationMethodConfigurationProvider loader =
-                new JsonBackedAuthenticationMethodConfigurationProvider(validAuthenticationMethods);
+        loader = new JsonBackedAuthenticationMethodConfigurationProvider(validAuthenticationMethods);
 
         this.action = new ValidateInitialMultiFactorAuthenticationRequestAction(support,
                 new OrderedMultiFactorMethodRankingStrategy(loader));
@@ -168,4 +175,39 @@ public class ValidateInitialMultiFactorAuthenticationRequestActionTests {
         assertNotNull(ev);
         assertEquals(ValidateInitialMultiFactorAuthenticationRequestAction.EVENT_ID_REQUIRE_TGT, ev.getId());
     }
+
+    @Test
+    public void testDecisionIsMadeOncePerSession() throws Exception {
+        this.action.setDecisionCache(new MultiFactorAuthenticationDecisionCache(loader));
+        setMockTgtContextWith(TGT_ID, mfaTx);
+
+        assertEquals("mfa-strong_two_factor", this.action.doExecute(this.requestContext).getId());
+        assertEquals("mfa-strong_two_factor", this.action.doExecute(this.requestContext).getId());
+        verify(support, times(1)).getAuthenticationFrom(TGT_ID);
+    }
+
+    @Test
+    public void testFulfilledDecisionProceedsFlowAsNormal() throws Exception {
+        final MultiFactorAuthenticationDecisionCache decisionCache = new MultiFactorAuthenticationDecisionCache(loader);
+        this.action.setDecisionCache(decisionCache);
+        setMockTgtContextWith(TGT_ID, mfaTx);
+        when(authentication.getAttributes()).thenReturn(Collections.<String, Object>singletonMap(
+                MultiFactorAuthenticationSupportingWebApplicationService.CONST_PARAM_AUTHN_METHOD, "strong_two_factor"));
+
+        assertEquals(ValidateInitialMultiFactorAuthenticationRequestAction.EVENT_ID_REQUIRE_TGT,
+                this.action.doExecute(this.requestContext).getId());
+        assertEquals(Boolean.TRUE, decisionCache.getDecision(TGT_ID, "strong_two_factor"));
+    }
+
+    @Test
+    public void testInvalidatedSessionIsDecidedAgain() throws Exception {
+        final MultiFactorAuthenticationDecisionCache decisionCache = new MultiFactorAuthenticationDecisionCache(loader);
+        this.action.setDecisionCache(decisionCache);
+        setMockTgtContextWith(TGT_ID, mfaTx);
+
+        this.action.doExecute(this.requestContext);
+        decisionCache.invalidate(TGT_ID);
+        this.action.doExecute(this.requestContext);
+        verify(support, times(2)).getAuthenticationFrom(TGT_ID);
+    }
 }